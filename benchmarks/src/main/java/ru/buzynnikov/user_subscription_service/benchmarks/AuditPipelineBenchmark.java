@@ -0,0 +1,64 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.buzynnikov.user_subscription_service.audit.AuditEvent;
+import ru.buzynnikov.user_subscription_service.audit.AuditOverflowPolicy;
+import ru.buzynnikov.user_subscription_service.audit.AuditPipeline;
+import ru.buzynnikov.user_subscription_service.audit.LogAuditSink;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость публикации события аудита в потоке запроса. Запись событий выполняется фоновым потоком
+ * конвейера в журнал (target/benchmark.log, см. logback.xml модуля) и в измерение не входит.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(2)
+public class AuditPipelineBenchmark {
+
+    @Param({"DROP_NEWEST", "DROP_OLDEST"})
+    private AuditOverflowPolicy overflowPolicy;
+
+    private AuditPipeline pipeline;
+
+    @Setup
+    public void setup() {
+        pipeline = new AuditPipeline(new LogAuditSink(), new SimpleMeterRegistry(), 10_000, 500,
+                Duration.ofMillis(200), overflowPolicy);
+        pipeline.start();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.stop();
+    }
+
+    @Benchmark
+    public void publishUserUpdated() {
+        pipeline.publish(AuditEvent.userUpdated(1L, "name"));
+    }
+
+    @Benchmark
+    public void publishSubscriptionAdded() {
+        pipeline.publish(AuditEvent.subscriptionAdded(1L, 2L));
+    }
+}
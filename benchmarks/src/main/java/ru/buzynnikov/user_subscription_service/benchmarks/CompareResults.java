@@ -0,0 +1,72 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Сравнение двух файлов результатов JMH в формате JSON (например, предыдущего и текущего релиза).
+ * Печатает изменение оценки каждого бенчмарка и завершается с кодом 1, если хотя бы один из них
+ * стал медленнее больше чем на заданный порог.
+ * <p>
+ * Запуск: {@code mvn -f benchmarks/pom.xml exec:java@compare
+ * -Dexec.args="baseline.json target/jmh-result.json 10"}
+ */
+public final class CompareResults {
+
+    private CompareResults() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("Использование: CompareResults <baseline.json> <current.json> [порог, %]");
+            System.exit(2);
+        }
+        Map<String, Double> baseline = read(new File(args[0]));
+        Map<String, Double> current = read(new File(args[1]));
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10;
+
+        boolean regression = false;
+        for (Map.Entry<String, Double> entry : current.entrySet()) {
+            Double before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-100s %12s -> %12.3f (новый)%n", entry.getKey(), "", entry.getValue());
+                continue;
+            }
+            double change = (entry.getValue() - before) / before * 100;
+            boolean slower = change > threshold;
+            regression |= slower;
+            System.out.printf("%-100s %12.3f -> %12.3f %+7.1f%%%s%n",
+                    entry.getKey(), before, entry.getValue(), change, slower ? " РЕГРЕССИЯ" : "");
+        }
+        if (regression) System.exit(1);
+    }
+
+    /**
+     * Читает оценки бенчмарков из файла результатов JMH.
+     * Ключ содержит имя бенчмарка и значения параметров, так как один бенчмарк запускается с разными параметрами.
+     * Поддерживаются только режимы, где большее значение хуже (avgt, sample, ss).
+     *
+     * @param file файл результатов JMH в формате JSON
+     * @return оценки бенчмарков по ключу
+     * @throws IOException если не удалось прочитать файл
+     */
+    private static Map<String, Double> read(File file) throws IOException {
+        Map<String, Double> scores = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file)) {
+            StringBuilder key = new StringBuilder(result.path("benchmark").asText());
+            Iterator<Map.Entry<String, JsonNode>> params = result.path("params").fields();
+            while (params.hasNext()) {
+                Map.Entry<String, JsonNode> param = params.next();
+                key.append(' ').append(param.getKey()).append('=').append(param.getValue().asText());
+            }
+            scores.put(key.toString(), result.path("primaryMetric").path("score").asDouble());
+        }
+        return scores;
+    }
+}
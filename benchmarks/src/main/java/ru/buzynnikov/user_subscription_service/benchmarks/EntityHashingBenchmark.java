@@ -0,0 +1,83 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.buzynnikov.user_subscription_service.models.Subscription;
+import ru.buzynnikov.user_subscription_service.models.User;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость equals/hashCode сущностей User и Subscription при работе с хеш-множествами,
+ * в которых Hibernate хранит связи многие-ко-многим.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityHashingBenchmark {
+
+    @Param({"10", "1000"})
+    private int size;
+
+    private User[] users;
+    private Subscription[] subscriptions;
+    private Set<User> userSet;
+    private Set<Subscription> subscriptionSet;
+
+    @Setup
+    public void setup() {
+        users = new User[size];
+        subscriptions = new Subscription[size];
+        for (int i = 0; i < size; i++) {
+            users[i] = new User("user" + i);
+            users[i].setId((long) i);
+            subscriptions[i] = new Subscription();
+            subscriptions[i].setId((long) i);
+            subscriptions[i].setName("subscription" + i);
+        }
+        userSet = new HashSet<>(Set.of(users));
+        subscriptionSet = new HashSet<>(Set.of(subscriptions));
+    }
+
+    @Benchmark
+    public Set<User> buildUserSet() {
+        Set<User> set = new HashSet<>();
+        for (User user : users) set.add(user);
+        return set;
+    }
+
+    @Benchmark
+    public Set<Subscription> buildSubscriptionSet() {
+        Set<Subscription> set = new HashSet<>();
+        for (Subscription subscription : subscriptions) set.add(subscription);
+        return set;
+    }
+
+    @Benchmark
+    public int containsUsers() {
+        int found = 0;
+        for (User user : users) if (userSet.contains(user)) found++;
+        return found;
+    }
+
+    @Benchmark
+    public int containsSubscriptions() {
+        int found = 0;
+        for (Subscription subscription : subscriptions) if (subscriptionSet.contains(subscription)) found++;
+        return found;
+    }
+}
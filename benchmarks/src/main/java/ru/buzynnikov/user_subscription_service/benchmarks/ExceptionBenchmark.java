@@ -0,0 +1,48 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.buzynnikov.user_subscription_service.exceptions.UserNotFoundException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость создания исключения UserNotFoundException, которое сервис пользователей выбрасывает
+ * при проверке существования пользователя: форматирование сообщения, заполнение стека и выброс.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExceptionBenchmark {
+
+    private long id = 999;
+
+    @Benchmark
+    public String formatMessage() {
+        return String.format("Пользователь с id %d не найден", id);
+    }
+
+    @Benchmark
+    public UserNotFoundException create() {
+        return new UserNotFoundException(String.format("Пользователь с id %d не найден", id));
+    }
+
+    @Benchmark
+    public String createThrowAndCatch() {
+        try {
+            throw new UserNotFoundException(String.format("Пользователь с id %d не найден", id));
+        } catch (UserNotFoundException e) {
+            return e.getMessage();
+        }
+    }
+}
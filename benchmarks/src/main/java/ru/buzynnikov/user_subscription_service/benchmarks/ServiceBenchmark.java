@@ -0,0 +1,89 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.buzynnikov.user_subscription_service.UserSubscriptionServiceApplication;
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserRequest;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+import ru.buzynnikov.user_subscription_service.exceptions.UserNotFoundException;
+import ru.buzynnikov.user_subscription_service.services.interfaces.SubscriptionService;
+import ru.buzynnikov.user_subscription_service.services.interfaces.UserService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость вызовов сервисов через прокси Spring (транзакции, кэш, аспекты) на профиле test с базой H2 в памяти.
+ * Веб-сервер не запускается, измеряется только слой сервисов.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ServiceBenchmark {
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private SubscriptionService subscriptionService;
+    private long updates;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(UserSubscriptionServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .run();
+        userService = context.getBean(UserService.class);
+        subscriptionService = context.getBean(SubscriptionService.class);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public UserResponse getUserById() {
+        return userService.getUserById(1L);
+    }
+
+    @Benchmark
+    public String getMissingUser() {
+        try {
+            return userService.getUserById(999L).name();
+        } catch (UserNotFoundException e) {
+            return e.getMessage();
+        }
+    }
+
+    @Benchmark
+    public CursorPage<SubscriptionResponse> getUserSubscriptions() {
+        return userService.getUserSubscriptions(1L, 0, 100);
+    }
+
+    @Benchmark
+    public List<SubscriptionResponse> getSubscriptionsTop3() {
+        return subscriptionService.getSubscriptionsTop3();
+    }
+
+    @Benchmark
+    public void updateUser() {
+        userService.updateUser(2L, new UserRequest("user" + (updates++ & 1023)));
+    }
+}
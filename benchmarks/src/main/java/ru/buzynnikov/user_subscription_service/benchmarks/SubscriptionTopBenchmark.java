@@ -0,0 +1,65 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionCountDTO;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.repositories.SubscriptionRepository;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionLeaderboard;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость получения топа подписок из рейтинга в памяти, включая преобразование записей рейтинга в DTO.
+ * Рейтинг заполняется из заглушки репозитория, база данных не используется.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionTopBenchmark {
+
+    @Param({"10", "10000"})
+    private int subscriptions;
+
+    @Param({"3", "100"})
+    private int limit;
+
+    private SubscriptionLeaderboard leaderboard;
+
+    @Setup
+    public void setup() {
+        List<SubscriptionCountDTO> counts = new ArrayList<>(subscriptions);
+        for (long id = 1; id <= subscriptions; id++) {
+            counts.add(new SubscriptionCountDTO(id, "subscription" + id, id % 97 + 1));
+        }
+        SubscriptionRepository repository = (SubscriptionRepository) Proxy.newProxyInstance(
+                SubscriptionRepository.class.getClassLoader(), new Class<?>[]{SubscriptionRepository.class},
+                (proxy, method, args) -> {
+                    if (method.getName().equals("findSubscriptionCounts")) return counts;
+                    throw new UnsupportedOperationException(method.getName());
+                });
+        leaderboard = new SubscriptionLeaderboard(repository, new ShardRouter(1));
+        leaderboard.start();
+    }
+
+    @Benchmark
+    public List<SubscriptionResponse> top() {
+        return leaderboard.top(limit);
+    }
+}
@@ -0,0 +1,189 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.buzynnikov.user_subscription_service.UserSubscriptionServiceApplication;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+import ru.buzynnikov.user_subscription_service.repositories.UserRepository;
+import ru.buzynnikov.user_subscription_service.services.interfaces.UserService;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение выдачи 10 000 пользователей одним JSON-массивом: построение списка с последующей сериализацией
+ * и потоковая запись строк курсора в генератор JSON, как в GET /api/v1/users/export.
+ * Ответ пишется в буфер размером с буфер ответа сервлета, время до первого байта — время до первой записи из него.
+ * Выделение памяти на запрос показывает профилировщик gc: {@code -Djmh.args="UserListSerialization -prof gc"}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserListSerializationBenchmark {
+
+    private static final int USERS = 10_000;
+    private static final long FIRST_ID = 1_000_000;
+    private static final int RESPONSE_BUFFER = 8192;
+
+    private ConfigurableApplicationContext context;
+    private UserService userService;
+    private UserRepository userRepository;
+    private TransactionTemplate transactionTemplate;
+    private ObjectMapper objectMapper;
+    private ObjectWriter streamWriter;
+
+    @Setup
+    public void setup() {
+        context = new SpringApplicationBuilder(UserSubscriptionServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .run();
+        userService = context.getBean(UserService.class);
+        userRepository = context.getBean(UserRepository.class);
+        transactionTemplate = context.getBean(TransactionTemplate.class);
+        objectMapper = context.getBean(ObjectMapper.class);
+        streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+        List<Object[]> rows = new ArrayList<>(USERS);
+        for (long id = FIRST_ID + 1; id <= FIRST_ID + USERS; id++) rows.add(new Object[]{id, "user" + id});
+        context.getBean(JdbcTemplate.class).batchUpdate("INSERT INTO users (id, username) VALUES (?, ?)", rows);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public long bufferedList() throws IOException {
+        CountingOutputStream output = new CountingOutputStream(-1);
+        writeBuffered(output);
+        return output.count;
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        CountingOutputStream output = new CountingOutputStream(-1);
+        writeStreaming(output);
+        return output.count;
+    }
+
+    @Benchmark
+    public long bufferedListFirstByte() throws IOException {
+        try {
+            writeBuffered(new CountingOutputStream(0));
+        } catch (FirstByteWritten e) {
+            return e.count;
+        }
+        throw new IllegalStateException("Ответ пуст");
+    }
+
+    @Benchmark
+    public long streamingFirstByte() throws IOException {
+        try {
+            writeStreaming(new CountingOutputStream(0));
+        } catch (UncheckedIOException e) {
+            if (e.getCause() instanceof FirstByteWritten firstByte) return firstByte.count;
+            throw e;
+        }
+        throw new IllegalStateException("Ответ пуст");
+    }
+
+    /**
+     * Прежний способ: список пользователей загружается целиком и затем сериализуется.
+     */
+    private void writeBuffered(OutputStream target) throws IOException {
+        List<UserResponse> users = transactionTemplate.execute(status ->
+                userRepository.findUsersAfter(FIRST_ID, Limit.of(USERS)));
+        OutputStream output = new BufferedOutputStream(target, RESPONSE_BUFFER);
+        objectMapper.writeValue(output, users);
+    }
+
+    /**
+     * Потоковый способ: строки курсора записываются в генератор JSON по мере чтения.
+     */
+    private void writeStreaming(OutputStream target) throws IOException {
+        OutputStream output = new BufferedOutputStream(target, RESPONSE_BUFFER);
+        JsonGenerator generator = objectMapper.createGenerator(output);
+        SequenceWriter users = streamWriter.writeValuesAsArray(generator);
+        userService.exportUsers(FIRST_ID, user -> {
+            try {
+                users.write(user);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        users.close();
+        generator.close();
+    }
+
+    /**
+     * Поток, подсчитывающий записанные байты. При неотрицательном пороге прерывает запись исключением,
+     * как только количество байт его превысит.
+     */
+    private static final class CountingOutputStream extends OutputStream {
+
+        private final long limit;
+        private long count;
+
+        private CountingOutputStream(long limit) {
+            this.limit = limit;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            count += len;
+            if (limit >= 0 && count > limit) throw new FirstByteWritten(count);
+        }
+    }
+
+    /**
+     * Сигнал о первой записи в поток ответа. Наследует IOException, чтобы Jackson передавал его без обертки.
+     */
+    private static final class FirstByteWritten extends IOException {
+
+        private final long count;
+
+        private FirstByteWritten(long count) {
+            this.count = count;
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
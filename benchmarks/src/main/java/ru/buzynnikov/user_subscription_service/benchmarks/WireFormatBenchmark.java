@@ -0,0 +1,91 @@
+package ru.buzynnikov.user_subscription_service.benchmarks;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserBatchResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserDetailsResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сравнение JSON и CBOR для ответов API: время сериализации и разбора одного ответа.
+ * Размеры ответов в байтах выводятся при подготовке каждого сочетания параметров.
+ * Ответы: один пользователь, 100 подписок пользователя, топ-10 подписок и 100 пользователей
+ * с 10 подписками каждый (GET /api/v1/users?ids=...&include=subscriptions).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    @Param({"json", "cbor"})
+    private String format;
+
+    @Param({"user", "subscriptions", "top", "batch"})
+    private String payload;
+
+    private ObjectMapper mapper;
+    private Object value;
+    private JavaType type;
+    private byte[] encoded;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = format.equals("cbor") ? Jackson2ObjectMapperBuilder.cbor().build() : Jackson2ObjectMapperBuilder.json().build();
+        value = switch (payload) {
+            case "user" -> new UserResponse(1_234_567L, "user1234567");
+            case "subscriptions" -> subscriptions(1, 100);
+            case "top" -> subscriptions(1, 10);
+            case "batch" -> batch(100, 10);
+            default -> throw new IllegalArgumentException(payload);
+        };
+        type = mapper.constructType(value instanceof List<?> ? mapper.getTypeFactory()
+                .constructCollectionType(List.class, SubscriptionResponse.class) : value.getClass());
+        encoded = mapper.writeValueAsBytes(value);
+        System.out.printf("%n%s/%s: %d байт%n", payload, format, encoded.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return mapper.writeValueAsBytes(value);
+    }
+
+    @Benchmark
+    public Object deserialize() throws IOException {
+        return mapper.readValue(encoded, type);
+    }
+
+    private static List<SubscriptionResponse> subscriptions(long first, int count) {
+        List<SubscriptionResponse> subscriptions = new ArrayList<>(count);
+        for (long id = first; id < first + count; id++) subscriptions.add(new SubscriptionResponse(id, "subscription" + id));
+        return subscriptions;
+    }
+
+    private static UserBatchResponse batch(int users, int subscriptionsPerUser) {
+        List<UserDetailsResponse> details = new ArrayList<>(users);
+        for (long id = 1_000_000; id < 1_000_000 + users; id++) {
+            details.add(new UserDetailsResponse(id, "user" + id, subscriptions(id % 200, subscriptionsPerUser)));
+        }
+        return new UserBatchResponse(details, List.of(42L));
+    }
+}
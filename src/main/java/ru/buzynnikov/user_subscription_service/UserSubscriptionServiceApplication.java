@@ -2,8 +2,10 @@ package ru.buzynnikov.user_subscription_service;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class UserSubscriptionServiceApplication {
 
 	public static void main(String[] args) {
@@ -0,0 +1,21 @@
+package ru.buzynnikov.user_subscription_service.aspect;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Объединение одновременных одинаковых вызовов метода: первый вызов выполняется,
+ * остальные с тем же ключом ожидают и получают его результат.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Coalesce {
+
+    /**
+     * SpEL-выражение для вычисления ключа вызова по аргументам метода, например {@code "#id"}.
+     * Вызовы разных методов с одинаковым ключом не объединяются. Выражение может обращаться к бинам через {@code @имя}.
+     */
+    String key();
+}
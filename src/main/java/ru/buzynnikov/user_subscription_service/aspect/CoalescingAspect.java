@@ -0,0 +1,127 @@
+package ru.buzynnikov.user_subscription_service.aspect;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.BeanFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.expression.BeanFactoryResolver;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+
+/**
+ * Аспект, объединяющий одновременные одинаковые вызовы методов с пометкой @Coalesce.
+ * Первый вызов с данным ключом выполняет метод, остальные ожидают его завершения и получают тот же результат
+ * или то же исключение. Вызовы внутри транзакции не объединяются, так как должны видеть данные своей транзакции.
+ * Ключ может ссылаться на бины (например, {@code @userReadCache.getGeneration(#id)}), чтобы вызов, начатый после
+ * фиксации изменения, не присоединялся к вызову, начатому до нее.
+ * Ожидание чужого вызова ограничено coalesce.timeout, после чего вызов выполняется самостоятельно,
+ * поэтому зависший вызов не удерживает все ожидающие потоки.
+ * Количество выполненных и объединенных вызовов публикуется в метрике service.calls с тегами method и result.
+ * Аспект выполняется раньше транзакционного прокси, чтобы объединять вызовы до открытия транзакции.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 1)
+public class CoalescingAspect {
+
+    private final MeterRegistry meterRegistry;
+    private final BeanFactoryResolver beanResolver;
+    private final long timeoutMillis;
+    private final ExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+    private final Map<CallKey, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    public CoalescingAspect(MeterRegistry meterRegistry, BeanFactory beanFactory,
+                            @Value("${coalesce.timeout:PT10S}") Duration timeout) {
+        this.meterRegistry = meterRegistry;
+        this.beanResolver = new BeanFactoryResolver(beanFactory);
+        this.timeoutMillis = timeout.toMillis();
+    }
+
+    /**
+     * Обертка вокруг методов с пометкой @Coalesce.
+     *
+     * @param joinPoint точка соединения (метод, отмеченный аннотацией @Coalesce)
+     * @throws Throwable если произошла ошибка при выполнении метода
+     */
+    @Around("@annotation(Coalesce)")
+    public Object coalesce(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (TransactionSynchronizationManager.isActualTransactionActive()) return joinPoint.proceed();
+
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Coalesce coalesce = signature.getMethod().getAnnotation(Coalesce.class);
+        String methodName = signature.getDeclaringType().getSimpleName() + "." + signature.getName();
+        CallKey key = new CallKey(methodName, evaluateKey(coalesce.key(), signature.getMethod(), joinPoint.getArgs()));
+
+        CompletableFuture<Object> own = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, own);
+        if (existing != null) {
+            meterRegistry.counter("service.calls", "method", methodName, "result", "coalesced").increment();
+            try {
+                return existing.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause();
+            } catch (TimeoutException e) {
+                meterRegistry.counter("service.calls", "method", methodName, "result", "timeout").increment();
+                return joinPoint.proceed();
+            }
+        }
+
+        meterRegistry.counter("service.calls", "method", methodName, "result", "executed").increment();
+        try {
+            Object result = joinPoint.proceed();
+            own.complete(result);
+            return result;
+        } catch (Throwable e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * Вычисляет ключ вызова по SpEL-выражению из аннотации.
+     *
+     * @param expression SpEL-выражение ключа
+     * @param method     вызываемый метод
+     * @param args       аргументы вызова
+     * @return значение ключа
+     */
+    private Object evaluateKey(String expression, Method method, Object[] args) {
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer);
+        context.setBeanResolver(beanResolver);
+        return expressions.computeIfAbsent(expression, parser::parseExpression).getValue(context);
+    }
+
+    /**
+     * Ключ выполняющегося вызова.
+     *
+     * @param method имя метода
+     * @param key    ключ, вычисленный по аргументам
+     */
+    private record CallKey(String method, Object key) {
+    }
+}
@@ -0,0 +1,21 @@
+package ru.buzynnikov.user_subscription_service.aspect;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Выполнение метода на шарде пользователя: все обращения к базе данных внутри вызова направляются
+ * на шард, определенный по идентификатору пользователя из аргументов.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Sharded {
+
+    /**
+     * SpEL-выражение для вычисления идентификатора пользователя по аргументам метода, например {@code "#id"}.
+     * Пустое выражение означает создание нового пользователя: шард выбирается по очереди.
+     */
+    String key() default "";
+}
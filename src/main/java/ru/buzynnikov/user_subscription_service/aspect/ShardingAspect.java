@@ -0,0 +1,80 @@
+package ru.buzynnikov.user_subscription_service.aspect;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.Ordered;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.annotation.Order;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import ru.buzynnikov.user_subscription_service.sharding.ShardContext;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Аспект, выполняющий методы с пометкой @Sharded на шарде пользователя.
+ * Аспект выполняется раньше транзакционного прокси и аспекта объединения вызовов, чтобы шард был выбран
+ * до получения соединения транзакцией. С одним шардом метод вызывается без изменений.
+ */
+@Aspect
+@Component
+@Order(Ordered.LOWEST_PRECEDENCE - 2)
+public class ShardingAspect {
+
+    private final ShardRouter shardRouter;
+    private final ExpressionParser parser = new SpelExpressionParser();
+    private final ParameterNameDiscoverer parameterNameDiscoverer = new DefaultParameterNameDiscoverer();
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    public ShardingAspect(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Обертка вокруг методов с пометкой @Sharded.
+     *
+     * @param joinPoint точка соединения (метод, отмеченный аннотацией @Sharded)
+     * @throws Throwable если произошла ошибка при выполнении метода
+     */
+    @Around("@annotation(Sharded)")
+    public Object route(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!shardRouter.isSharded()) return joinPoint.proceed();
+
+        MethodSignature signature = (MethodSignature) joinPoint.getSignature();
+        Sharded sharded = signature.getMethod().getAnnotation(Sharded.class);
+        int shard = sharded.key().isEmpty()
+                ? shardRouter.nextShard()
+                : shardRouter.shardOf(evaluateUserId(sharded.key(), signature.getMethod(), joinPoint.getArgs()));
+
+        Integer previous = ShardContext.set(shard);
+        try {
+            return joinPoint.proceed();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Вычисляет идентификатор пользователя по SpEL-выражению из аннотации.
+     *
+     * @param expression SpEL-выражение идентификатора
+     * @param method     вызываемый метод
+     * @param args       аргументы вызова
+     * @return идентификатор пользователя
+     */
+    private long evaluateUserId(String expression, Method method, Object[] args) {
+        MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, parameterNameDiscoverer);
+        Long userId = expressions.computeIfAbsent(expression, parser::parseExpression).getValue(context, Long.class);
+        if (userId == null) throw new IllegalArgumentException("Идентификатор пользователя не задан: " + expression);
+        return userId;
+    }
+}
@@ -0,0 +1,35 @@
+package ru.buzynnikov.user_subscription_service.audit;
+
+import java.time.Instant;
+
+/**
+ * Событие аудита изменения пользователя или его подписок.
+ *
+ * @param type           тип события
+ * @param userId         идентификатор пользователя
+ * @param subscriptionId идентификатор подписки (для событий подписки)
+ * @param username       имя пользователя (для создания и изменения пользователя)
+ * @param occurredAt     момент события
+ */
+public record AuditEvent(AuditEventType type, Long userId, Long subscriptionId, String username, Instant occurredAt) {
+
+    public static AuditEvent userCreated(Long userId, String username) {
+        return new AuditEvent(AuditEventType.USER_CREATED, userId, null, username, Instant.now());
+    }
+
+    public static AuditEvent userUpdated(Long userId, String username) {
+        return new AuditEvent(AuditEventType.USER_UPDATED, userId, null, username, Instant.now());
+    }
+
+    public static AuditEvent userDeleted(Long userId) {
+        return new AuditEvent(AuditEventType.USER_DELETED, userId, null, null, Instant.now());
+    }
+
+    public static AuditEvent subscriptionAdded(Long userId, Long subscriptionId) {
+        return new AuditEvent(AuditEventType.SUBSCRIPTION_ADDED, userId, subscriptionId, null, Instant.now());
+    }
+
+    public static AuditEvent subscriptionRemoved(Long userId, Long subscriptionId) {
+        return new AuditEvent(AuditEventType.SUBSCRIPTION_REMOVED, userId, subscriptionId, null, Instant.now());
+    }
+}
@@ -0,0 +1,12 @@
+package ru.buzynnikov.user_subscription_service.audit;
+
+/**
+ * Типы событий аудита.
+ */
+public enum AuditEventType {
+    USER_CREATED,
+    USER_UPDATED,
+    USER_DELETED,
+    SUBSCRIPTION_ADDED,
+    SUBSCRIPTION_REMOVED
+}
@@ -0,0 +1,22 @@
+package ru.buzynnikov.user_subscription_service.audit;
+
+/**
+ * Поведение конвейера аудита при заполненной очереди.
+ */
+public enum AuditOverflowPolicy {
+
+    /**
+     * Новое событие отбрасывается.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Из очереди отбрасывается самое старое событие, новое добавляется.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Событие записывается синхронно в потоке, который его опубликовал.
+     */
+    CALLER_RUNS
+}
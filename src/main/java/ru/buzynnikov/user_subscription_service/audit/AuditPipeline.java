@@ -0,0 +1,188 @@
+package ru.buzynnikov.user_subscription_service.audit;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Асинхронный конвейер аудита. Публикация события добавляет его в неблокирующую очередь ограниченного размера,
+ * фоновый поток забирает события пачками до audit.batch-size и передает их в {@link AuditSink}.
+ * Поток просыпается при накоплении полной пачки или раз в audit.flush-interval.
+ * <p>
+ * Размер очереди ограничен приблизительно: при одновременной публикации из нескольких потоков
+ * он может превысить audit.queue-capacity на количество этих потоков. При заполненной очереди
+ * применяется политика audit.overflow-policy.
+ * <p>
+ * Метрики: audit.events (тег result: queued, dropped, written, failed), audit.queue.size, audit.batch.write.
+ */
+@Component
+public class AuditPipeline implements SmartLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(AuditPipeline.class);
+
+    private final AuditSink sink;
+    private final int capacity;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final AuditOverflowPolicy overflowPolicy;
+
+    private final Queue<AuditEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final Counter queued;
+    private final Counter dropped;
+    private final Counter written;
+    private final Counter failed;
+    private final Timer batchWrite;
+
+    private volatile boolean running;
+    private volatile Thread writer;
+
+    public AuditPipeline(AuditSink sink, MeterRegistry meterRegistry,
+                         @Value("${audit.queue-capacity:10000}") int capacity,
+                         @Value("${audit.batch-size:500}") int batchSize,
+                         @Value("${audit.flush-interval:PT0.2S}") Duration flushInterval,
+                         @Value("${audit.overflow-policy:DROP_NEWEST}") AuditOverflowPolicy overflowPolicy) {
+        this.sink = sink;
+        this.capacity = capacity;
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.overflowPolicy = overflowPolicy;
+        this.queued = events(meterRegistry, "queued");
+        this.dropped = events(meterRegistry, "dropped");
+        this.written = events(meterRegistry, "written");
+        this.failed = events(meterRegistry, "failed");
+        this.batchWrite = Timer.builder("audit.batch.write").description("Время записи пачки событий аудита").register(meterRegistry);
+        Gauge.builder("audit.queue.size", size, AtomicInteger::get).description("События аудита в очереди").register(meterRegistry);
+    }
+
+    /**
+     * Публикует событие аудита. Не блокирует вызывающий поток, кроме политики CALLER_RUNS при заполненной очереди.
+     *
+     * @param event событие аудита
+     */
+    public void publish(AuditEvent event) {
+        if (size.get() < capacity) {
+            enqueue(event);
+            return;
+        }
+        switch (overflowPolicy) {
+            case DROP_NEWEST -> dropped.increment();
+            case DROP_OLDEST -> {
+                if (queue.poll() != null) {
+                    size.decrementAndGet();
+                    dropped.increment();
+                }
+                enqueue(event);
+            }
+            case CALLER_RUNS -> write(List.of(event));
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        Thread thread = new Thread(this::run, "audit-writer");
+        thread.setDaemon(true);
+        writer = thread;
+        thread.start();
+    }
+
+    /**
+     * Останавливает фоновый поток, предварительно записав все события из очереди.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = writer;
+        if (thread == null) return;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(Duration.ofSeconds(10).toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writer = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Конвейер останавливается после веб-сервера, чтобы записать события последних запросов,
+     * и до закрытия источника данных, который может использовать приемник событий.
+     */
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    private void enqueue(AuditEvent event) {
+        queue.offer(event);
+        queued.increment();
+        if (size.incrementAndGet() >= batchSize) {
+            Thread thread = writer;
+            if (thread != null) LockSupport.unpark(thread);
+        }
+    }
+
+    /**
+     * Цикл фонового потока: запись пачек, пока очередь не пуста, и ожидание новых событий.
+     * После остановки конвейера очередь дописывается до конца.
+     */
+    private void run() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            AuditEvent event;
+            while (batch.size() < batchSize && (event = queue.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(this, flushIntervalNanos);
+                continue;
+            }
+            write(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Передает пачку событий приемнику. Ошибка приемника учитывается в метриках и не останавливает конвейер.
+     *
+     * @param batch пачка событий
+     */
+    private void write(List<AuditEvent> batch) {
+        long start = System.nanoTime();
+        try {
+            sink.write(batch);
+            written.increment(batch.size());
+        } catch (RuntimeException e) {
+            failed.increment(batch.size());
+            logger.warn("Не удалось записать {} событий аудита: {}", batch.size(), e.getMessage());
+        } finally {
+            batchWrite.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static Counter events(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("audit.events").tag("result", result).description("События аудита").register(meterRegistry);
+    }
+}
@@ -0,0 +1,16 @@
+package ru.buzynnikov.user_subscription_service.audit;
+
+import java.util.List;
+
+/**
+ * Приемник событий аудита. Вызывается из фонового потока конвейера аудита пачками событий.
+ */
+public interface AuditSink {
+
+    /**
+     * Записывает пачку событий.
+     *
+     * @param events события в порядке публикации
+     */
+    void write(List<AuditEvent> events);
+}
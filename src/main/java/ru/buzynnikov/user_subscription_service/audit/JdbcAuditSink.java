@@ -0,0 +1,37 @@
+package ru.buzynnikov.user_subscription_service.audit;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.List;
+
+/**
+ * Запись событий аудита в таблицу audit_events одной пакетной вставкой на пачку (audit.sink=jdbc).
+ */
+@Component
+@ConditionalOnProperty(name = "audit.sink", havingValue = "jdbc")
+public class JdbcAuditSink implements AuditSink {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcAuditSink(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void write(List<AuditEvent> events) {
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO audit_events (event_type, user_id, subscription_id, username, occurred_at) VALUES (?, ?, ?, ?, ?)",
+                events, events.size(), (statement, event) -> {
+                    statement.setString(1, event.type().name());
+                    statement.setLong(2, event.userId());
+                    if (event.subscriptionId() != null) statement.setLong(3, event.subscriptionId());
+                    else statement.setNull(3, Types.BIGINT);
+                    statement.setString(4, event.username());
+                    statement.setTimestamp(5, Timestamp.from(event.occurredAt()));
+                });
+    }
+}
@@ -0,0 +1,28 @@
+package ru.buzynnikov.user_subscription_service.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Запись событий аудита в журнал приложения (логгер audit), по одной строке с полями события на событие.
+ * Используется по умолчанию (audit.sink=log).
+ */
+@Component
+@ConditionalOnProperty(name = "audit.sink", havingValue = "log", matchIfMissing = true)
+public class LogAuditSink implements AuditSink {
+
+    private final Logger logger = LoggerFactory.getLogger("audit");
+
+    @Override
+    public void write(List<AuditEvent> events) {
+        if (!logger.isInfoEnabled()) return;
+        for (AuditEvent event : events) {
+            logger.info("type={} userId={} subscriptionId={} username={} occurredAt={}",
+                    event.type(), event.userId(), event.subscriptionId(), event.username(), event.occurredAt());
+        }
+    }
+}
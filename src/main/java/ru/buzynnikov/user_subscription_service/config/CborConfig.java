@@ -0,0 +1,30 @@
+package ru.buzynnikov.user_subscription_service.config;
+
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Двоичное представление тел запросов и ответов API в формате CBOR (application/cbor) для внутренних клиентов.
+ * Представление выбирается заголовками Accept и Content-Type, без них используется JSON.
+ * CBOR сериализуется теми же DTO и настройками Jackson, что и JSON, поэтому отдельная схема не нужна.
+ */
+@Configuration
+@Profile("!reactive")
+public class CborConfig {
+
+    /**
+     * Преобразователь CBOR на основе настроенного Spring Boot построителя ObjectMapper.
+     * Заменяет преобразователь CBOR по умолчанию на его месте в списке, после JSON.
+     *
+     * @param builder построитель ObjectMapper приложения
+     * @return преобразователь тел запросов и ответов в формате CBOR
+     */
+    @Bean
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(builder.factory(new CBORFactory()).build());
+    }
+}
@@ -0,0 +1,89 @@
+package ru.buzynnikov.user_subscription_service.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+import ru.buzynnikov.user_subscription_service.limiter.ConcurrencyLimitInterceptor;
+import ru.buzynnikov.user_subscription_service.limiter.ConcurrencyLimiter;
+import ru.buzynnikov.user_subscription_service.limiter.GradientLimit;
+
+import java.time.Duration;
+
+/**
+ * Ограничение количества одновременных запросов к API пользователей и подписок с отдельными пределами
+ * для чтения (limiter.read) и изменений (limiter.write). Пределы подстраиваются под наблюдаемую задержку
+ * в границах min-limit..max-limit; запросы сверх предела получают ответ 503 с заголовком Retry-After.
+ * Отключается свойством limiter.enabled=false.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "limiter.enabled", matchIfMissing = true)
+public class ConcurrencyLimitConfig {
+
+    @Bean
+    public ConcurrencyLimiter readConcurrencyLimiter(@Value("${limiter.read.initial-limit:50}") int initialLimit,
+                                                     @Value("${limiter.read.min-limit:10}") int minLimit,
+                                                     @Value("${limiter.read.max-limit:400}") int maxLimit) {
+        return new ConcurrencyLimiter(new GradientLimit(initialLimit, minLimit, maxLimit));
+    }
+
+    @Bean
+    public ConcurrencyLimiter writeConcurrencyLimiter(@Value("${limiter.write.initial-limit:20}") int initialLimit,
+                                                      @Value("${limiter.write.min-limit:5}") int minLimit,
+                                                      @Value("${limiter.write.max-limit:200}") int maxLimit) {
+        return new ConcurrencyLimiter(new GradientLimit(initialLimit, minLimit, maxLimit));
+    }
+
+    /**
+     * Подключает ограничение к запросам контроллеров пользователей и подписок.
+     *
+     * @return настройка Spring MVC
+     */
+    @Bean
+    public WebMvcConfigurer concurrencyLimitConfigurer(@Qualifier("readConcurrencyLimiter") ConcurrencyLimiter readConcurrencyLimiter,
+                                                       @Qualifier("writeConcurrencyLimiter") ConcurrencyLimiter writeConcurrencyLimiter,
+                                                       @Value("${limiter.retry-after:PT1S}") Duration retryAfter,
+                                                       MeterRegistry meterRegistry) {
+        ConcurrencyLimitInterceptor interceptor =
+                new ConcurrencyLimitInterceptor(readConcurrencyLimiter, writeConcurrencyLimiter, retryAfter, meterRegistry);
+        return new WebMvcConfigurer() {
+            @Override
+            public void addInterceptors(InterceptorRegistry registry) {
+                registry.addInterceptor(interceptor).addPathPatterns("/api/v1/users/**", "/api/v1/subscriptions/**");
+            }
+        };
+    }
+
+    /**
+     * Метрики ограничителей: текущий предел и количество выполняющихся запросов с тегом operation.
+     *
+     * @return регистратор метрик
+     */
+    @Bean
+    public MeterBinder concurrencyLimitMetrics(@Qualifier("readConcurrencyLimiter") ConcurrencyLimiter readConcurrencyLimiter,
+                                               @Qualifier("writeConcurrencyLimiter") ConcurrencyLimiter writeConcurrencyLimiter) {
+        return registry -> {
+            register(registry, "read", readConcurrencyLimiter);
+            register(registry, "write", writeConcurrencyLimiter);
+        };
+    }
+
+    private static void register(MeterRegistry registry, String operation, ConcurrencyLimiter limiter) {
+        Gauge.builder("api.concurrency.limit", limiter, ConcurrencyLimiter::getLimit)
+                .description("Текущий предел одновременных запросов")
+                .tag("operation", operation)
+                .register(registry);
+        Gauge.builder("api.concurrency.in.flight", limiter, ConcurrencyLimiter::getInFlight)
+                .description("Количество выполняющихся запросов")
+                .tag("operation", operation)
+                .register(registry);
+    }
+}
@@ -0,0 +1,41 @@
+package ru.buzynnikov.user_subscription_service.config;
+
+import org.hibernate.dialect.H2Dialect;
+import org.hibernate.engine.jdbc.dialect.spi.DialectResolutionInfo;
+import org.hibernate.exception.spi.ViolatedConstraintNameExtractor;
+
+/**
+ * Диалект H2 с исправленным извлечением имени нарушенного ограничения. Hibernate 6.5 для нарушения внешнего ключа
+ * в H2 отрезает первый символ имени, и GlobalExceptionHandler не узнает ограничение.
+ * Подключается в профиле test свойством hibernate.dialect.
+ */
+public class H2ConstraintNameDialect extends H2Dialect {
+
+    private static final String VIOLATION = "violation: \"";
+
+    private static final ViolatedConstraintNameExtractor EXTRACTOR = sqle -> {
+        String message = sqle.getMessage();
+        if (sqle.getSQLState() == null || !sqle.getSQLState().startsWith("23") || message == null) return null;
+        int start = message.indexOf(VIOLATION);
+        if (start < 0) return null;
+        start += VIOLATION.length();
+        int end = start;
+        while (end < message.length() && (Character.isLetterOrDigit(message.charAt(end)) || message.charAt(end) == '_'
+                || message.charAt(end) == '.')) {
+            end++;
+        }
+        return end > start ? message.substring(start, end) : null;
+    };
+
+    public H2ConstraintNameDialect() {
+    }
+
+    public H2ConstraintNameDialect(DialectResolutionInfo info) {
+        super(info);
+    }
+
+    @Override
+    public ViolatedConstraintNameExtractor getViolatedConstraintNameExtractor() {
+        return EXTRACTOR;
+    }
+}
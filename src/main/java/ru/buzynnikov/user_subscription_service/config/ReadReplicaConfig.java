@@ -0,0 +1,95 @@
+package ru.buzynnikov.user_subscription_service.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import ru.buzynnikov.user_subscription_service.services.ReadYourWrites;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+/**
+ * Настройки чтения с реплики (профиль replica). Создает пулы соединений основной базы (spring.datasource)
+ * и реплики (replica.datasource) и основной источник данных приложения, который направляет транзакции readOnly
+ * на реплику, а остальные — на основную базу.
+ */
+@Configuration
+@Profile("replica")
+public class ReadReplicaConfig {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        return properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    /**
+     * Параметры подключения к реплике. Бин не участвует в автосвязывании, чтобы автоконфигурации Spring Boot
+     * по-прежнему получали параметры основной базы.
+     *
+     * @return параметры подключения к реплике
+     */
+    @Bean(autowireCandidate = false)
+    @ConfigurationProperties("replica.datasource")
+    public DataSourceProperties replicaDataSourceProperties() {
+        return new DataSourceProperties();
+    }
+
+    @Bean
+    @ConfigurationProperties("replica.datasource.hikari")
+    public HikariDataSource replicaDataSource() {
+        return replicaDataSourceProperties().initializeDataSourceBuilder().type(HikariDataSource.class).build();
+    }
+
+    @Bean
+    public ReplicaHealth replicaHealth(@Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                       @Value("${replica.lag-query:}") String lagQuery,
+                                       @Value("${replica.max-lag:PT5S}") Duration maxLag) {
+        ReplicaHealth replicaHealth = new ReplicaHealth(replicaDataSource, lagQuery, maxLag);
+        replicaHealth.check();
+        return replicaHealth;
+    }
+
+    /**
+     * Основной источник данных приложения: маршрутизация между основной базой и репликой
+     * с отложенным получением соединения.
+     *
+     * @return источник данных приложения
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primaryDataSource,
+                                 @Qualifier("replicaDataSource") DataSource replicaDataSource,
+                                 ReplicaHealth replicaHealth, ReadYourWrites readYourWrites) {
+        return new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primaryDataSource, replicaDataSource, replicaHealth, readYourWrites));
+    }
+
+    /**
+     * Метрики реплики: доступность для чтения и последнее измеренное отставание.
+     *
+     * @param replicaHealth состояние реплики
+     * @return регистратор метрик
+     */
+    @Bean
+    public MeterBinder replicaMetrics(ReplicaHealth replicaHealth) {
+        return registry -> {
+            Gauge.builder("datasource.replica.available", replicaHealth, health -> health.isAvailable() ? 1 : 0)
+                    .description("Доступность реплики для чтения")
+                    .register(registry);
+            Gauge.builder("datasource.replica.lag", replicaHealth, ReplicaHealth::getLagSeconds)
+                    .description("Отставание реплики, секунды")
+                    .baseUnit("seconds")
+                    .register(registry);
+        };
+    }
+}
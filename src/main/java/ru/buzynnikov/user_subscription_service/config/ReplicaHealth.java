@@ -0,0 +1,84 @@
+package ru.buzynnikov.user_subscription_service.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+
+/**
+ * Состояние реплики: доступность и отставание от основной базы данных.
+ * Реплика считается недоступной, если проверочный запрос завершился ошибкой
+ * или отставание превысило replica.max-lag, а также после ошибки получения соединения с ней.
+ */
+public class ReplicaHealth {
+
+    private final Logger logger = LoggerFactory.getLogger(ReplicaHealth.class);
+
+    private final DataSource replica;
+    private final String lagQuery;
+    private final double maxLagSeconds;
+
+    private volatile boolean available;
+    private volatile double lagSeconds;
+
+    /**
+     * @param replica  источник данных реплики
+     * @param lagQuery запрос, возвращающий отставание реплики в секундах; если пуст, проверяется только соединение
+     * @param maxLag   допустимое отставание реплики
+     */
+    public ReplicaHealth(DataSource replica, String lagQuery, Duration maxLag) {
+        this.replica = replica;
+        this.lagQuery = lagQuery;
+        this.maxLagSeconds = maxLag.toMillis() / 1000.0;
+    }
+
+    /**
+     * Проверяет соединение с репликой и её отставание. Выполняется раз в replica.check-interval.
+     */
+    @Scheduled(initialDelayString = "${replica.check-interval:PT1S}", fixedDelayString = "${replica.check-interval:PT1S}")
+    public void check() {
+        try (Connection connection = replica.getConnection()) {
+            double lag = lagQuery == null || lagQuery.isBlank() ? 0 : queryLag(connection);
+            lagSeconds = lag;
+            update(lag <= maxLagSeconds, "отставание %.1f с".formatted(lag));
+        } catch (SQLException | RuntimeException e) {
+            update(false, e.getMessage());
+        }
+    }
+
+    /**
+     * Отмечает реплику недоступной до следующей успешной проверки.
+     *
+     * @param cause причина недоступности
+     */
+    public void markUnavailable(Exception cause) {
+        update(false, cause.getMessage());
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public double getLagSeconds() {
+        return lagSeconds;
+    }
+
+    private double queryLag(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement(); ResultSet resultSet = statement.executeQuery(lagQuery)) {
+            return resultSet.next() ? resultSet.getDouble(1) : 0;
+        }
+    }
+
+    private void update(boolean healthy, String reason) {
+        if (healthy == available) return;
+        available = healthy;
+        if (healthy) logger.info("Чтение переключено на реплику: {}", reason);
+        else logger.warn("Реплика недоступна, чтение переключено на основную базу данных: {}", reason);
+    }
+}
@@ -0,0 +1,58 @@
+package ru.buzynnikov.user_subscription_service.config;
+
+import org.springframework.jdbc.datasource.AbstractDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.buzynnikov.user_subscription_service.services.ReadYourWrites;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Источник данных, направляющий соединения транзакций readOnly на реплику, а остальные — на основную базу данных.
+ * На основную базу также направляются чтения недавно измененных пользователей ({@link ReadYourWrites})
+ * и все чтения, пока реплика недоступна или отстает. Ошибка получения соединения с репликой
+ * отмечает её недоступной, и соединение выдается основной базой.
+ * <p>
+ * Признак readOnly становится известен уже после начала транзакции, поэтому источник должен использоваться
+ * через {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}, откладывающий получение
+ * соединения до первого запроса.
+ */
+public class ReplicaRoutingDataSource extends AbstractDataSource {
+
+    private final DataSource primary;
+    private final DataSource replica;
+    private final ReplicaHealth replicaHealth;
+    private final ReadYourWrites readYourWrites;
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaHealth replicaHealth,
+                                    ReadYourWrites readYourWrites) {
+        this.primary = primary;
+        this.replica = replica;
+        this.replicaHealth = replicaHealth;
+        this.readYourWrites = readYourWrites;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (useReplica()) {
+            try {
+                return replica.getConnection();
+            } catch (SQLException e) {
+                replicaHealth.markUnavailable(e);
+            }
+        }
+        return primary.getConnection();
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return getConnection();
+    }
+
+    private boolean useReplica() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                && !readYourWrites.isPrimaryRequired()
+                && replicaHealth.isAvailable();
+    }
+}
@@ -0,0 +1,101 @@
+package ru.buzynnikov.user_subscription_service.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnThreading;
+import org.springframework.boot.autoconfigure.thread.Threading;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Настройки режима обработки запросов на виртуальных потоках (spring.threads.virtual.enabled=true, Java 21+).
+ * Ограничивает количество одновременных обращений к каждому пулу соединений его размером,
+ * чтобы тысячи виртуальных потоков не конкурировали за соединения внутри пула.
+ */
+@Configuration
+@ConditionalOnThreading(Threading.VIRTUAL)
+public class VirtualThreadsConfig {
+
+    /**
+     * Оборачивает каждый пул соединений HikariCP в {@link ConnectionLimitingDataSource}, включая пулы шардов внутри
+     * {@link ShardRoutingDataSource}. Маршрутизирующие и отложенные источники данных поверх пулов не оборачиваются,
+     * поэтому соединение захватывает разрешение только своего пула.
+     * Количество разрешений равно размеру пула, время ожидания разрешения — времени ожидания соединения этого пула.
+     *
+     * @return постобработчик бинов источников данных
+     */
+    @Bean
+    public static ConnectionLimitingPostProcessor connectionLimitingDataSourcePostProcessor() {
+        return new ConnectionLimitingPostProcessor();
+    }
+
+    /**
+     * Метрики насыщения ограничителей соединений: количество ожидающих потоков и свободных разрешений
+     * с тегом pool по имени пула.
+     *
+     * @param postProcessor постобработчик, создавший ограничители
+     * @return регистратор метрик
+     */
+    @Bean
+    public MeterBinder connectionLimitMetrics(ConnectionLimitingPostProcessor postProcessor) {
+        return registry -> postProcessor.getLimitedPools().forEach((pool, limiting) -> {
+            Gauge.builder("datasource.connections.limit.waiting", limiting, ConnectionLimitingDataSource::getWaitingThreads)
+                    .description("Потоки, ожидающие разрешения на получение соединения")
+                    .tag("pool", pool)
+                    .register(registry);
+            Gauge.builder("datasource.connections.limit.available", limiting, ConnectionLimitingDataSource::getAvailablePermits)
+                    .description("Свободные разрешения на получение соединения")
+                    .tag("pool", pool)
+                    .register(registry);
+        });
+    }
+
+    /**
+     * Постобработчик, оборачивающий пулы соединений HikariCP в ограничители соединений.
+     */
+    public static class ConnectionLimitingPostProcessor implements BeanPostProcessor {
+
+        private final Map<String, ConnectionLimitingDataSource> limitedPools = new ConcurrentHashMap<>();
+
+        @Override
+        public Object postProcessBeforeInitialization(Object bean, String beanName) {
+            if (bean instanceof ShardRoutingDataSource shardRoutingDataSource) {
+                shardRoutingDataSource.decorateShards(shard -> limit(shard, beanName + "-" + limitedPools.size()));
+            }
+            return bean;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(Object bean, String beanName) {
+            return bean instanceof HikariDataSource ? limit((HikariDataSource) bean, beanName) : bean;
+        }
+
+        /**
+         * @return ограничители соединений по именам пулов
+         */
+        public Map<String, ConnectionLimitingDataSource> getLimitedPools() {
+            return limitedPools;
+        }
+
+        /**
+         * Оборачивает пул соединений в ограничитель с размером и временем ожидания этого пула.
+         *
+         * @param dataSource  источник данных
+         * @param defaultName имя для метрик, если у пула не задано имя
+         * @return ограничитель соединений либо исходный источник данных, если это не пул HikariCP
+         */
+        private DataSource limit(DataSource dataSource, String defaultName) {
+            if (!(dataSource instanceof HikariDataSource pool)) return dataSource;
+            ConnectionLimitingDataSource limiting = new ConnectionLimitingDataSource(pool, pool.getMaximumPoolSize(), pool.getConnectionTimeout());
+            limitedPools.put(pool.getPoolName() != null ? pool.getPoolName() : defaultName, limiting);
+            return limiting;
+        }
+    }
+}
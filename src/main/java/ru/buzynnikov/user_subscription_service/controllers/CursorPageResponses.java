@@ -0,0 +1,53 @@
+package ru.buzynnikov.user_subscription_service.controllers;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+
+import java.util.List;
+
+/**
+ * Формирование HTTP-ответов для постраничных выборок по ключу.
+ * Тело ответа содержит элементы страницы, ссылка на следующую страницу передается в заголовке Link.
+ */
+final class CursorPageResponses {
+
+    private CursorPageResponses() {
+    }
+
+    /**
+     * Формирует успешный HTTP-ответ со страницей результатов.
+     *
+     * @param page страница результатов
+     * @param <T>  тип элементов страницы
+     * @return HTTP-ответ с элементами страницы и заголовком Link с rel="next", если есть следующая страница
+     */
+    static <T> ResponseEntity<List<T>> ok(CursorPage<T> page) {
+        return ok(page, ResponseEntity.ok());
+    }
+
+    /**
+     * Формирует успешный HTTP-ответ со страницей результатов и заголовком ETag.
+     * Ответ зависит от представления, поэтому содержит заголовок Vary: Accept.
+     *
+     * @param page страница результатов
+     * @param eTag значение ETag версии ресурса в выбранном представлении, см. {@link RepresentationETags}
+     * @param <T>  тип элементов страницы
+     * @return HTTP-ответ с элементами страницы, заголовком ETag и заголовком Link, если есть следующая страница
+     */
+    static <T> ResponseEntity<List<T>> ok(CursorPage<T> page, String eTag) {
+        return ok(page, ResponseEntity.ok().eTag(eTag).varyBy(HttpHeaders.ACCEPT));
+    }
+
+    private static <T> ResponseEntity<List<T>> ok(CursorPage<T> page, ResponseEntity.BodyBuilder builder) {
+        if (page.nextCursor() != null) {
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("after", page.nextCursor())
+                    .build()
+                    .toUriString();
+            builder.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return builder.body(page.items());
+    }
+}
@@ -1,7 +1,11 @@
 package ru.buzynnikov.user_subscription_service.controllers;
 
-
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 
@@ -9,31 +13,62 @@ import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
-import ru.buzynnikov.user_subscription_service.aspect.ErrorLog;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
 import ru.buzynnikov.user_subscription_service.dto.ErrorResponse;
+import ru.buzynnikov.user_subscription_service.exceptions.ServiceOverloadedException;
 import ru.buzynnikov.user_subscription_service.exceptions.SubscriptionNotFoundException;
 import ru.buzynnikov.user_subscription_service.exceptions.UserNotFoundException;
 
+import java.sql.SQLException;
+import java.util.Set;
+
 
 /**
  * Класс глобального перехватчика исключений, предназначенный для обработки исключительных ситуаций,
  * возникающих в контроллерах приложения.
+ * Каждое обработанное исключение учитывается в счетчике api.errors с тегами outcome и exception
+ * и записывается в журнал одной строкой; стек вызовов пишется только на уровне DEBUG.
+ * Отказы из-за перегрузки при большом потоке запросов заполнили бы журнал, поэтому пишутся только на уровне DEBUG.
  */
 @ControllerAdvice
 public class GlobalExceptionHandler {
 
+    private static final String FK_USER = "fk_user_subscriptions_user";
+    private static final String FK_SUBSCRIPTION = "fk_user_subscriptions_subscription";
+    private static final Set<String> FOREIGN_KEY_SQL_STATES = Set.of("23503", "23506");
+
+    private final Logger logger = LoggerFactory.getLogger(GlobalExceptionHandler.class);
+
+    private final MeterRegistry meterRegistry;
+
+    public GlobalExceptionHandler(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     /**
      * Обработчик исключения {@link DataIntegrityViolationException}, которое возникает при нарушении целостности данных,
      * например, попытке добавить дублирующиеся записи в базу данных.
+     * Нарушение внешнего ключа означает, что связанной записи нет, и возвращается как NOT FOUND. Вид нарушения
+     * определяется по точному имени ограничения, а если его нет, по SQLState: 23503 в PostgreSQL и 23506 в H2.
      *
      * @param ex исключение, вызванное нарушением целостности данных
-     * @return HTTP-ответ с ошибкой CONFLICT (код 409) и описанием возникшей ситуации
+     * @return HTTP-ответ с ошибкой NOT FOUND (код 404) при нарушении внешнего ключа,
+     * иначе с ошибкой CONFLICT (код 409) и описанием возникшей ситуации
      */
-    @ErrorLog
     @ExceptionHandler(DataIntegrityViolationException.class)
     public ResponseEntity<ErrorResponse> handleDataIntegrityViolation(DataIntegrityViolationException ex) {
-        return ResponseEntity.status(HttpStatus.CONFLICT)
-                .body(new ErrorResponse("Дублирование данных: " + ex.getMostSpecificCause().getMessage()));
+        String constraintName = constraintName(ex);
+        if (FK_USER.equalsIgnoreCase(constraintName)) {
+            return error(HttpStatus.NOT_FOUND, "not_found", ex, "Пользователь не найден");
+        }
+        if (FK_SUBSCRIPTION.equalsIgnoreCase(constraintName)) {
+            return error(HttpStatus.NOT_FOUND, "not_found", ex, "Подписка не найдена");
+        }
+        String sqlState = sqlState(ex);
+        if (sqlState != null && FOREIGN_KEY_SQL_STATES.contains(sqlState)) {
+            return error(HttpStatus.NOT_FOUND, "not_found", ex, "Связанная запись не найдена");
+        }
+        return error(HttpStatus.CONFLICT, "conflict", ex, "Дублирование данных: " + ex.getMostSpecificCause().getMessage());
     }
     /**
      * Обработчик исключения {@link UserNotFoundException}, которое сигнализирует о том, что запрашиваемый пользователь не найден.
@@ -41,10 +76,9 @@ public class GlobalExceptionHandler {
      * @param ex исключение, вызванное отсутствием пользователя
      * @return HTTP-ответ с ошибкой NOT FOUND (код 404) и сообщением о причине отсутствия пользователя
      */
-    @ErrorLog
     @ExceptionHandler(UserNotFoundException.class)
     public ResponseEntity<ErrorResponse> handleUserNotFound(UserNotFoundException ex) {
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(ex.getMessage()));
+        return error(HttpStatus.NOT_FOUND, "not_found", ex, ex.getMessage());
     }
 
     /**
@@ -53,10 +87,9 @@ public class GlobalExceptionHandler {
      * @param ex исключение, вызванное отсутствием подписки
      * @return HTTP-ответ с ошибкой NOT FOUND (код 404) и сообщением о причине отсутствия подписки
      */
-    @ErrorLog
     @ExceptionHandler(SubscriptionNotFoundException.class)
     public ResponseEntity<ErrorResponse> handleSubscriptionNotFound(SubscriptionNotFoundException ex) {
-        return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ErrorResponse(ex.getMessage()));
+        return error(HttpStatus.NOT_FOUND, "not_found", ex, ex.getMessage());
     }
 
     /**
@@ -65,10 +98,19 @@ public class GlobalExceptionHandler {
      * @param ex экземпляр исключения проверки аргументов
      * @return HTTP-ответ с кодом BAD REQUEST (400), содержащий сообщение о первой ошибке валидации
      */
-    @ErrorLog
     @ExceptionHandler(MethodArgumentNotValidException.class)
     public ResponseEntity<ErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex) {
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse(ex.getBindingResult().getAllErrors().get(0).getDefaultMessage()));
+        return error(HttpStatus.BAD_REQUEST, "bad_request", ex, ex.getBindingResult().getAllErrors().get(0).getDefaultMessage());
+    }
+    /**
+     * Метод-обработчик исключения типа {@link HandlerMethodValidationException}. Возникает, когда не прошла проверку валидность параметров запроса.
+     *
+     * @param ex экземпляр исключения проверки параметров
+     * @return HTTP-ответ с кодом BAD REQUEST (400), содержащий сообщение о первой ошибке валидации
+     */
+    @ExceptionHandler(HandlerMethodValidationException.class)
+    public ResponseEntity<ErrorResponse> handleValidationExceptions(HandlerMethodValidationException ex) {
+        return error(HttpStatus.BAD_REQUEST, "bad_request", ex, ex.getAllErrors().get(0).getDefaultMessage());
     }
     /**
      * Метод-обработчик исключения типа {@link HttpMessageNotReadableException}. Происходит, когда сервер не смог прочитать тело запроса (например, неверный JSON).
@@ -76,9 +118,70 @@ public class GlobalExceptionHandler {
      * @param ex экземпляр исключения чтения тела запроса
      * @return HTTP-ответ с кодом BAD REQUEST (400), содержащий стандартное сообщение об ошибке
      */
-    @ErrorLog
     @ExceptionHandler(HttpMessageNotReadableException.class)
     public ResponseEntity<ErrorResponse> handleValidationExceptions(HttpMessageNotReadableException ex) {
-        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ErrorResponse("Ошибка в теле запроса"));
+        return error(HttpStatus.BAD_REQUEST, "bad_request", ex, "Ошибка в теле запроса");
+    }
+
+    /**
+     * Обработчик исключения {@link ServiceOverloadedException}, которое возникает при превышении допустимого количества
+     * одновременных запросов.
+     *
+     * @param ex исключение перегрузки сервиса
+     * @return HTTP-ответ с кодом SERVICE UNAVAILABLE (503) и заголовком Retry-After в секундах
+     */
+    @ExceptionHandler(ServiceOverloadedException.class)
+    public ResponseEntity<ErrorResponse> handleServiceOverloaded(ServiceOverloadedException ex) {
+        meterRegistry.counter("api.errors", "outcome", "overloaded", "exception", ex.getClass().getSimpleName()).increment();
+        logger.debug("{} {}: {}", HttpStatus.SERVICE_UNAVAILABLE.value(), ex.getClass().getSimpleName(), ex.getMessage());
+        long retryAfterSeconds = Math.max(1, (ex.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(new ErrorResponse(ex.getMessage()));
+    }
+
+    /**
+     * Возвращает имя нарушенного ограничения из цепочки причин исключения.
+     * Имя, извлеченное Hibernate из сообщения H2, начинается с пробела, поэтому пробелы по краям отбрасываются.
+     *
+     * @param ex исключение, вызванное нарушением целостности данных
+     * @return имя ограничения либо null, если драйвер его не сообщил
+     */
+    private static String constraintName(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ConstraintViolationException violation && violation.getConstraintName() != null) {
+                return violation.getConstraintName().strip();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Возвращает SQLState первого исключения JDBC из цепочки причин исключения.
+     *
+     * @param ex исключение, вызванное нарушением целостности данных
+     * @return SQLState либо null, если исключения JDBC в цепочке нет
+     */
+    private static String sqlState(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException sqlException && sqlException.getSQLState() != null) return sqlException.getSQLState();
+        }
+        return null;
+    }
+
+    /**
+     * Формирует ответ с ошибкой, увеличивает счетчик обработанных ошибок и записывает ошибку в журнал одной строкой.
+     *
+     * @param status  HTTP-статус ответа
+     * @param outcome результат обработки запроса для метрики (not_found, conflict, bad_request)
+     * @param ex      обработанное исключение
+     * @param message сообщение об ошибке для клиента
+     * @return HTTP-ответ с сообщением об ошибке
+     */
+    private ResponseEntity<ErrorResponse> error(HttpStatus status, String outcome, Exception ex, String message) {
+        meterRegistry.counter("api.errors", "outcome", outcome, "exception", ex.getClass().getSimpleName()).increment();
+        logger.warn("{} {}: {}", status.value(), ex.getClass().getSimpleName(), message);
+        logger.debug("Стек вызовов исключения", ex);
+        return ResponseEntity.status(status).body(new ErrorResponse(message));
     }
 }
@@ -0,0 +1,58 @@
+package ru.buzynnikov.user_subscription_service.controllers;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.context.request.WebRequest;
+
+import java.util.List;
+
+/**
+ * Формирование значений ETag с учетом представления ответа.
+ * Ответы в JSON и CBOR с одной версией ресурса различаются побайтно, а строгий ETag должен различать представления,
+ * поэтому к версии в представлении CBOR добавляется суффикс -cbor. ETag представления JSON совпадает с версией.
+ */
+final class RepresentationETags {
+
+    private static final String CBOR_SUFFIX = "-cbor";
+    private static final List<MediaType> PRODUCIBLE = List.of(MediaType.APPLICATION_JSON, MediaType.APPLICATION_CBOR);
+
+    private RepresentationETags() {
+    }
+
+    /**
+     * Возвращает значение ETag версии ресурса для представления, выбранного по заголовку Accept.
+     *
+     * @param version    версия ресурса
+     * @param webRequest текущий запрос
+     * @return версия ресурса с суффиксом -cbor для представления CBOR, иначе версия без изменений
+     */
+    static String of(String version, WebRequest webRequest) {
+        return MediaType.APPLICATION_CBOR.equals(negotiate(webRequest.getHeader(HttpHeaders.ACCEPT))) ? version + CBOR_SUFFIX : version;
+    }
+
+    /**
+     * Выбирает представление так же, как Spring MVC: первый подходящий формат для наиболее конкретного
+     * и предпочтительного типа из заголовка Accept, JSON при отсутствии или ошибке в заголовке.
+     *
+     * @param accept значение заголовка Accept
+     * @return тип представления ответа
+     */
+    private static MediaType negotiate(String accept) {
+        if (accept == null || accept.isBlank()) return MediaType.APPLICATION_JSON;
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MimeTypeUtils.sortBySpecificity(accepted);
+        for (MediaType mediaType : accepted) {
+            for (MediaType producible : PRODUCIBLE) {
+                if (mediaType.isCompatibleWith(producible)) return producible;
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+}
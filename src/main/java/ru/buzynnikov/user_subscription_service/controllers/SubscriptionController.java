@@ -1,34 +1,96 @@
 package ru.buzynnikov.user_subscription_service.controllers;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryRequest;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryResponse;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
 import ru.buzynnikov.user_subscription_service.services.interfaces.SubscriptionService;
 
+import java.time.Duration;
 import java.util.List;
 
 /**
  * Контроллер для управления доступом к ресурсам подписки через REST API.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/v1/subscriptions")
 public class SubscriptionController {
 
     private final SubscriptionService subscriptionService;
+    private final CacheControl topCacheControl;
 
-    public SubscriptionController(SubscriptionService subscriptionService) {
+    public SubscriptionController(SubscriptionService subscriptionService,
+                                  @Value("${subscriptions.top.max-age:PT5S}") Duration topMaxAge) {
         this.subscriptionService = subscriptionService;
+        this.topCacheControl = CacheControl.maxAge(topMaxAge).mustRevalidate();
     }
 
     /**
-     * Метод GET-контроллера, возвращающий список трёх наиболее популярных подписок.
+     * Метод GET-контроллера, возвращающий список наиболее популярных подписок (по умолчанию трёх).
+     * Версия рейтинга передается в заголовке ETag, время кэширования ответа — в заголовке Cache-Control.
+     * Ответ зависит от заголовка Accept (JSON или CBOR), о чем кэши предупреждает заголовок Vary,
+     * а ETag представления CBOR отличается от ETag представления JSON.
+     * Если версия совпадает с переданной в If-None-Match, возвращается 304 без построения списка.
      *
-     * @return успешный HTTP-ответ с телом в виде списка объектов SubscriptionResponse
+     * @param limit      максимальное количество подписок в ответе
+     * @param webRequest текущий запрос для проверки If-None-Match
+     * @return успешный HTTP-ответ с телом в виде списка объектов SubscriptionResponse либо 304 Not Modified
      */
     @GetMapping("/top")
-    public ResponseEntity<List<SubscriptionResponse>> getAllSubscriptions() {
-        return ResponseEntity.ok(subscriptionService.getSubscriptionsTop3());
+    public ResponseEntity<List<SubscriptionResponse>> getAllSubscriptions(
+            @RequestParam(defaultValue = "3") @Min(value = 1, message = "Размер топа должен быть не меньше 1") int limit,
+            WebRequest webRequest) {
+        String eTag = RepresentationETags.of(subscriptionService.getSubscriptionsTopVersion(), webRequest);
+        // checkNotModified сам добавляет заголовок ETag к ответу 304
+        if (webRequest.checkNotModified(eTag)) return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(topCacheControl).varyBy(HttpHeaders.ACCEPT).build();
+        return ResponseEntity.ok().eTag(eTag).cacheControl(topCacheControl).varyBy(HttpHeaders.ACCEPT).body(subscriptionService.getSubscriptionsTop(limit));
+    }
+
+    /**
+     * Получение страницы подписчиков подписки, упорядоченных по идентификатору.
+     * Ссылка на следующую страницу передается в заголовке Link.
+     *
+     * @param id    идентификатор подписки
+     * @param after идентификатор пользователя, после которого начинается страница
+     * @param size  размер страницы
+     * @return успешный HTTP-ответ со списком подписчиков
+     */
+    @GetMapping("/{id}/users")
+    public ResponseEntity<List<UserResponse>> getSubscriptionUsers(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") @Min(value = 1, message = "Размер страницы должен быть от 1 до 1000")
+            @Max(value = 1000, message = "Размер страницы должен быть от 1 до 1000") int size) {
+        return CursorPageResponses.ok(subscriptionService.getSubscriptionUsers(id, after, size));
+    }
+
+    /**
+     * Поиск пользователей по логическому выражению над подписками (and, or, not).
+     * Возвращает общее количество подходящих пользователей и страницу их идентификаторов.
+     *
+     * @param request выражение и параметры страницы
+     * @return успешный HTTP-ответ с результатом поиска
+     */
+    @PostMapping("/query")
+    public ResponseEntity<SubscriptionQueryResponse> querySubscribers(@Valid @RequestBody SubscriptionQueryRequest request) {
+        return ResponseEntity.ok(subscriptionService.querySubscribers(request));
     }
 }
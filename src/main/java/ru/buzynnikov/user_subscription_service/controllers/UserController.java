@@ -1,29 +1,64 @@
 package ru.buzynnikov.user_subscription_service.controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.util.UriComponentsBuilder;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchRequest;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchResponse;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchStatus;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionRequest;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserBatchResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserImportFailure;
+import ru.buzynnikov.user_subscription_service.dto.UserImportProgress;
 import ru.buzynnikov.user_subscription_service.dto.UserRequest;
 import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+import ru.buzynnikov.user_subscription_service.services.interfaces.UserImportListener;
+import ru.buzynnikov.user_subscription_service.services.interfaces.UserImportService;
 import ru.buzynnikov.user_subscription_service.services.interfaces.UserService;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 
 /**
  * Контроллер для управления пользователями через REST API.
  */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/api/v1/users")
 public class UserController {
 
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter streamWriter;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserImportService userImportService, ObjectMapper objectMapper) {
         this.userService = userService;
+        this.userImportService = userImportService;
+        this.objectMapper = objectMapper;
+        this.streamWriter = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
     }
 
     /**
@@ -42,6 +77,90 @@ public class UserController {
         return ResponseEntity.created(location).body(userResponse);
     }
 
+    /**
+     * Массовый импорт пользователей из потока NDJSON (один объект пользователя на строку).
+     * Ответ также передается потоком NDJSON: по строке на каждую ошибку и на каждую сохраненную пачку,
+     * последняя строка содержит итог импорта с признаком completed.
+     *
+     * @param body     поток тела запроса
+     * @param response HTTP-ответ, в который записывается ход импорта
+     * @throws IOException если не удалось прочитать запрос или записать ответ
+     */
+    @PostMapping(value = "/import", consumes = MediaType.APPLICATION_NDJSON_VALUE, produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public void importUsers(InputStream body, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_NDJSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        OutputStream output = response.getOutputStream();
+        userImportService.importUsers(body, new UserImportListener() {
+            @Override
+            public void onFailure(UserImportFailure failure) {
+                writeLine(output, failure);
+            }
+
+            @Override
+            public void onProgress(UserImportProgress progress) {
+                writeLine(output, progress);
+                try {
+                    output.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Получение страницы пользователей, упорядоченных по идентификатору.
+     * Ссылка на следующую страницу передается в заголовке Link.
+     *
+     * @param after идентификатор пользователя, после которого начинается страница
+     * @param size  размер страницы
+     * @return успешный HTTP-ответ со списком пользователей
+     */
+    @GetMapping
+    public ResponseEntity<List<UserResponse>> getUsers(
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") @Min(value = 1, message = "Размер страницы должен быть от 1 до 1000")
+            @Max(value = 1000, message = "Размер страницы должен быть от 1 до 1000") int size) {
+        return CursorPageResponses.ok(userService.getUsers(after, size));
+    }
+
+    /**
+     * Получение нескольких пользователей по списку идентификаторов, например {@code ?ids=1,2,3&include=subscriptions}.
+     * Ненайденные идентификаторы перечисляются в поле missingIds ответа и не приводят к ошибке.
+     *
+     * @param ids     идентификаторы пользователей
+     * @param include subscriptions, чтобы добавить в ответ подписки пользователей
+     * @return успешный HTTP-ответ с найденными пользователями в порядке запроса
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<UserBatchResponse> getUsersByIds(
+            @RequestParam @Size(min = 1, max = 1000, message = "Количество идентификаторов должно быть от 1 до 1000") List<Long> ids,
+            @RequestParam(required = false)
+            @Pattern(regexp = "subscriptions", message = "Параметр include может принимать только значение subscriptions") String include) {
+        return ResponseEntity.ok(userService.getUsersByIds(ids, include != null));
+    }
+
+    /**
+     * Выгрузка всех пользователей с идентификатором больше заданного одним JSON-массивом.
+     * Пользователи записываются в ответ по мере чтения из базы данных, без построения списка в памяти.
+     * Если ошибка произошла после отправки начала массива, ответ обрывается и содержит некорректный JSON.
+     *
+     * @param after    идентификатор пользователя, после которого начинается выгрузка
+     * @param response HTTP-ответ, в который записываются пользователи
+     * @throws IOException если не удалось записать ответ
+     */
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public void exportUsers(@RequestParam(defaultValue = "0") long after, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        JsonGenerator generator = objectMapper.createGenerator(response.getOutputStream());
+        SequenceWriter users = streamWriter.writeValuesAsArray(generator);
+        userService.exportUsers(after, user -> writeValue(users, user));
+        users.close();
+        generator.close();
+    }
+
     /**
      * Получение информации о конкретном пользователе по его идентификатору.
      *
@@ -79,26 +198,62 @@ public class UserController {
     }
 
     /**
-     * Добавление новой подписки пользователю.
+     * Добавление новой подписки пользователю. Повторное добавление той же подписки не считается ошибкой.
      *
      * @param id          идентификатор пользователя
      * @param request     информация о добавляемой подписке
-     * @return пустой успешный HTTP-ответ (HTTP статус 204 No Content)
+     * @return пустой успешный HTTP-ответ (HTTP статус 204 No Content), если подписка добавлена,
+     * HTTP-ответ 200 OK со статусом ALREADY_PRESENT, если пользователь уже был подписан,
+     * или 202 Accepted, если подписка принята к отложенной записи
      */
     @PostMapping("/{id}/subscriptions")
-    public ResponseEntity<Void> subscribeUser(@PathVariable Long id,@Valid @RequestBody SubscriptionRequest request) {
-        userService.addSubscription(id, request);
+    public ResponseEntity<SubscriptionBatchResponse> subscribeUser(@PathVariable Long id,@Valid @RequestBody SubscriptionRequest request) {
+        if (userService.isSubscriptionWriteBehind()) {
+            userService.scheduleSubscriptionChange(id, request.id(), true);
+            return ResponseEntity.accepted().build();
+        }
+        SubscriptionBatchStatus status = userService.addSubscription(id, request);
+        if (status == SubscriptionBatchStatus.ALREADY_PRESENT) {
+            return ResponseEntity.ok(new SubscriptionBatchResponse(request.id(), status));
+        }
         return ResponseEntity.noContent().build();
     }
     /**
-     * Получение списка подписок конкретного пользователя.
+     * Добавление пользователю нескольких подписок за один запрос.
      *
-     * @param id идентификатор пользователя
-     * @return успешный HTTP-ответ с набором подписок пользователя
+     * @param id          идентификатор пользователя
+     * @param request     идентификаторы добавляемых подписок
+     * @return успешный HTTP-ответ с результатом добавления каждой подписки
+     */
+    @PostMapping("/{id}/subscriptions/batch")
+    public ResponseEntity<List<SubscriptionBatchResponse>> subscribeUserBatch(@PathVariable Long id, @Valid @RequestBody SubscriptionBatchRequest request) {
+        return ResponseEntity.ok(userService.addSubscriptions(id, request));
+    }
+    /**
+     * Получение страницы подписок конкретного пользователя, упорядоченных по идентификатору.
+     * Ссылка на следующую страницу передается в заголовке Link, версия пользователя — в заголовке ETag
+     * с учетом представления ответа (JSON или CBOR). Если версия совпадает с переданной в If-None-Match, возвращается 304 без выборки подписок.
+     * Пока у пользователя есть изменения, ожидающие отложенной записи, версия им не соответствует,
+     * поэтому ETag не передается и условный запрос не проверяется.
+     *
+     * @param id         идентификатор пользователя
+     * @param after      идентификатор подписки, после которого начинается страница
+     * @param size       размер страницы
+     * @param webRequest текущий запрос для проверки If-None-Match
+     * @return успешный HTTP-ответ со списком подписок пользователя либо 304 Not Modified
      */
     @GetMapping("/{id}/subscriptions")
-    public ResponseEntity<Set<SubscriptionResponse>> getUserSubscriptions(@PathVariable Long id) {
-        return ResponseEntity.ok(userService.getUserSubscriptions(id));
+    public ResponseEntity<List<SubscriptionResponse>> getUserSubscriptions(
+            @PathVariable Long id,
+            @RequestParam(defaultValue = "0") long after,
+            @RequestParam(defaultValue = "100") @Min(value = 1, message = "Размер страницы должен быть от 1 до 1000")
+            @Max(value = 1000, message = "Размер страницы должен быть от 1 до 1000") int size,
+            WebRequest webRequest) {
+        if (userService.hasPendingSubscriptionChanges(id)) return CursorPageResponses.ok(userService.getUserSubscriptions(id, after, size));
+        String eTag = RepresentationETags.of(String.valueOf(userService.getUserVersion(id)), webRequest);
+        // checkNotModified сам добавляет заголовок ETag к ответу 304
+        if (webRequest.checkNotModified(eTag)) return ResponseEntity.status(HttpStatus.NOT_MODIFIED).varyBy(HttpHeaders.ACCEPT).build();
+        return CursorPageResponses.ok(userService.getUserSubscriptions(id, after, size), eTag);
     }
 
     /**
@@ -107,12 +262,44 @@ public class UserController {
      * @param id              идентификатор пользователя
      * @param subscriptionId  идентификатор отменяемой подписки
      * @return пустой успешный HTTP-ответ (HTTP статус 204 No Content)
+     * или 202 Accepted, если отписка принята к отложенной записи
      */
     @DeleteMapping("/{id}/subscriptions/{subscriptionId}")
     public ResponseEntity<Void> unsubscribeUser(@PathVariable Long id, @PathVariable Long subscriptionId) {
+        if (userService.isSubscriptionWriteBehind()) {
+            userService.scheduleSubscriptionChange(id, subscriptionId, false);
+            return ResponseEntity.accepted().build();
+        }
         userService.deleteSubscriptionFormUser(id, subscriptionId);
         return ResponseEntity.noContent().build();
     }
 
+    /**
+     * Записывает объект в JSON-массив потока ответа без сброса буфера после каждого объекта.
+     *
+     * @param writer запись элементов JSON-массива
+     * @param value  записываемый объект
+     */
+    private void writeValue(SequenceWriter writer, Object value) {
+        try {
+            writer.write(value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
+    /**
+     * Записывает объект в поток ответа в виде одной строки NDJSON.
+     *
+     * @param output поток ответа
+     * @param value  записываемый объект
+     */
+    private void writeLine(OutputStream output, Object value) {
+        try {
+            output.write(objectMapper.writeValueAsBytes(value));
+            output.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 }
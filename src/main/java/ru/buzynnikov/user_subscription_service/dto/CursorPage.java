@@ -0,0 +1,28 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Страница результатов при постраничной выборке по ключу (keyset pagination)
+ * @param items - элементы страницы, упорядоченные по возрастанию id
+ * @param nextCursor - id последнего элемента страницы, если есть следующая страница, иначе null
+ * @param <T> - тип элементов страницы
+ */
+public record CursorPage<T>(List<T> items, Long nextCursor) {
+
+    /**
+     * Формирует страницу из результата запроса, выбравшего на один элемент больше размера страницы.
+     *
+     * @param rows     результат запроса размером не более size + 1
+     * @param size     размер страницы
+     * @param idGetter функция получения id элемента
+     * @param <T>      тип элементов страницы
+     * @return страница результатов
+     */
+    public static <T> CursorPage<T> of(List<T> rows, int size, Function<T, Long> idGetter) {
+        if (rows.size() <= size) return new CursorPage<>(rows, null);
+        List<T> items = rows.subList(0, size);
+        return new CursorPage<>(items, idGetter.apply(items.get(size - 1)));
+    }
+}
@@ -0,0 +1,17 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * DTO для запроса на добавление пользователю нескольких подписок
+ * @param ids ID существующих подписок
+ */
+public record SubscriptionBatchRequest(@NotEmpty(message = "Список подписок не может быть пустым")
+                                       @Size(max = 100, message = "За один запрос можно добавить не более 100 подписок")
+                                       List<@NotNull(message = "Идентификатор подписки не может быть пустым") Long> ids) {
+}
@@ -0,0 +1,9 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * DTO для ответа с результатом добавления одной подписки в рамках пакетного запроса
+ * @param id - id подписки
+ * @param status - результат добавления подписки
+ */
+public record SubscriptionBatchResponse(Long id, SubscriptionBatchStatus status) {
+}
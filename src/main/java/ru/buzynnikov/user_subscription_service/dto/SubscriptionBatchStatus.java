@@ -0,0 +1,19 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * Результат добавления подписки пользователю в рамках пакетного запроса
+ */
+public enum SubscriptionBatchStatus {
+    /**
+     * Подписка добавлена пользователю
+     */
+    ADDED,
+    /**
+     * Пользователь уже подписан
+     */
+    ALREADY_PRESENT,
+    /**
+     * Подписка не найдена
+     */
+    UNKNOWN
+}
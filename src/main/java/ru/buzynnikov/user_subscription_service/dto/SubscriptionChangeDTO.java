@@ -0,0 +1,10 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * DTO изменения подписки пользователя для отложенной записи
+ * @param userId - id пользователя
+ * @param subscriptionId - id подписки
+ * @param subscribed - true для подписки, false для отписки
+ */
+public record SubscriptionChangeDTO(Long userId, Long subscriptionId, boolean subscribed) {
+}
@@ -0,0 +1,10 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * DTO для получения количества подписчиков каждой подписки из репозитория
+ * @param id - id подписки
+ * @param name - название подписки
+ * @param count - количество подписанных пользователей
+ */
+public record SubscriptionCountDTO(Long id, String name, Long count) {
+}
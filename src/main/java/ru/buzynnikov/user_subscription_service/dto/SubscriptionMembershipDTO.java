@@ -0,0 +1,9 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * DTO для получения из репозитория существующих подписок и признака подписки на них пользователя
+ * @param id - id подписки
+ * @param userId - id пользователя, если он уже подписан, иначе null
+ */
+public record SubscriptionMembershipDTO(Long id, Long userId) {
+}
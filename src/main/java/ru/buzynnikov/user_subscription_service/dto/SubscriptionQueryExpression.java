@@ -0,0 +1,64 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+
+import java.util.List;
+
+/**
+ * Выражение над множествами подписчиков подписок. Тип выражения определяется по имени его поля:
+ * {@code {"subscription": 1}}, {@code {"and": [...]}}, {@code {"or": [...]}}, {@code {"not": {...}}}.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.DEDUCTION)
+@JsonSubTypes({
+        @JsonSubTypes.Type(SubscriptionQueryExpression.Subscription.class),
+        @JsonSubTypes.Type(SubscriptionQueryExpression.And.class),
+        @JsonSubTypes.Type(SubscriptionQueryExpression.Or.class),
+        @JsonSubTypes.Type(SubscriptionQueryExpression.Not.class)
+})
+public sealed interface SubscriptionQueryExpression {
+
+    /**
+     * Подписчики подписки.
+     *
+     * @param subscription ID подписки
+     */
+    record Subscription(@NotNull(message = "Идентификатор подписки не может быть пустым") Long subscription)
+            implements SubscriptionQueryExpression {
+    }
+
+    /**
+     * Пересечение множеств.
+     *
+     * @param and выражения, все из которых должны выполняться
+     */
+    record And(@NotEmpty(message = "Список выражений не может быть пустым")
+               @Size(max = 100, message = "Выражение может содержать не более 100 операндов")
+               List<@NotNull(message = "Выражение не может быть пустым") @Valid SubscriptionQueryExpression> and)
+            implements SubscriptionQueryExpression {
+    }
+
+    /**
+     * Объединение множеств.
+     *
+     * @param or выражения, хотя бы одно из которых должно выполняться
+     */
+    record Or(@NotEmpty(message = "Список выражений не может быть пустым")
+              @Size(max = 100, message = "Выражение может содержать не более 100 операндов")
+              List<@NotNull(message = "Выражение не может быть пустым") @Valid SubscriptionQueryExpression> or)
+            implements SubscriptionQueryExpression {
+    }
+
+    /**
+     * Дополнение множества до множества всех пользователей.
+     *
+     * @param not выражение, которое не должно выполняться
+     */
+    record Not(@NotNull(message = "Выражение не может быть пустым") @Valid SubscriptionQueryExpression not)
+            implements SubscriptionQueryExpression {
+    }
+}
@@ -0,0 +1,27 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.PositiveOrZero;
+
+/**
+ * DTO для запроса на поиск пользователей по выражению над подписками
+ * @param query выражение над подписками
+ * @param after ID пользователя, после которого начинается страница (по умолчанию 0)
+ * @param size  размер страницы (по умолчанию 100)
+ */
+public record SubscriptionQueryRequest(@NotNull(message = "Выражение не может быть пустым") @Valid SubscriptionQueryExpression query,
+                                       @PositiveOrZero(message = "Курсор не может быть отрицательным") Long after,
+                                       @Min(value = 1, message = "Размер страницы должен быть от 1 до 1000")
+                                       @Max(value = 1000, message = "Размер страницы должен быть от 1 до 1000") Integer size) {
+
+    public long afterOrDefault() {
+        return after == null ? 0 : after;
+    }
+
+    public int sizeOrDefault() {
+        return size == null ? 100 : size;
+    }
+}
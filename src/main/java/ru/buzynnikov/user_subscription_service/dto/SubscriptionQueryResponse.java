@@ -0,0 +1,12 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+import java.util.List;
+
+/**
+ * DTO для ответа на поиск пользователей по выражению над подписками
+ * @param count      количество пользователей, удовлетворяющих выражению
+ * @param userIds    ID пользователей страницы по возрастанию
+ * @param nextCursor значение after для следующей страницы либо null, если страница последняя
+ */
+public record SubscriptionQueryResponse(long count, List<Long> userIds, Long nextCursor) {
+}
@@ -0,0 +1,11 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+import java.util.List;
+
+/**
+ * DTO для ответа на получение нескольких пользователей за один запрос
+ * @param users - найденные пользователи в порядке запроса
+ * @param missingIds - id пользователей, которые не найдены
+ */
+public record UserBatchResponse(List<UserDetailsResponse> users, List<Long> missingIds) {
+}
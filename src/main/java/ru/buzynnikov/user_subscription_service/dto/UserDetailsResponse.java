@@ -0,0 +1,15 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * DTO для ответа, содержащего информацию о пользователе и, по запросу, его подписки
+ * @param id - id пользователя
+ * @param name - имя пользователя
+ * @param subscriptions - подписки пользователя по возрастанию id либо null, если подписки не запрошены
+ */
+public record UserDetailsResponse(Long id, String name,
+                                  @JsonInclude(JsonInclude.Include.NON_NULL) List<SubscriptionResponse> subscriptions) {
+}
@@ -0,0 +1,9 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * DTO с описанием строки, которую не удалось импортировать
+ * @param line - номер строки во входном потоке (начиная с 1)
+ * @param error - причина ошибки
+ */
+public record UserImportFailure(long line, String error) {
+}
@@ -0,0 +1,11 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * DTO с информацией о ходе импорта пользователей
+ * @param processed - количество обработанных строк
+ * @param imported - количество сохраненных пользователей
+ * @param failed - количество строк с ошибками
+ * @param completed - признак завершения импорта
+ */
+public record UserImportProgress(long processed, long imported, long failed, boolean completed) {
+}
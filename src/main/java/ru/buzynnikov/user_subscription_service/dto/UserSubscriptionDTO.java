@@ -0,0 +1,10 @@
+package ru.buzynnikov.user_subscription_service.dto;
+
+/**
+ * DTO для получения из репозитория подписок сразу нескольких пользователей
+ * @param userId - id пользователя
+ * @param id - id подписки
+ * @param name - название подписки
+ */
+public record UserSubscriptionDTO(Long userId, Long id, String name) {
+}
@@ -0,0 +1,24 @@
+package ru.buzynnikov.user_subscription_service.exceptions;
+
+import java.time.Duration;
+
+/**
+ * Ошибка, возникающая при отказе в обработке запроса из-за перегрузки: превышения допустимого количества
+ * одновременных запросов или заполнения очереди отложенной записи подписок
+ */
+public class ServiceOverloadedException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public ServiceOverloadedException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return время, через которое клиенту следует повторить запрос
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
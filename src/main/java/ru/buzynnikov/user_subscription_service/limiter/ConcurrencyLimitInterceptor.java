@@ -0,0 +1,57 @@
+package ru.buzynnikov.user_subscription_service.limiter;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+import ru.buzynnikov.user_subscription_service.exceptions.ServiceOverloadedException;
+
+import java.time.Duration;
+
+/**
+ * Перехватчик запросов к контроллерам, отклоняющий запросы сверх адаптивного предела одновременных запросов.
+ * Чтение (GET и HEAD) и изменения ограничиваются отдельно, чтобы медленные изменения не вытесняли чтение.
+ * Отклоненный запрос завершается ошибкой {@link ServiceOverloadedException} до вызова контроллера и не занимает
+ * соединение с базой данных. Задержка принятого запроса измеряется до окончания записи ответа.
+ * Количество отклоненных запросов публикуется в метрике api.concurrency.rejected с тегом operation.
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private static final String LIMITER_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".limiter";
+    private static final String START_ATTRIBUTE = ConcurrencyLimitInterceptor.class.getName() + ".start";
+
+    private final ConcurrencyLimiter readLimiter;
+    private final ConcurrencyLimiter writeLimiter;
+    private final Duration retryAfter;
+    private final MeterRegistry meterRegistry;
+
+    public ConcurrencyLimitInterceptor(ConcurrencyLimiter readLimiter, ConcurrencyLimiter writeLimiter, Duration retryAfter,
+                                       MeterRegistry meterRegistry) {
+        this.readLimiter = readLimiter;
+        this.writeLimiter = writeLimiter;
+        this.retryAfter = retryAfter;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        boolean read = HttpMethod.GET.matches(request.getMethod()) || HttpMethod.HEAD.matches(request.getMethod());
+        ConcurrencyLimiter limiter = read ? readLimiter : writeLimiter;
+        if (!limiter.tryAcquire()) {
+            meterRegistry.counter("api.concurrency.rejected", "operation", read ? "read" : "write").increment();
+            throw new ServiceOverloadedException("Сервис перегружен, повторите запрос позже", retryAfter);
+        }
+        request.setAttribute(LIMITER_ATTRIBUTE, limiter);
+        request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (!(request.getAttribute(LIMITER_ATTRIBUTE) instanceof ConcurrencyLimiter limiter)) return;
+        request.removeAttribute(LIMITER_ATTRIBUTE);
+        long latency = System.nanoTime() - (long) request.getAttribute(START_ATTRIBUTE);
+        limiter.release(latency, ex != null || response.getStatus() >= 500);
+    }
+}
@@ -0,0 +1,49 @@
+package ru.buzynnikov.user_subscription_service.limiter;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ограничитель количества одновременных запросов с адаптивным пределом {@link GradientLimit}.
+ * Запрос сверх предела не ожидает освобождения места, а сразу получает отказ.
+ */
+public class ConcurrencyLimiter {
+
+    private final GradientLimit limit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    public ConcurrencyLimiter(GradientLimit limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Занимает место для запроса, если текущий предел не достигнут.
+     * Занятое место освобождается вызовом {@link #release(long, boolean)}.
+     *
+     * @return true, если место получено
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= limit.getLimit()) return false;
+            if (inFlight.compareAndSet(current, current + 1)) return true;
+        }
+    }
+
+    /**
+     * Освобождает место завершенного запроса и передает его задержку алгоритму пересчета предела.
+     *
+     * @param rttNanos задержка запроса в наносекундах
+     * @param dropped  запрос завершился ошибкой сервера
+     */
+    public void release(long rttNanos, boolean dropped) {
+        limit.onSample(rttNanos, inFlight.getAndDecrement(), dropped);
+    }
+
+    public int getLimit() {
+        return limit.getLimit();
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
@@ -0,0 +1,90 @@
+package ru.buzynnikov.user_subscription_service.limiter;
+
+/**
+ * Адаптивный предел количества одновременных запросов, вычисляемый по наблюдаемой задержке (градиентный алгоритм).
+ * <p>
+ * Долгосрочная задержка — экспоненциальное среднее задержек последних ~600 запросов — считается задержкой
+ * ненагруженной системы. Отношение долгосрочной задержки к задержке очередного запроса (градиент, от 0.5 до 1)
+ * показывает, растет ли очередь: пока задержка не превышает долгосрочную больше чем в TOLERANCE раз, градиент равен 1,
+ * и предел увеличивается на квадратный корень из своего значения; при росте задержки предел уменьшается
+ * пропорционально градиенту. Новое значение сглаживается с текущим. Ответ с ошибкой сервера уменьшает предел
+ * в BACKOFF_RATIO раз, как в алгоритме AIMD.
+ * <p>
+ * Предел не увеличивается, пока занято меньше половины его значения: малая нагрузка не подтверждает,
+ * что система выдержит больше.
+ */
+public class GradientLimit {
+
+    private static final double SMOOTHING = 0.2;
+    private static final double TOLERANCE = 1.5;
+    private static final double BACKOFF_RATIO = 0.9;
+    private static final int LONG_WINDOW = 600;
+    private static final int WARMUP_SAMPLES = 10;
+
+    private final int minLimit;
+    private final int maxLimit;
+
+    private double estimatedLimit;
+    private double longRtt;
+    private long samples;
+    private volatile int limit;
+
+    /**
+     * @param initialLimit начальный предел
+     * @param minLimit     минимальный предел
+     * @param maxLimit     максимальный предел
+     */
+    public GradientLimit(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit < 1 || minLimit > maxLimit) {
+            throw new IllegalArgumentException("Некорректные границы предела: %d..%d".formatted(minLimit, maxLimit));
+        }
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = clamp(initialLimit);
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @return текущий предел количества одновременных запросов
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Учитывает завершенный запрос и пересчитывает предел.
+     *
+     * @param rttNanos задержка запроса в наносекундах
+     * @param inFlight количество одновременных запросов в момент завершения, включая этот
+     * @param dropped  запрос завершился ошибкой сервера
+     */
+    public synchronized void onSample(long rttNanos, int inFlight, boolean dropped) {
+        if (dropped) {
+            update(estimatedLimit * BACKOFF_RATIO);
+            return;
+        }
+        double rtt = Math.max(rttNanos, 1);
+        samples++;
+        if (samples <= WARMUP_SAMPLES) {
+            longRtt += (rtt - longRtt) / samples;
+            return;
+        }
+        longRtt += (rtt - longRtt) * 2 / (LONG_WINDOW + 1);
+        // После спада задержки долгосрочное среднее быстрее возвращается к новому уровню
+        if (longRtt / rtt > 2) longRtt *= 0.95;
+        if (inFlight < estimatedLimit / 2) return;
+
+        double gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rtt));
+        double newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+        update(estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING);
+    }
+
+    private void update(double newLimit) {
+        estimatedLimit = clamp(newLimit);
+        limit = (int) estimatedLimit;
+    }
+
+    private double clamp(double value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
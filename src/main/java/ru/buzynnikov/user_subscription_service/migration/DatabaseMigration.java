@@ -0,0 +1,29 @@
+package ru.buzynnikov.user_subscription_service.migration;
+
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+
+/**
+ * Применение миграций Liquibase отдельным шагом перед запуском экземпляров приложения.
+ * Контекст содержит только источник данных и Liquibase, без сканирования компонентов, JPA и веб-сервера,
+ * и закрывается после применения миграций. Экземпляры приложения в этом случае запускаются
+ * с spring.liquibase.enabled=false и не проверяют журнал изменений при каждом старте.
+ * <p>
+ * Настройки источника данных и журнала изменений берутся из application.yaml и профилей, как у приложения.
+ * Миграции шардов (профиль sharding) применяются при запуске приложения.
+ * <p>
+ * Запуск: {@code java -cp application.jar ru.buzynnikov.user_subscription_service.migration.DatabaseMigration}
+ */
+@ImportAutoConfiguration({DataSourceAutoConfiguration.class, LiquibaseAutoConfiguration.class})
+public class DatabaseMigration {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(DatabaseMigration.class)
+                .web(WebApplicationType.NONE)
+                .run(args)
+                .close();
+    }
+}
@@ -0,0 +1,177 @@
+package ru.buzynnikov.user_subscription_service.migration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Перенос связей пользователей и подписок в таблицу, секционированную по user_id (профиль partition-migration).
+ * <p>
+ * Пустую секционированную копию user_subscriptions_partitioned создает Liquibase. Эта процедура создает триггер,
+ * повторяющий в копии вставки и удаления из user_subscriptions, и только на время переноса, чтобы в остальное время
+ * изменения связей не записывались дважды. Затем существующие строки копируются порциями по возрастанию
+ * user_id, каждая порция — в своей короткой транзакции, поэтому приложение продолжает работать во время копирования.
+ * Копируемые строки блокируются FOR SHARE: удаление строки ждет фиксации порции и затем удаляется триггером
+ * из копии, а не остается в ней. После копирования таблицы меняются местами в одной транзакции под эксклюзивной
+ * блокировкой, которая держится только на время переименования. Индексы и внешние ключи новой таблицы получают
+ * имена ограничений прежней таблицы. Прежняя таблица остается под именем
+ * user_subscriptions_unpartitioned и удаляется вручную после проверки.
+ * <p>
+ * Запускается отдельным процессом без веб-сервера и завершает его по окончании переноса.
+ */
+@Component
+@Profile("partition-migration")
+public class UserSubscriptionsPartitionMigration implements ApplicationRunner {
+
+    private static final String COPY_SQL = """
+            WITH batch AS (
+                SELECT user_id, subscription_id
+                FROM user_subscriptions
+                WHERE user_id > ? AND user_id <= ?
+                FOR SHARE
+            )
+            INSERT INTO user_subscriptions_partitioned (user_id, subscription_id)
+            SELECT user_id, subscription_id FROM batch
+            ON CONFLICT DO NOTHING
+            """;
+
+    private static final String MIRROR_FUNCTION_SQL = """
+            CREATE OR REPLACE FUNCTION mirror_user_subscriptions() RETURNS trigger AS $$
+            BEGIN
+                IF TG_OP = 'INSERT' THEN
+                    INSERT INTO user_subscriptions_partitioned (user_id, subscription_id)
+                    VALUES (NEW.user_id, NEW.subscription_id)
+                    ON CONFLICT DO NOTHING;
+                ELSE
+                    DELETE FROM user_subscriptions_partitioned
+                    WHERE user_id = OLD.user_id AND subscription_id = OLD.subscription_id;
+                END IF;
+                RETURN NULL;
+            END $$ LANGUAGE plpgsql
+            """;
+
+    private static final String MIRROR_TRIGGER_SQL = """
+            CREATE TRIGGER user_subscriptions_mirror
+            AFTER INSERT OR DELETE ON user_subscriptions
+            FOR EACH ROW EXECUTE FUNCTION mirror_user_subscriptions()
+            """;
+
+    /**
+     * Имена ограничений user_subscriptions, созданные миграцией create-user-sub-tables.
+     */
+    private static final Set<String> CONSTRAINT_NAMES = Set.of(
+            "user_subscriptions_pkey", "fk_user_subscriptions_user", "fk_user_subscriptions_subscription");
+
+    private final Logger logger = LoggerFactory.getLogger(UserSubscriptionsPartitionMigration.class);
+
+    private final ConfigurableApplicationContext context;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final int usersPerBatch;
+
+    public UserSubscriptionsPartitionMigration(ConfigurableApplicationContext context, JdbcTemplate jdbcTemplate,
+                                               PlatformTransactionManager transactionManager,
+                                               @Value("${partition-migration.users-per-batch:10000}") int usersPerBatch) {
+        this.context = context;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.usersPerBatch = usersPerBatch;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (partitionedCopyExists()) {
+            mirror();
+            copy();
+            swap();
+        } else {
+            logger.info("Таблица user_subscriptions уже секционирована, перенос не требуется");
+        }
+        System.exit(SpringApplication.exit(context));
+    }
+
+    /**
+     * Создает триггер, повторяющий изменения user_subscriptions в секционированной таблице. Создание триггера ждет
+     * завершения транзакций, изменяющих user_subscriptions, поэтому каждая связь либо уже зафиксирована и будет
+     * скопирована, либо изменяется после создания триггера. Триггер прерванного ранее переноса пересоздается.
+     */
+    private void mirror() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+            jdbcTemplate.execute(MIRROR_FUNCTION_SQL);
+            jdbcTemplate.execute("DROP TRIGGER IF EXISTS user_subscriptions_mirror ON user_subscriptions");
+            jdbcTemplate.execute(MIRROR_TRIGGER_SQL);
+        });
+        logger.info("Создан триггер переноса изменений user_subscriptions в секционированную таблицу");
+    }
+
+    /**
+     * Копирует существующие строки в секционированную таблицу порциями по usersPerBatch идентификаторов пользователей.
+     */
+    private void copy() {
+        Long maxUserId = jdbcTemplate.queryForObject("SELECT MAX(user_id) FROM user_subscriptions", Long.class);
+        if (maxUserId == null) return;
+        long copied = 0;
+        for (long after = 0; after < maxUserId; after += usersPerBatch) {
+            long from = after;
+            Integer rows = transactionTemplate.execute(status -> jdbcTemplate.update(COPY_SQL, from, from + usersPerBatch));
+            copied += rows == null ? 0 : rows;
+            logger.info("Скопировано строк: {}, пользователи до id {} из {}", copied, Math.min(from + usersPerBatch, maxUserId), maxUserId);
+        }
+    }
+
+    /**
+     * Меняет таблицы местами. Изменения, выполненные во время копирования, уже перенесены триггером.
+     */
+    private void swap() {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.execute("SET LOCAL lock_timeout = '5s'");
+            jdbcTemplate.execute("LOCK TABLE user_subscriptions IN ACCESS EXCLUSIVE MODE");
+            jdbcTemplate.execute("DROP TRIGGER user_subscriptions_mirror ON user_subscriptions");
+            jdbcTemplate.execute("DROP FUNCTION mirror_user_subscriptions()");
+            jdbcTemplate.execute("ALTER TABLE user_subscriptions RENAME TO user_subscriptions_unpartitioned");
+            jdbcTemplate.execute("ALTER INDEX user_subscriptions_pkey RENAME TO user_subscriptions_unpartitioned_pkey");
+            jdbcTemplate.execute("ALTER INDEX idx_user_subscriptions_subscription_user RENAME TO idx_user_subscriptions_unpartitioned_subscription_user");
+            jdbcTemplate.execute("ALTER TABLE user_subscriptions_unpartitioned RENAME CONSTRAINT fk_user_subscriptions_user TO fk_user_subscriptions_unpartitioned_user");
+            jdbcTemplate.execute("ALTER TABLE user_subscriptions_unpartitioned RENAME CONSTRAINT fk_user_subscriptions_subscription TO fk_user_subscriptions_unpartitioned_subscription");
+            jdbcTemplate.execute("ALTER TABLE user_subscriptions_partitioned RENAME TO user_subscriptions");
+            jdbcTemplate.execute("ALTER INDEX pk_user_subscriptions_partitioned RENAME TO user_subscriptions_pkey");
+            jdbcTemplate.execute("ALTER INDEX idx_user_subscriptions_partitioned_subscription_user RENAME TO idx_user_subscriptions_subscription_user");
+            jdbcTemplate.execute("ALTER TABLE user_subscriptions RENAME CONSTRAINT fk_user_subscriptions_partitioned_user TO fk_user_subscriptions_user");
+            jdbcTemplate.execute("ALTER TABLE user_subscriptions RENAME CONSTRAINT fk_user_subscriptions_partitioned_subscription TO fk_user_subscriptions_subscription");
+            checkConstraintNames();
+        });
+        logger.info("Таблица user_subscriptions секционирована, прежняя таблица сохранена как user_subscriptions_unpartitioned");
+    }
+
+    /**
+     * Проверяет, что у новой таблицы user_subscriptions те же имена ограничений, что и у прежней:
+     * по ним сервис пользователей различает отсутствие пользователя и подписки при добавлении подписки.
+     * При несовпадении транзакция переименования откатывается.
+     */
+    private void checkConstraintNames() {
+        List<String> names = jdbcTemplate.queryForList(
+                "SELECT conname FROM pg_constraint WHERE conrelid = 'user_subscriptions'::regclass", String.class);
+        if (!names.containsAll(CONSTRAINT_NAMES)) {
+            throw new IllegalStateException(String.format(
+                    "Ограничения user_subscriptions после переименования: %s, ожидаются %s", names, CONSTRAINT_NAMES));
+        }
+    }
+
+    private boolean partitionedCopyExists() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT to_regclass('user_subscriptions_partitioned') IS NOT NULL", Boolean.class));
+    }
+}
@@ -13,7 +13,8 @@ import java.util.Set;
 public class Subscription {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "subscriptions_id_generator")
+    @SequenceGenerator(name = "subscriptions_id_generator", sequenceName = "subscriptions_seq", allocationSize = 50)
     private Long id;
 
     private String name;
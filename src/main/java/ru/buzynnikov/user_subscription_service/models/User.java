@@ -1,6 +1,7 @@
 package ru.buzynnikov.user_subscription_service.models;
 
 import jakarta.persistence.*;
+import ru.buzynnikov.user_subscription_service.sharding.ShardedSequence;
 
 import java.util.HashSet;
 import java.util.Objects;
@@ -13,12 +14,23 @@ import java.util.Set;
 @Table(name = "users")
 public class User {
 
+    /**
+     * Идентификатор из последовательности users_seq шарда, на котором создается пользователь;
+     * по идентификатору определяется шард пользователя.
+     */
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @ShardedSequence(name = "users_seq", allocationSize = 50)
     private Long id;
 
     private String username;
 
+    /**
+     * Счетчик изменений пользователя и его подписок. Увеличивается запросами репозитория,
+     * поэтому не записывается через сущность.
+     */
+    @Column(insertable = false, updatable = false)
+    private long version;
+
     /**
      * Набор подписок, которыми пользуется данный пользователь.
      * Используется ленивая загрузка (LAZY fetch type) для повышения производительности.
@@ -55,6 +67,10 @@ public class User {
         this.username = username;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
     public Set<Subscription> getSubscriptions() {
         return subscriptions;
     }
@@ -0,0 +1,85 @@
+package ru.buzynnikov.user_subscription_service.reactive;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.r2dbc.ConnectionFactoryBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+import static org.springframework.web.reactive.function.server.RequestPredicates.GET;
+import static org.springframework.web.reactive.function.server.RouterFunctions.route;
+
+/**
+ * Настройки неблокирующего режима чтения (профиль reactive).
+ * В этом режиме приложение обслуживает только GET-запросы к пользователям, их подпискам и топу подписок
+ * на Netty с небольшим фиксированным числом потоков; запись выполняется экземплярами в обычном режиме.
+ */
+@Configuration
+@Profile("reactive")
+public class ReactiveConfig implements DisposableBean {
+
+    private ConnectionPool connectionPool;
+
+    /**
+     * Сервер Netty вместо реактивного адаптера Tomcat, который также присутствует в classpath.
+     *
+     * @return фабрика веб-сервера Netty
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * Клиент R2DBC с пулом соединений.
+     * Пул намеренно не регистрируется как бин: при наличии бина ConnectionFactory автоконфигурация не создает
+     * DataSource, который по-прежнему нужен JPA, Liquibase и построению рейтинга подписок.
+     *
+     * @param url      адрес базы данных R2DBC
+     * @param username имя пользователя базы данных
+     * @param password пароль пользователя базы данных
+     * @param maxSize  максимальный размер пула соединений
+     * @return клиент базы данных
+     */
+    @Bean
+    public DatabaseClient databaseClient(@Value("${spring.r2dbc.url}") String url,
+                                         @Value("${spring.r2dbc.username}") String username,
+                                         @Value("${spring.r2dbc.password}") String password,
+                                         @Value("${spring.r2dbc.pool.max-size:10}") int maxSize) {
+        connectionPool = new ConnectionPool(ConnectionPoolConfiguration.builder(ConnectionFactoryBuilder.withUrl(url)
+                        .username(username)
+                        .password(password)
+                        .build())
+                .maxSize(maxSize)
+                .build());
+        return DatabaseClient.create(connectionPool);
+    }
+
+    /**
+     * Закрытие пула соединений R2DBC вместе с контекстом приложения.
+     */
+    @Override
+    public void destroy() {
+        if (connectionPool != null) connectionPool.dispose();
+    }
+
+    /**
+     * Маршруты реактивных обработчиков.
+     *
+     * @param handler обработчики GET-запросов
+     * @return функция маршрутизации
+     */
+    @Bean
+    public RouterFunction<ServerResponse> readRoutes(ReactiveReadHandler handler) {
+        return route(GET("/api/v1/users/{id}"), handler::getUser)
+                .andRoute(GET("/api/v1/users/{id}/subscriptions"), handler::getUserSubscriptions)
+                .andRoute(GET("/api/v1/subscriptions/top"), handler::getTopSubscriptions);
+    }
+}
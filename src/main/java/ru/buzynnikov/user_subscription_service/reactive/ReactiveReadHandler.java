@@ -0,0 +1,144 @@
+package ru.buzynnikov.user_subscription_service.reactive;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+import ru.buzynnikov.user_subscription_service.dto.ErrorResponse;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionLeaderboard;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Реактивные обработчики GET-запросов к пользователям и подпискам.
+ * Ответы совпадают с ответами UserController и SubscriptionController.
+ */
+@Component
+@Profile("reactive")
+public class ReactiveReadHandler {
+
+    private static final String PAGE_SIZE_ERROR = "Размер страницы должен быть от 1 до 1000";
+    private static final String PARAMETER_ERROR = "Параметры запроса должны быть целыми числами";
+
+    private final ReactiveReadRepository repository;
+    private final SubscriptionLeaderboard subscriptionLeaderboard;
+    private final CacheControl topCacheControl;
+
+    public ReactiveReadHandler(ReactiveReadRepository repository, SubscriptionLeaderboard subscriptionLeaderboard,
+                               @Value("${subscriptions.top.max-age:PT5S}") Duration topMaxAge) {
+        this.repository = repository;
+        this.subscriptionLeaderboard = subscriptionLeaderboard;
+        this.topCacheControl = CacheControl.maxAge(topMaxAge).mustRevalidate();
+    }
+
+    /**
+     * Получение информации о пользователе по его идентификатору.
+     *
+     * @param request HTTP-запрос с идентификатором пользователя в пути
+     * @return HTTP-ответ с объектом пользователя либо 404, если пользователь не найден
+     */
+    public Mono<ServerResponse> getUser(ServerRequest request) {
+        return withNumericParameters(() -> {
+            Long id = Long.valueOf(request.pathVariable("id"));
+            return repository.findUserById(id)
+                    .flatMap(user -> ServerResponse.ok().bodyValue(user))
+                    .switchIfEmpty(userNotFound(id));
+        });
+    }
+
+    /**
+     * Получение страницы подписок пользователя, упорядоченных по идентификатору.
+     * Ссылка на следующую страницу передается в заголовке Link, версия пользователя — в заголовке ETag.
+     * Если версия совпадает с переданной в If-None-Match, возвращается 304 без выборки подписок.
+     *
+     * @param request HTTP-запрос с идентификатором пользователя в пути и параметрами after и size
+     * @return HTTP-ответ со списком подписок, 304, если подписки не изменились, либо 404, если пользователь не найден
+     */
+    public Mono<ServerResponse> getUserSubscriptions(ServerRequest request) {
+        return withNumericParameters(() -> {
+            Long id = Long.valueOf(request.pathVariable("id"));
+            long after = Long.parseLong(request.queryParam("after").orElse("0"));
+            int size = Integer.parseInt(request.queryParam("size").orElse("100"));
+            if (size < 1 || size > 1000) return badRequest(PAGE_SIZE_ERROR);
+
+            return repository.findUserVersion(id)
+                    .map(String::valueOf)
+                    .flatMap(eTag -> request.checkNotModified(eTag).switchIfEmpty(Mono.defer(() ->
+                            repository.findSubscriptionsByUserId(id, after, size + 1).collectList()
+                                    .flatMap(rows -> page(request, CursorPage.of(rows, size, SubscriptionResponse::id), eTag)))))
+                    .switchIfEmpty(userNotFound(id));
+        });
+    }
+
+    /**
+     * Получение списка наиболее популярных подписок из рейтинга в памяти.
+     * Версия рейтинга передается в заголовке ETag, время кэширования ответа — в заголовке Cache-Control.
+     *
+     * @param request HTTP-запрос с необязательным параметром limit
+     * @return HTTP-ответ со списком подписок либо 304, если рейтинг не изменился
+     */
+    public Mono<ServerResponse> getTopSubscriptions(ServerRequest request) {
+        return withNumericParameters(() -> {
+            int limit = Integer.parseInt(request.queryParam("limit").orElse("3"));
+            if (limit < 1) return badRequest("Размер топа должен быть не меньше 1");
+            String eTag = subscriptionLeaderboard.version();
+            return request.checkNotModified(eTag)
+                    .flatMap(notModified -> ServerResponse.status(HttpStatus.NOT_MODIFIED).eTag(eTag).cacheControl(topCacheControl).build())
+                    .switchIfEmpty(Mono.defer(() -> ServerResponse.ok().eTag(eTag).cacheControl(topCacheControl)
+                            .bodyValue(subscriptionLeaderboard.top(limit))));
+        });
+    }
+
+    /**
+     * Формирует HTTP-ответ со страницей результатов, заголовком ETag и заголовком Link на следующую страницу.
+     *
+     * @param request исходный HTTP-запрос
+     * @param page    страница результатов
+     * @param eTag    значение ETag версии ресурса
+     * @return HTTP-ответ с элементами страницы
+     */
+    private Mono<ServerResponse> page(ServerRequest request, CursorPage<?> page, String eTag) {
+        ServerResponse.BodyBuilder builder = ServerResponse.ok().eTag(eTag);
+        if (page.nextCursor() != null) {
+            String next = UriComponentsBuilder.fromUri(request.uri())
+                    .replaceQueryParam("after", page.nextCursor())
+                    .build()
+                    .toUriString();
+            builder.header(HttpHeaders.LINK, "<" + next + ">; rel=\"next\"");
+        }
+        return builder.bodyValue(page.items());
+    }
+
+    /**
+     * Выполняет обработчик, разбирающий числовые параметры пути и запроса. Нечисловое значение параметра
+     * дает ответ 400, как и в UserController, а не ошибку сервера.
+     *
+     * @param handler обработчик запроса
+     * @return HTTP-ответ обработчика либо 400, если параметр не является числом
+     */
+    private Mono<ServerResponse> withNumericParameters(Supplier<Mono<ServerResponse>> handler) {
+        try {
+            return handler.get();
+        } catch (NumberFormatException e) {
+            return badRequest(PARAMETER_ERROR);
+        }
+    }
+
+    private Mono<ServerResponse> userNotFound(Long id) {
+        return Mono.defer(() -> ServerResponse.status(HttpStatus.NOT_FOUND)
+                .bodyValue(new ErrorResponse(String.format("Пользователь с id %d не найден", id))));
+    }
+
+    private Mono<ServerResponse> badRequest(String message) {
+        return ServerResponse.status(HttpStatus.BAD_REQUEST).bodyValue(new ErrorResponse(message));
+    }
+}
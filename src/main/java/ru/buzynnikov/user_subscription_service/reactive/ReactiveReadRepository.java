@@ -0,0 +1,74 @@
+package ru.buzynnikov.user_subscription_service.reactive;
+
+import org.springframework.context.annotation.Profile;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+
+/**
+ * Неблокирующий репозиторий чтения пользователей и их подписок через R2DBC.
+ * Запросы повторяют запросы UserRepository и SubscriptionRepository в виде SQL.
+ */
+@Repository
+@Profile("reactive")
+public class ReactiveReadRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public ReactiveReadRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+
+    /**
+     * Поиск пользователя по идентификатору.
+     *
+     * @param id идентификатор пользователя
+     * @return объект UserResponse либо пустой результат, если пользователь не найден
+     */
+    public Mono<UserResponse> findUserById(Long id) {
+        return databaseClient.sql("SELECT id, username FROM users WHERE id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> new UserResponse(row.get("id", Long.class), row.get("username", String.class)))
+                .one();
+    }
+
+    /**
+     * Поиск версии пользователя.
+     *
+     * @param id идентификатор пользователя
+     * @return счетчик изменений пользователя и его подписок либо пустой результат, если пользователь не найден
+     */
+    public Mono<Long> findUserVersion(Long id) {
+        return databaseClient.sql("SELECT version FROM users WHERE id = :id")
+                .bind("id", id)
+                .map((row, metadata) -> row.get("version", Long.class))
+                .one();
+    }
+
+    /**
+     * Поиск подписок, принадлежащих указанному пользователю, с идентификатором больше заданного.
+     *
+     * @param userId идентификатор пользователя
+     * @param after  идентификатор подписки, после которого начинается выборка
+     * @param limit  максимальное количество подписок в выборке
+     * @return подписки пользователя, упорядоченные по возрастанию идентификатора
+     */
+    public Flux<SubscriptionResponse> findSubscriptionsByUserId(Long userId, long after, int limit) {
+        return databaseClient.sql("""
+                        SELECT s.id, s.name
+                        FROM subscriptions s
+                        JOIN user_subscriptions us ON us.subscription_id = s.id
+                        WHERE us.user_id = :userId AND s.id > :after
+                        ORDER BY s.id
+                        LIMIT :limit
+                        """)
+                .bind("userId", userId)
+                .bind("after", after)
+                .bind("limit", limit)
+                .map((row, metadata) -> new SubscriptionResponse(row.get("id", Long.class), row.get("name", String.class)))
+                .all();
+    }
+}
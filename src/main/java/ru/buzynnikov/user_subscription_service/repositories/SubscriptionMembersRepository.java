@@ -0,0 +1,31 @@
+package ru.buzynnikov.user_subscription_service.repositories;
+
+import org.springframework.data.domain.Limit;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionCountDTO;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+
+import java.util.List;
+
+/**
+ * Репозиторий для выборки подписчиков подписок из таблицы user_subscriptions.
+ */
+public interface SubscriptionMembersRepository {
+
+    /**
+     * Поиск подписчиков указанной подписки с идентификатором больше заданного.
+     *
+     * @param subscriptionId идентификатор подписки
+     * @param after          идентификатор пользователя, после которого начинается выборка
+     * @param limit          максимальное количество пользователей в выборке
+     * @return список объектов UserResponse, упорядоченный по возрастанию идентификатора
+     */
+    List<UserResponse> findSubscribersBySubscriptionId(Long subscriptionId, Long after, Limit limit);
+
+    /**
+     * Получение количества подписчиков для каждой подписки, включая подписки без подписчиков.
+     * Используется для построения и сверки рейтинга подписок.
+     *
+     * @return список объектов SubscriptionCountDTO со всеми подписками и количеством их подписчиков
+     */
+    List<SubscriptionCountDTO> findSubscriptionCounts();
+}
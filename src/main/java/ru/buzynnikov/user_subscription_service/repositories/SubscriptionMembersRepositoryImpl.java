@@ -0,0 +1,104 @@
+package ru.buzynnikov.user_subscription_service.repositories;
+
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionCountDTO;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+
+import java.util.List;
+
+/**
+ * Реализация выборки подписчиков через JDBC. Запросы написаны на SQL, потому что JPQL не позволяет
+ * обратиться к столбцам таблицы связей user_subscriptions.
+ */
+public class SubscriptionMembersRepositoryImpl implements SubscriptionMembersRepository {
+
+    /**
+     * Страница выбирается только по индексу (subscription_id, user_id) с границей по user_subscriptions.user_id,
+     * после чего по первичному ключу читаются не больше limit пользователей. С границей по users.id и соединением
+     * до ограничения выборки читались бы все подписчики подписки до границы страницы.
+     */
+    private static final String SUBSCRIBERS_SQL = """
+            SELECT u.id, u.username
+            FROM users u
+            WHERE u.id IN (
+                SELECT us.user_id
+                FROM user_subscriptions us
+                WHERE us.subscription_id = ? AND us.user_id > ?
+                ORDER BY us.subscription_id, us.user_id
+                FETCH FIRST ? ROWS ONLY
+            )
+            ORDER BY u.id
+            """;
+
+    /**
+     * Подписчики подсчитываются по user_subscriptions до соединения с subscriptions. Для таблицы, секционированной
+     * по user_id, PostgreSQL при этом читает секции параллельно, группирует строки частичными агрегатами в каждом
+     * процессе и объединяет частичные итоги, а соединение выполняется уже с одной строкой на подписку.
+     * Группировка по секциям включается параметром enable_partitionwise_aggregate только для транзакции запроса.
+     */
+    private static final String COUNTS_SQL = """
+            SELECT s.id, s.name, COALESCE(c.subscribers, 0)
+            FROM subscriptions s
+            LEFT JOIN (
+                SELECT subscription_id, COUNT(*) AS subscribers
+                FROM user_subscriptions
+                GROUP BY subscription_id
+            ) c ON c.subscription_id = s.id
+            """;
+
+    private static final String PARTITIONWISE_AGGREGATE_SQL = "SET LOCAL enable_partitionwise_aggregate = on";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Boolean postgres;
+
+    public SubscriptionMembersRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Поиск подписчиков указанной подписки с идентификатором больше заданного.
+     *
+     * @param subscriptionId идентификатор подписки
+     * @param after          идентификатор пользователя, после которого начинается выборка
+     * @param limit          максимальное количество пользователей в выборке
+     * @return список объектов UserResponse, упорядоченный по возрастанию идентификатора
+     */
+    @Transactional
+    @Override
+    public List<UserResponse> findSubscribersBySubscriptionId(Long subscriptionId, Long after, Limit limit) {
+        return jdbcTemplate.query(SUBSCRIBERS_SQL, (rs, rowNum) -> new UserResponse(rs.getLong(1), rs.getString(2)),
+                subscriptionId, after, limit.max());
+    }
+
+    /**
+     * Получение количества подписчиков для каждой подписки, включая подписки без подписчиков.
+     *
+     * @return список объектов SubscriptionCountDTO со всеми подписками и количеством их подписчиков
+     */
+    @Transactional
+    @Override
+    public List<SubscriptionCountDTO> findSubscriptionCounts() {
+        if (isPostgres()) jdbcTemplate.execute(PARTITIONWISE_AGGREGATE_SQL);
+        return jdbcTemplate.query(COUNTS_SQL, (rs, rowNum) ->
+                new SubscriptionCountDTO(rs.getLong(1), rs.getString(2), rs.getLong(3)));
+    }
+
+    /**
+     * Проверяет, что база данных — PostgreSQL. Определяется при первом запросе, так как при обучающем запуске CDS
+     * база данных недоступна.
+     *
+     * @return true для PostgreSQL
+     */
+    private boolean isPostgres() {
+        Boolean result = postgres;
+        if (result == null) {
+            result = "PostgreSQL".equals(jdbcTemplate.execute(
+                    (ConnectionCallback<String>) connection -> connection.getMetaData().getDatabaseProductName()));
+            postgres = result;
+        }
+        return result;
+    }
+}
@@ -1,51 +1,98 @@
 package ru.buzynnikov.user_subscription_service.repositories;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
-import ru.buzynnikov.user_subscription_service.dto.SubscriptionTop3DTO;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionMembershipDTO;
+import ru.buzynnikov.user_subscription_service.dto.UserSubscriptionDTO;
 import ru.buzynnikov.user_subscription_service.models.Subscription;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
 
 /**
  * Репозиторий для взаимодействия с базой данных по работе с подписками (Subscription).
  */
 @Repository
-public interface SubscriptionRepository extends CrudRepository<Subscription, Long> {
+public interface SubscriptionRepository extends CrudRepository<Subscription, Long>, SubscriptionMembersRepository {
 
     /**
-     * Поиск всех подписок, принадлежащих указанному пользователю.
+     * Поиск подписок, принадлежащих указанному пользователю, с идентификатором больше заданного.
      *
      * @param userId идентификатор пользователя
-     * @return множество объектов SubscriptionResponse, содержащих информацию о подписках пользователя
+     * @param after  идентификатор подписки, после которого начинается выборка
+     * @param limit  максимальное количество подписок в выборке
+     * @return список объектов SubscriptionResponse, упорядоченный по возрастанию идентификатора
      */
     @Transactional
     @Query("""
         SELECT new ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse(s.id, s.name)
         FROM Subscription s
         JOIN s.users u
-        WHERE u.id = :userId
+        WHERE u.id = :userId AND s.id > :after
+        ORDER BY s.id
         """)
-    Set<SubscriptionResponse> findSubscriptionsByUserId(@Param("userId") Long userId);
+    List<SubscriptionResponse> findSubscriptionsByUserId(@Param("userId") Long userId, @Param("after") Long after, Limit limit);
 
     /**
-     * Получение трех самых популярных подписок (топ-3) на основании количества подписчиков.
+     * Поиск всех подписок нескольких пользователей одним запросом.
      *
-     * @return список объектов SubscriptionTop3DTO, содержащий три самые популярные подписки
+     * @param userIds идентификаторы пользователей
+     * @return список объектов UserSubscriptionDTO, упорядоченный по пользователю и идентификатору подписки
+     */
+    @Transactional(readOnly = true)
+    @Query("""
+        SELECT new ru.buzynnikov.user_subscription_service.dto.UserSubscriptionDTO(u.id, s.id, s.name)
+        FROM Subscription s
+        JOIN s.users u
+        WHERE u.id IN :userIds
+        ORDER BY u.id, s.id
+        """)
+    List<UserSubscriptionDTO> findSubscriptionsByUserIds(@Param("userIds") Collection<Long> userIds);
+
+    /**
+     * Поиск подписок по идентификаторам.
+     *
+     * @param ids идентификаторы подписок
+     * @return список объектов SubscriptionResponse для существующих подписок, упорядоченный по возрастанию идентификатора
+     */
+    @Transactional(readOnly = true)
+    @Query("""
+        SELECT new ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse(s.id, s.name)
+        FROM Subscription s
+        WHERE s.id IN :ids
+        ORDER BY s.id
+        """)
+    List<SubscriptionResponse> findSubscriptionsByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Получение идентификаторов всех подписок указанного пользователя.
+     *
+     * @param userId идентификатор пользователя
+     * @return список идентификаторов подписок пользователя
+     */
+    @Transactional
+    @Query(value = "SELECT subscription_id FROM user_subscriptions WHERE user_id = :userId", nativeQuery = true)
+    List<Long> findSubscriptionIdsByUserId(@Param("userId") Long userId);
+
+    /**
+     * Получение существующих подписок из переданного списка вместе с признаком подписки на них пользователя.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы проверяемых подписок
+     * @return список объектов SubscriptionMembershipDTO только для существующих подписок
      */
     @Transactional
     @Query("""
-           SELECT new ru.buzynnikov.user_subscription_service.dto.SubscriptionTop3DTO(s.id, s.name, COUNT(u.id) c)
+           SELECT new ru.buzynnikov.user_subscription_service.dto.SubscriptionMembershipDTO(s.id, u.id)
            FROM Subscription s
-           JOIN s.users u
-           GROUP BY s.id, s.name
-           ORDER BY c DESC
-           LIMIT 3
+           LEFT JOIN s.users u ON u.id = :userId
+           WHERE s.id IN :subscriptionIds
            """)
-    List<SubscriptionTop3DTO> findSubscriptionsTop3();
+    List<SubscriptionMembershipDTO> findSubscriptionMemberships(@Param("userId") Long userId,
+                                                                 @Param("subscriptionIds") Collection<Long> subscriptionIds);
 }
@@ -1,42 +1,117 @@
 package ru.buzynnikov.user_subscription_service.repositories;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
 import ru.buzynnikov.user_subscription_service.models.User;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
 /**
  * Репозиторий для взаимодействия с моделью пользователя (User) и связанной связью Many-to-Many (user_subscriptions).
  */
 @Repository
-public interface UserRepository extends CrudRepository<User, Long> {
+public interface UserRepository extends CrudRepository<User, Long>, UserSubscriptionBatchRepository {
 
     /**
-     * Добавляет новую связь между пользователем и подпиской путем добавления записи в таблицу user_subscriptions.
+     * Поиск пользователей с идентификатором больше заданного.
      *
-     * @param userId        идентификатор пользователя
-     * @param subscriptionId идентификатор подписки
+     * @param after идентификатор пользователя, после которого начинается выборка
+     * @param limit максимальное количество пользователей в выборке
+     * @return список объектов UserResponse, упорядоченный по возрастанию идентификатора
      */
     @Transactional
-    @Modifying
-    @Query(
-            value = "INSERT INTO user_subscriptions (user_id, subscription_id) VALUES (:userId, :subscriptionId)",
-            nativeQuery = true
-    )
-    void addSubscription(@Param("userId") Long userId,
-                         @Param("subscriptionId") Long subscriptionId);
+    @Query("""
+        SELECT new ru.buzynnikov.user_subscription_service.dto.UserResponse(u.id, u.username)
+        FROM User u
+        WHERE u.id > :after
+        ORDER BY u.id
+        """)
+    List<UserResponse> findUsersAfter(@Param("after") Long after, Limit limit);
+
+    /**
+     * Поиск пользователей по набору идентификаторов одним запросом.
+     *
+     * @param ids идентификаторы пользователей
+     * @return список объектов UserResponse только для существующих пользователей, без определенного порядка
+     */
+    @Transactional(readOnly = true)
+    @Query("""
+        SELECT new ru.buzynnikov.user_subscription_service.dto.UserResponse(u.id, u.username)
+        FROM User u
+        WHERE u.id IN :ids
+        """)
+    List<UserResponse> findUsersByIds(@Param("ids") Collection<Long> ids);
+
+    /**
+     * Потоковое чтение пользователей с идентификатором больше заданного через курсор JDBC.
+     * Поток должен быть прочитан и закрыт внутри транзакции; в памяти одновременно находится
+     * не больше одной порции строк размера fetch size.
+     *
+     * @param after идентификатор пользователя, после которого начинается выборка
+     * @return поток объектов UserResponse, упорядоченный по возрастанию идентификатора
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"))
+    @Query("""
+        SELECT new ru.buzynnikov.user_subscription_service.dto.UserResponse(u.id, u.username)
+        FROM User u
+        WHERE u.id > :after
+        ORDER BY u.id
+        """)
+    Stream<UserResponse> streamUsersAfter(@Param("after") Long after);
 
     /**
      * Удаляет связь между пользователем и подпиской, соответствующую переданным параметрам, из таблицы user_subscriptions.
      *
      * @param userId        идентификатор пользователя
      * @param subscriptionId идентификатор подписки
+     * @return количество удаленных записей
      */
     @Transactional
     @Modifying
     @Query(value = "DELETE FROM user_subscriptions WHERE user_id = :userId AND subscription_id = :subscriptionId", nativeQuery = true)
-    void removeSubscriptionFromUser(@Param("userId") Long userId, @Param("subscriptionId") Long subscriptionId);
+    int removeSubscriptionFromUser(@Param("userId") Long userId, @Param("subscriptionId") Long subscriptionId);
+
+    /**
+     * Возвращает счетчик изменений пользователя и его подписок.
+     *
+     * @param id идентификатор пользователя
+     * @return значение счетчика либо пустой результат, если пользователь не найден
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT u.version FROM User u WHERE u.id = :id")
+    Optional<Long> findVersionById(@Param("id") Long id);
+
+    /**
+     * Блокирует строку пользователя до конца текущей транзакции. Изменения подписок одного пользователя,
+     * выполняемые под этой блокировкой, не пересекаются друг с другом.
+     *
+     * @param id идентификатор пользователя
+     * @return идентификатор пользователя либо пустой результат, если пользователь не найден
+     */
+    @Transactional
+    @Query(value = "SELECT id FROM users WHERE id = :id FOR UPDATE", nativeQuery = true)
+    Optional<Long> lockById(@Param("id") Long id);
+
+    /**
+     * Увеличивает счетчик изменений пользователя.
+     *
+     * @param id идентификатор пользователя
+     * @return количество измененных записей
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "UPDATE users SET version = version + 1 WHERE id = :id", nativeQuery = true)
+    int incrementVersion(@Param("id") Long id);
 }
@@ -0,0 +1,49 @@
+package ru.buzynnikov.user_subscription_service.repositories;
+
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionChangeDTO;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Репозиторий для пакетной и условной записи связей между пользователями и подписками (user_subscriptions).
+ */
+public interface UserSubscriptionBatchRepository {
+
+    /**
+     * Добавляет связь между пользователем и подпиской одним запросом, если такой связи еще нет.
+     * Повторное добавление не приводит к ошибке, отсутствие пользователя или подписки приводит к нарушению
+     * внешнего ключа fk_user_subscriptions_user или fk_user_subscriptions_subscription.
+     *
+     * @param userId         идентификатор пользователя
+     * @param subscriptionId идентификатор подписки
+     * @return количество добавленных записей: 1, если связь создана, 0, если она уже существовала
+     */
+    int addSubscription(Long userId, Long subscriptionId);
+
+    /**
+     * Добавляет пользователю несколько подписок одним пакетным запросом. Уже существующие связи и отсутствующие
+     * подписки пропускаются без ошибки.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы подписок
+     * @return количество добавленных записей для каждой подписки в порядке перебора: 1 или 0
+     */
+    int[] addSubscriptions(Long userId, Collection<Long> subscriptionIds);
+
+    /**
+     * Применяет пачку изменений подписок разных пользователей двумя пакетными запросами: добавляет отсутствующие связи
+     * и удаляет существующие. Изменения для отсутствующих пользователей или подписок пропускаются без ошибки.
+     *
+     * @param changes изменения подписок, не более одного на пару пользователя и подписки
+     * @return количество измененных записей для каждого изменения в порядке пачки
+     */
+    int[] applySubscriptionChanges(List<SubscriptionChangeDTO> changes);
+
+    /**
+     * Увеличивает счетчики изменений нескольких пользователей одним пакетным запросом.
+     *
+     * @param userIds идентификаторы пользователей
+     */
+    void incrementVersions(Collection<Long> userIds);
+}
@@ -0,0 +1,167 @@
+package ru.buzynnikov.user_subscription_service.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.PostgreSQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionChangeDTO;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Реализация пакетной записи связей между пользователями и подписками через JDBC batch.
+ * Условное добавление одной связи выполняется через Hibernate, чтобы нарушение внешнего ключа
+ * содержало имя ограничения.
+ */
+public class UserSubscriptionBatchRepositoryImpl implements UserSubscriptionBatchRepository {
+
+    private static final String INSERT_ON_CONFLICT_SQL = """
+            INSERT INTO user_subscriptions (user_id, subscription_id) VALUES (:userId, :subscriptionId)
+            ON CONFLICT DO NOTHING
+            """;
+    private static final String MERGE_SQL = """
+            MERGE INTO user_subscriptions t
+            USING (SELECT CAST(:userId AS BIGINT) AS user_id, CAST(:subscriptionId AS BIGINT) AS subscription_id) s
+            ON t.user_id = s.user_id AND t.subscription_id = s.subscription_id
+            WHEN NOT MATCHED THEN INSERT (user_id, subscription_id) VALUES (s.user_id, s.subscription_id)
+            """;
+    private static final String INSERT_IF_ABSENT_SQL = """
+            INSERT INTO user_subscriptions (user_id, subscription_id)
+            SELECT u.id, s.id FROM users u, subscriptions s
+            WHERE u.id = ? AND s.id = ?
+              AND NOT EXISTS (SELECT 1 FROM user_subscriptions WHERE user_id = u.id AND subscription_id = s.id)
+            """;
+    private static final String DELETE_SQL = "DELETE FROM user_subscriptions WHERE user_id = ? AND subscription_id = ?";
+    private static final String INCREMENT_VERSION_SQL = "UPDATE users SET version = version + 1 WHERE id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private volatile String addSubscriptionSql;
+
+    public UserSubscriptionBatchRepositoryImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Добавляет связь между пользователем и подпиской одним запросом, если такой связи еще нет.
+     * В PostgreSQL используется INSERT ... ON CONFLICT DO NOTHING, который не завершается ошибкой и при параллельном
+     * добавлении той же связи, в остальных базах данных (H2 в тестах) — MERGE.
+     *
+     * @param userId         идентификатор пользователя
+     * @param subscriptionId идентификатор подписки
+     * @return количество добавленных записей: 1, если связь создана, 0, если она уже существовала
+     */
+    @Transactional
+    @Override
+    public int addSubscription(Long userId, Long subscriptionId) {
+        return entityManager.createNativeQuery(addSubscriptionSql())
+                .setParameter("userId", userId)
+                .setParameter("subscriptionId", subscriptionId)
+                .executeUpdate();
+    }
+
+    /**
+     * Добавляет пользователю несколько подписок одним пакетным запросом, пропуская уже существующие связи.
+     * Запрос с выборкой не переписывается драйвером PostgreSQL при reWriteBatchedInserts,
+     * поэтому количество добавленных записей известно для каждой подписки.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы подписок
+     * @return количество добавленных записей для каждой подписки в порядке перебора
+     */
+    @Transactional
+    @Override
+    public int[] addSubscriptions(Long userId, Collection<Long> subscriptionIds) {
+        if (subscriptionIds.isEmpty()) return new int[0];
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_IF_ABSENT_SQL, subscriptionIds, subscriptionIds.size(), (ps, subscriptionId) -> {
+            ps.setLong(1, userId);
+            ps.setLong(2, subscriptionId);
+        });
+        return counts[0];
+    }
+
+    /**
+     * Применяет пачку изменений подписок. Добавление выполняется выборкой из users и subscriptions,
+     * поэтому отсутствующий пользователь или подписка дают 0 добавленных записей вместо нарушения внешнего ключа.
+     *
+     * @param changes изменения подписок, не более одного на пару пользователя и подписки
+     * @return количество измененных записей для каждого изменения в порядке пачки
+     */
+    @Transactional
+    @Override
+    public int[] applySubscriptionChanges(List<SubscriptionChangeDTO> changes) {
+        List<Integer> added = new ArrayList<>();
+        List<Integer> removed = new ArrayList<>();
+        for (int i = 0; i < changes.size(); i++) (changes.get(i).subscribed() ? added : removed).add(i);
+        int[] counts = new int[changes.size()];
+        execute(INSERT_IF_ABSENT_SQL, changes, added, counts);
+        execute(DELETE_SQL, changes, removed, counts);
+        return counts;
+    }
+
+    /**
+     * Увеличивает счетчики изменений нескольких пользователей одним пакетным запросом.
+     *
+     * @param userIds идентификаторы пользователей
+     */
+    @Transactional
+    @Override
+    public void incrementVersions(Collection<Long> userIds) {
+        if (userIds.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INCREMENT_VERSION_SQL, userIds, userIds.size(), (ps, userId) -> ps.setLong(1, userId));
+    }
+
+    /**
+     * Выбирает запрос условного добавления связи по диалекту базы данных.
+     * Диалект определяется при первом добавлении, так как при обучающем запуске CDS база данных недоступна.
+     *
+     * @return текст запроса
+     */
+    private String addSubscriptionSql() {
+        String sql = addSubscriptionSql;
+        if (sql == null) {
+            Dialect dialect = entityManager.getEntityManagerFactory().unwrap(SessionFactoryImplementor.class)
+                    .getJdbcServices().getDialect();
+            sql = dialect instanceof PostgreSQLDialect ? INSERT_ON_CONFLICT_SQL : MERGE_SQL;
+            addSubscriptionSql = sql;
+        }
+        return sql;
+    }
+
+    /**
+     * Выполняет пакетный запрос с параметрами user_id и subscription_id для части изменений.
+     *
+     * @param sql     запрос
+     * @param changes все изменения пачки
+     * @param indexes номера изменений, для которых выполняется запрос
+     * @param counts  количество измененных записей по номеру изменения
+     */
+    private void execute(String sql, List<SubscriptionChangeDTO> changes, List<Integer> indexes, int[] counts) {
+        if (indexes.isEmpty()) return;
+        int[] result = jdbcTemplate.batchUpdate(sql, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                SubscriptionChangeDTO change = changes.get(indexes.get(i));
+                ps.setLong(1, change.userId());
+                ps.setLong(2, change.subscriptionId());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return indexes.size();
+            }
+        });
+        for (int i = 0; i < result.length; i++) counts[indexes.get(i)] = result[i];
+    }
+}
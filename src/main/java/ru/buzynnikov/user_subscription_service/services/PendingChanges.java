@@ -0,0 +1,93 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Учет изменений структуры в памяти, применяемых после фиксации транзакции, для ее перестроения по снимку базы данных.
+ * Ключ считается незавершенным от момента перед фиксацией транзакции до применения изменения, а во время
+ * перестроения запоминаются ключи всех примененных изменений. Для таких ключей снимок может как не содержать
+ * уже примененное изменение, так и содержать еще не примененное, поэтому при замене структуры их значения
+ * берутся из текущей структуры.
+ *
+ * @param <K> тип ключа изменения
+ */
+final class PendingChanges<K> {
+
+    private final Map<K, Integer> pending = new HashMap<>();
+    private Set<K> touched;
+
+    /**
+     * Выполняет изменение после фиксации текущей транзакции либо сразу, если транзакция отсутствует.
+     * При откате транзакции изменение не выполняется.
+     *
+     * @param keys   ключи изменения
+     * @param action изменение структуры
+     */
+    void afterCommit(Collection<K> keys, Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            begin(keys);
+            try {
+                action.run();
+            } finally {
+                end(keys);
+            }
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            private boolean begun;
+
+            @Override
+            public void beforeCommit(boolean readOnly) {
+                begin(keys);
+                begun = true;
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (!begun) return;
+                try {
+                    if (status == STATUS_COMMITTED) action.run();
+                } finally {
+                    end(keys);
+                }
+            }
+        });
+    }
+
+    /**
+     * Начинает учет изменений. Вызывается перед чтением снимка из базы данных.
+     */
+    synchronized void startTracking() {
+        touched = new HashSet<>();
+    }
+
+    /**
+     * Завершает учет изменений. Вызывается под блокировкой записи структуры непосредственно перед ее заменой.
+     *
+     * @return ключи изменений, примененных во время чтения снимка или еще не примененных
+     */
+    synchronized Set<K> stopTracking() {
+        Set<K> result = touched == null ? new HashSet<>() : touched;
+        result.addAll(pending.keySet());
+        touched = null;
+        return result;
+    }
+
+    private synchronized void begin(Collection<K> keys) {
+        keys.forEach(key -> pending.merge(key, 1, Integer::sum));
+    }
+
+    private synchronized void end(Collection<K> keys) {
+        for (K key : keys) {
+            pending.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+            if (touched != null) touched.add(key);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Окно чтения собственных записей: в течение replica.read-your-writes-window после изменения пользователя
+ * чтения его данных выполняются на основной базе данных, а не на реплике, которая может отставать.
+ * Без профиля replica все чтения и так выполняются на основной базе, и окно ни на что не влияет.
+ * <p>
+ * Изменение отмечается сразу, еще до фиксации транзакции: при откате лишь несколько чтений уйдут на основную базу,
+ * зато чтение сразу после фиксации никогда не попадет на реплику.
+ */
+@Component
+public class ReadYourWrites {
+
+    private final ThreadLocal<Boolean> primaryRequired = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private final Cache<Long, Boolean> recentWrites;
+
+    public ReadYourWrites(@Value("${replica.read-your-writes-window:PT5S}") Duration window) {
+        this.recentWrites = Caffeine.newBuilder()
+                .expireAfterWrite(window)
+                .build();
+    }
+
+    /**
+     * Отмечает изменение данных пользователя.
+     *
+     * @param userId идентификатор пользователя
+     */
+    public void written(Long userId) {
+        recentWrites.put(userId, Boolean.TRUE);
+    }
+
+    /**
+     * Выполняет чтение данных пользователя. Если пользователь недавно изменялся, чтение выполняется на основной базе.
+     *
+     * @param userId идентификатор пользователя
+     * @param reader чтение данных
+     * @param <T>    тип результата
+     * @return результат чтения
+     */
+    public <T> T read(Long userId, Supplier<T> reader) {
+        if (recentWrites.getIfPresent(userId) == null || primaryRequired.get()) return reader.get();
+        primaryRequired.set(Boolean.TRUE);
+        try {
+            return reader.get();
+        } finally {
+            primaryRequired.set(Boolean.FALSE);
+        }
+    }
+
+    /**
+     * Выполняет чтение данных нескольких пользователей. Если хотя бы один из них недавно изменялся,
+     * чтение выполняется на основной базе.
+     *
+     * @param userIds идентификаторы пользователей
+     * @param reader  чтение данных
+     * @param <T>     тип результата
+     * @return результат чтения
+     */
+    public <T> T read(Collection<Long> userIds, Supplier<T> reader) {
+        for (Long userId : userIds) {
+            if (recentWrites.getIfPresent(userId) != null) return read(userId, reader);
+        }
+        return reader.get();
+    }
+
+    /**
+     * Проверяет, должно ли текущее чтение выполняться на основной базе данных.
+     *
+     * @return true внутри {@link #read(Long, Supplier)} для недавно измененного пользователя
+     */
+    public boolean isPrimaryRequired() {
+        return primaryRequired.get();
+    }
+}
@@ -0,0 +1,190 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionChangeDTO;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Журнал отложенных изменений подписок на локальном диске. Изменения дописываются в конец текущего сегмента
+ * записями фиксированной длины. Перед записью накопленных изменений в базу данных начинается новый сегмент,
+ * а закрытые сегменты удаляются после успешной записи. При запуске изменения из оставшихся сегментов
+ * восстанавливаются в порядке записи; неполная запись в конце сегмента после аварийного завершения пропускается.
+ * <p>
+ * При включенном fsync метод {@link #sync(long)} возвращает управление после записи изменения на диск.
+ * Потоки, ожидающие записи одновременно, обслуживаются одним вызовом force (групповая фиксация).
+ */
+public class SubscriptionChangeJournal implements Closeable {
+
+    private static final byte SUBSCRIBED = 1;
+    private static final byte UNSUBSCRIBED = 2;
+    private static final int RECORD_SIZE = 1 + 2 * Long.BYTES;
+    private static final String PREFIX = "subscription-changes-";
+    private static final String SUFFIX = ".journal";
+
+    private final Path directory;
+    private final boolean fsync;
+    private final Object syncLock = new Object();
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private final List<Path> closedSegments = new ArrayList<>();
+
+    private FileChannel channel;
+    private Path segment;
+    private long segmentNumber;
+    private long appended;
+    private volatile long synced;
+
+    public SubscriptionChangeJournal(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+    }
+
+    /**
+     * Восстанавливает изменения из сегментов, оставшихся от предыдущего запуска, и открывает новый сегмент.
+     * Восстановленные сегменты удаляются вместе со следующими закрытыми сегментами, пустые — сразу.
+     *
+     * @return изменения в порядке записи
+     * @throws IOException если не удалось прочитать сегменты или создать новый
+     */
+    public synchronized List<SubscriptionChangeDTO> open() throws IOException {
+        Files.createDirectories(directory);
+        List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(SubscriptionChangeJournal::isSegment)
+                    .sorted(Comparator.comparingLong(SubscriptionChangeJournal::segmentNumber))
+                    .toList();
+        }
+        List<SubscriptionChangeDTO> changes = new ArrayList<>();
+        for (Path path : segments) {
+            segmentNumber = Math.max(segmentNumber, segmentNumber(path));
+            if (read(path, changes) == 0) Files.delete(path);
+            else closedSegments.add(path);
+        }
+        openSegment();
+        return changes;
+    }
+
+    /**
+     * Дописывает изменение в текущий сегмент. Изменение попадает на диск после вызова {@link #sync(long)}.
+     *
+     * @param change изменение подписки
+     * @return позиция конца записи в журнале
+     * @throws IOException если не удалось записать изменение
+     */
+    public synchronized long append(SubscriptionChangeDTO change) throws IOException {
+        record.clear();
+        record.put(change.subscribed() ? SUBSCRIBED : UNSUBSCRIBED)
+                .putLong(change.userId())
+                .putLong(change.subscriptionId())
+                .flip();
+        while (record.hasRemaining()) channel.write(record);
+        appended += RECORD_SIZE;
+        return appended;
+    }
+
+    /**
+     * Дожидается записи журнала на диск до заданной позиции. Без fsync возвращает управление сразу.
+     *
+     * @param position позиция, полученная от {@link #append(SubscriptionChangeDTO)}
+     * @throws IOException если не удалось записать журнал на диск
+     */
+    public void sync(long position) throws IOException {
+        if (!fsync || synced >= position) return;
+        synchronized (syncLock) {
+            if (synced >= position) return;
+            FileChannel current;
+            long target;
+            synchronized (this) {
+                current = channel;
+                target = appended;
+            }
+            current.force(false);
+            synced = target;
+        }
+    }
+
+    /**
+     * Закрывает текущий сегмент и начинает новый.
+     *
+     * @return все закрытые и еще не удаленные сегменты
+     * @throws IOException если не удалось закрыть сегмент или создать новый
+     */
+    public List<Path> rotate() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                closeSegment();
+                closedSegments.add(segment);
+                openSegment();
+                return List.copyOf(closedSegments);
+            }
+        }
+    }
+
+    /**
+     * Удаляет сегменты, изменения из которых записаны в базу данных.
+     *
+     * @param segments сегменты, полученные от {@link #rotate()}
+     * @throws IOException если не удалось удалить сегмент
+     */
+    public synchronized void delete(List<Path> segments) throws IOException {
+        for (Path path : segments) {
+            Files.deleteIfExists(path);
+            closedSegments.remove(path);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                if (channel != null) closeSegment();
+                channel = null;
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segmentNumber++;
+        segment = directory.resolve(String.format("%s%019d%s", PREFIX, segmentNumber, SUFFIX));
+        channel = FileChannel.open(segment, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+    }
+
+    private void closeSegment() throws IOException {
+        if (fsync) channel.force(false);
+        channel.close();
+        synced = appended;
+    }
+
+    private static int read(Path path, List<SubscriptionChangeDTO> changes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(path));
+        int count = 0;
+        while (buffer.remaining() >= RECORD_SIZE) {
+            byte type = buffer.get();
+            long userId = buffer.getLong();
+            long subscriptionId = buffer.getLong();
+            if (type != SUBSCRIBED && type != UNSUBSCRIBED) break;
+            changes.add(new SubscriptionChangeDTO(userId, subscriptionId, type == SUBSCRIBED));
+            count++;
+        }
+        return count;
+    }
+
+    private static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+}
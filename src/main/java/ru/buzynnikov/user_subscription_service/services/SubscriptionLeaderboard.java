@@ -0,0 +1,221 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionCountDTO;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.repositories.SubscriptionRepository;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Рейтинг подписок по количеству подписчиков, хранящийся в памяти приложения.
+ * Строится один раз при старте, поддерживается в актуальном состоянии изменениями из сервиса пользователей
+ * и периодически сверяется с базой данных для исправления возможных расхождений.
+ * Получение первых N подписок выполняется за O(N) без обращения к базе данных.
+ * <p>
+ * Версия рейтинга увеличивается при каждом изменении количества подписчиков и используется как ETag ответов.
+ * Рейтинг не хранится в базе данных, поэтому версия включает время запуска экземпляра и не совпадает
+ * у разных экземпляров и после перезапуска.
+ */
+@Component
+public class SubscriptionLeaderboard implements SmartLifecycle {
+
+    private static final Comparator<Entry> RANKING = Comparator.comparingLong(Entry::count).reversed()
+            .thenComparing(Entry::id);
+
+    private final Logger logger = LoggerFactory.getLogger(SubscriptionLeaderboard.class);
+
+    private final SubscriptionRepository subscriptionRepository;
+    private final ShardRouter shardRouter;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PendingChanges<Long> pendingChanges = new PendingChanges<>();
+    private volatile boolean running;
+    private Map<Long, Entry> entries = new HashMap<>();
+    private TreeSet<Entry> ranking = new TreeSet<>(RANKING);
+    private final long startedAt = System.currentTimeMillis();
+    private volatile long version;
+
+    public SubscriptionLeaderboard(SubscriptionRepository subscriptionRepository, ShardRouter shardRouter) {
+        this.subscriptionRepository = subscriptionRepository;
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Начальное построение рейтинга по данным из базы. Выполняется при запуске контекста до веб-сервера,
+     * а не при создании бина, поэтому контекст можно обновить без базы данных (обучающий запуск для архива CDS).
+     */
+    @Override
+    public void start() {
+        reload();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Периодическая сверка рейтинга с базой данных. Полностью заменяет содержимое рейтинга актуальными значениями.
+     */
+    @Scheduled(initialDelayString = "${subscriptions.leaderboard.reconcile-interval:PT5M}",
+            fixedDelayString = "${subscriptions.leaderboard.reconcile-interval:PT5M}")
+    public void reconcile() {
+        reload();
+        logger.debug("Рейтинг подписок сверен с базой данных");
+    }
+
+    /**
+     * Возвращает первые N подписок рейтинга. Подписки без подписчиков в результат не попадают.
+     *
+     * @param limit максимальное количество подписок в ответе
+     * @return список объектов SubscriptionResponse, упорядоченный по убыванию количества подписчиков
+     */
+    public List<SubscriptionResponse> top(int limit) {
+        List<SubscriptionResponse> result = new ArrayList<>(Math.min(limit, 16));
+        lock.readLock().lock();
+        try {
+            Iterator<Entry> iterator = ranking.iterator();
+            while (result.size() < limit && iterator.hasNext()) {
+                Entry entry = iterator.next();
+                if (entry.count() == 0) break;
+                result.add(new SubscriptionResponse(entry.id(), entry.name()));
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return result;
+    }
+
+    /**
+     * Возвращает текущую версию рейтинга. Версию следует получать до чтения рейтинга, чтобы при параллельном
+     * изменении ответ не содержал старый рейтинг с новой версией.
+     *
+     * @return версия рейтинга
+     */
+    public String version() {
+        return startedAt + "-" + version;
+    }
+
+    /**
+     * Регистрирует появление нового подписчика у подписок.
+     * Внутри транзакции изменение применяется только после её успешной фиксации.
+     *
+     * @param subscriptionIds идентификаторы подписок, на которые подписался пользователь
+     */
+    public void subscribed(Collection<Long> subscriptionIds) {
+        if (subscriptionIds.isEmpty()) return;
+        pendingChanges.afterCommit(subscriptionIds, () -> subscriptionIds.forEach(id -> apply(id, 1)));
+    }
+
+    /**
+     * Регистрирует уход подписчиков у подписок.
+     * Внутри транзакции изменение применяется только после её успешной фиксации.
+     *
+     * @param subscriptionIds идентификаторы подписок, от которых отписался пользователь
+     */
+    public void unsubscribed(Collection<Long> subscriptionIds) {
+        if (subscriptionIds.isEmpty()) return;
+        pendingChanges.afterCommit(subscriptionIds, () -> subscriptionIds.forEach(id -> apply(id, -1)));
+    }
+
+    /**
+     * Изменяет количество подписчиков подписки на заданную величину.
+     * Подписки, отсутствующие в рейтинге, игнорируются до ближайшей сверки с базой данных.
+     *
+     * @param subscriptionId идентификатор подписки
+     * @param delta          величина изменения количества подписчиков
+     */
+    private void apply(Long subscriptionId, long delta) {
+        lock.writeLock().lock();
+        try {
+            Entry current = entries.get(subscriptionId);
+            if (current == null) return;
+            Entry updated = new Entry(current.id(), current.name(), Math.max(0, current.count() + delta));
+            if (updated.equals(current)) return;
+            ranking.remove(current);
+            ranking.add(updated);
+            entries.put(subscriptionId, updated);
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Загружает количество подписчиков всех подписок из базы данных и атомарно заменяет рейтинг.
+     * Количество подписчиков подсчитывается на каждом шарде параллельно и суммируется.
+     * Подписки, изменения которых применялись во время загрузки или еще не применены, сохраняют текущее количество
+     * до следующей сверки, чтобы изменение не было потеряно или учтено дважды.
+     * Версия увеличивается, только если загруженный рейтинг отличается от текущего.
+     */
+    private synchronized void reload() {
+        Map<Long, Entry> loadedEntries = new HashMap<>();
+        pendingChanges.startTracking();
+        try {
+            for (List<SubscriptionCountDTO> shard : shardRouter.gather(subscriptionRepository::findSubscriptionCounts)) {
+                for (SubscriptionCountDTO subscription : shard) {
+                    loadedEntries.merge(subscription.id(), new Entry(subscription.id(), subscription.name(), subscription.count()),
+                            (loaded, other) -> new Entry(loaded.id(), loaded.name(), loaded.count() + other.count()));
+                }
+            }
+        } catch (RuntimeException e) {
+            pendingChanges.stopTracking();
+            throw e;
+        }
+        TreeSet<Entry> loadedRanking = new TreeSet<>(RANKING);
+        loadedRanking.addAll(loadedEntries.values());
+        lock.writeLock().lock();
+        try {
+            for (Long id : pendingChanges.stopTracking()) {
+                Entry current = entries.get(id);
+                Entry loaded = loadedEntries.get(id);
+                if (current == null || loaded == null) continue;
+                loadedRanking.remove(loaded);
+                loadedRanking.add(current);
+                loadedEntries.put(id, current);
+            }
+            if (loadedEntries.equals(entries)) return;
+            entries = loadedEntries;
+            ranking = loadedRanking;
+            version++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Запись рейтинга подписок.
+     *
+     * @param id    идентификатор подписки
+     * @param name  название подписки
+     * @param count количество подписчиков
+     */
+    private record Entry(Long id, String name, long count) {
+    }
+}
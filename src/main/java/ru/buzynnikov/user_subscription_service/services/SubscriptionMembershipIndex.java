@@ -0,0 +1,314 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import org.roaringbitmap.longlong.PeekableLongIterator;
+import org.roaringbitmap.longlong.Roaring64Bitmap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryExpression;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryResponse;
+import ru.buzynnikov.user_subscription_service.exceptions.SubscriptionNotFoundException;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Индекс подписчиков в памяти приложения: сжатое 64-битное множество (Roaring) идентификаторов пользователей
+ * на каждую подписку и множество всех пользователей для операции дополнения.
+ * Строится при старте потоковым чтением таблицы user_subscriptions, поддерживается изменениями из сервиса
+ * пользователей и периодически перестраивается для исправления возможных расхождений.
+ */
+@Component
+public class SubscriptionMembershipIndex implements SmartLifecycle {
+
+    private static final int FETCH_SIZE = 10_000;
+
+    private final Logger logger = LoggerFactory.getLogger(SubscriptionMembershipIndex.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardRouter shardRouter;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final PendingChanges<Long> pendingChanges = new PendingChanges<>();
+    private volatile boolean running;
+    private Map<Long, Roaring64Bitmap> members = new HashMap<>();
+    private Roaring64Bitmap users = new Roaring64Bitmap();
+
+    public SubscriptionMembershipIndex(DataSource dataSource, PlatformTransactionManager transactionManager, ShardRouter shardRouter) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(FETCH_SIZE);
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.shardRouter = shardRouter;
+    }
+
+    /**
+     * Начальное построение индекса по данным из базы. Выполняется при запуске контекста до веб-сервера,
+     * а не при создании бина, поэтому контекст можно обновить без базы данных (обучающий запуск для архива CDS).
+     */
+    @Override
+    public void start() {
+        reload();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return 0;
+    }
+
+    /**
+     * Периодическое перестроение индекса. Полностью заменяет содержимое индекса актуальными значениями.
+     */
+    @Scheduled(initialDelayString = "${subscriptions.index.reconcile-interval:PT30M}",
+            fixedDelayString = "${subscriptions.index.reconcile-interval:PT30M}")
+    public void reconcile() {
+        reload();
+        logger.debug("Индекс подписчиков сверен с базой данных");
+    }
+
+    /**
+     * Вычисляет выражение над подписками и возвращает количество подходящих пользователей и страницу их идентификаторов.
+     *
+     * @param query выражение над подписками
+     * @param after идентификатор пользователя, после которого начинается страница
+     * @param size  размер страницы
+     * @return количество пользователей и страница идентификаторов по возрастанию
+     * @throws SubscriptionNotFoundException если выражение ссылается на неизвестную подписку
+     */
+    public SubscriptionQueryResponse query(SubscriptionQueryExpression query, long after, int size) {
+        lock.readLock().lock();
+        try {
+            Roaring64Bitmap result = evaluate(query);
+            List<Long> userIds = new ArrayList<>(Math.min(size, 1024));
+            if (after < Long.MAX_VALUE) {
+                PeekableLongIterator iterator = result.getLongIteratorFrom(after + 1);
+                while (userIds.size() <= size && iterator.hasNext()) userIds.add(iterator.next());
+            }
+            Long nextCursor = null;
+            if (userIds.size() > size) {
+                userIds.remove(size);
+                nextCursor = userIds.get(size - 1);
+            }
+            return new SubscriptionQueryResponse(result.getLongCardinality(), userIds, nextCursor);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Регистрирует новых пользователей. Внутри транзакции изменение применяется только после её успешной фиксации.
+     *
+     * @param userIds идентификаторы созданных пользователей
+     */
+    public void usersCreated(Collection<Long> userIds) {
+        if (userIds.isEmpty()) return;
+        pendingChanges.afterCommit(userIds, () -> write(() -> userIds.forEach(users::addLong)));
+    }
+
+    /**
+     * Удаляет пользователя из индекса вместе с его подписками.
+     * Внутри транзакции изменение применяется только после её успешной фиксации.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы подписок пользователя
+     */
+    public void userDeleted(Long userId, Collection<Long> subscriptionIds) {
+        pendingChanges.afterCommit(List.of(userId), () -> write(() -> {
+            users.removeLong(userId);
+            subscriptionIds.forEach(id -> update(id, userId, false));
+        }));
+    }
+
+    /**
+     * Регистрирует подписку пользователя на подписки.
+     * Внутри транзакции изменение применяется только после её успешной фиксации.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы подписок
+     */
+    public void subscribed(Long userId, Collection<Long> subscriptionIds) {
+        if (subscriptionIds.isEmpty()) return;
+        pendingChanges.afterCommit(List.of(userId), () -> write(() -> subscriptionIds.forEach(id -> update(id, userId, true))));
+    }
+
+    /**
+     * Регистрирует отписку пользователя от подписок.
+     * Внутри транзакции изменение применяется только после её успешной фиксации.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы подписок
+     */
+    public void unsubscribed(Long userId, Collection<Long> subscriptionIds) {
+        if (subscriptionIds.isEmpty()) return;
+        pendingChanges.afterCommit(List.of(userId), () -> write(() -> subscriptionIds.forEach(id -> update(id, userId, false))));
+    }
+
+    /**
+     * Вычисляет выражение. Вызывается под блокировкой чтения; результат может быть множеством самого индекса
+     * и не должен изменяться.
+     *
+     * @param expression выражение над подписками
+     * @return множество идентификаторов пользователей
+     */
+    private Roaring64Bitmap evaluate(SubscriptionQueryExpression expression) {
+        if (expression instanceof SubscriptionQueryExpression.And and) return evaluateAnd(and.and());
+        if (expression instanceof SubscriptionQueryExpression.Or or) {
+            return or(or.or().stream().map(this::evaluate).toList());
+        }
+        if (expression instanceof SubscriptionQueryExpression.Not not) return Roaring64Bitmap.andNot(users, evaluate(not.not()));
+
+        Long subscriptionId = ((SubscriptionQueryExpression.Subscription) expression).subscription();
+        Roaring64Bitmap bitmap = members.get(subscriptionId);
+        if (bitmap == null) throw new SubscriptionNotFoundException(String.format("Подписка c id %d не найдена", subscriptionId));
+        return bitmap;
+    }
+
+    /**
+     * Вычисляет пересечение. Отрицания внутри пересечения вычитаются из результата напрямую,
+     * без построения дополнения до множества всех пользователей.
+     *
+     * @param operands операнды пересечения
+     * @return множество идентификаторов пользователей
+     */
+    private Roaring64Bitmap evaluateAnd(List<SubscriptionQueryExpression> operands) {
+        List<Roaring64Bitmap> included = new ArrayList<>();
+        List<Roaring64Bitmap> excluded = new ArrayList<>();
+        for (SubscriptionQueryExpression operand : operands) {
+            if (operand instanceof SubscriptionQueryExpression.Not not) excluded.add(evaluate(not.not()));
+            else included.add(evaluate(operand));
+        }
+        Roaring64Bitmap result = users;
+        if (!included.isEmpty()) {
+            result = included.get(0);
+            for (Roaring64Bitmap bitmap : included.subList(1, included.size())) result = Roaring64Bitmap.and(result, bitmap);
+        }
+        if (excluded.isEmpty()) return result;
+        return Roaring64Bitmap.andNot(result, or(excluded));
+    }
+
+    /**
+     * Вычисляет объединение, не изменяя операнды.
+     *
+     * @param operands операнды объединения
+     * @return новое множество идентификаторов пользователей
+     */
+    private static Roaring64Bitmap or(List<Roaring64Bitmap> operands) {
+        Roaring64Bitmap result = new Roaring64Bitmap();
+        operands.forEach(result::or);
+        return result;
+    }
+
+    /**
+     * Добавляет пользователя в множество подписки либо удаляет из него. Вызывается под блокировкой записи.
+     * Подписки, отсутствующие в индексе, игнорируются до ближайшего перестроения.
+     */
+    private void update(Long subscriptionId, Long userId, boolean add) {
+        Roaring64Bitmap bitmap = members.get(subscriptionId);
+        if (bitmap == null) return;
+        if (add) bitmap.addLong(userId);
+        else bitmap.removeLong(userId);
+    }
+
+    private void write(Runnable action) {
+        lock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Загружает индекс из базы данных и атомарно заменяет текущий. Каждый шард читается параллельно в своей транзакции,
+     * множества шардов объединяются. Транзакция не помечается readOnly, чтобы при чтении с реплики индекс загружался
+     * с основной базы и не терял изменения, еще не дошедшие до реплики. Пользователи, изменения которых применялись
+     * во время загрузки или еще не применены, сохраняют текущие подписки до следующего перестроения.
+     */
+    private synchronized void reload() {
+        pendingChanges.startTracking();
+        List<Snapshot> shards;
+        try {
+            shards = shardRouter.gather(() -> transactionTemplate.execute(status -> load()));
+        } catch (RuntimeException e) {
+            pendingChanges.stopTracking();
+            throw e;
+        }
+        Snapshot loaded = shards.get(0);
+        for (Snapshot shard : shards.subList(1, shards.size())) {
+            shard.members().forEach((id, bitmap) -> loaded.members().merge(id, bitmap, (first, second) -> Roaring64Bitmap.or(first, second)));
+            loaded.users().or(shard.users());
+        }
+        Map<Long, Roaring64Bitmap> loadedMembers = loaded.members();
+        Roaring64Bitmap loadedUsers = loaded.users();
+        loadedMembers.values().forEach(Roaring64Bitmap::runOptimize);
+        loadedUsers.runOptimize();
+
+        lock.writeLock().lock();
+        try {
+            for (Long userId : pendingChanges.stopTracking()) {
+                if (users.contains(userId)) loadedUsers.addLong(userId);
+                else loadedUsers.removeLong(userId);
+                loadedMembers.forEach((subscriptionId, bitmap) -> {
+                    Roaring64Bitmap current = members.get(subscriptionId);
+                    if (current == null) return;
+                    if (current.contains(userId)) bitmap.addLong(userId);
+                    else bitmap.removeLong(userId);
+                });
+            }
+            members = loadedMembers;
+            users = loadedUsers;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Читает индекс одного шарда. Связи читаются потоком, упорядоченными по подписке,
+     * поэтому каждое множество заполняется последовательно. Запросы выполняются в READ COMMITTED, и связь
+     * с подпиской, созданной между запросами, создает множество этой подписки.
+     *
+     * @return подписчики подписок и все пользователи шарда
+     */
+    private Snapshot load() {
+        Map<Long, Roaring64Bitmap> loadedMembers = new HashMap<>();
+        Roaring64Bitmap loadedUsers = new Roaring64Bitmap();
+        jdbcTemplate.query("SELECT id FROM subscriptions", (RowCallbackHandler) row -> loadedMembers.put(row.getLong(1), new Roaring64Bitmap()));
+        jdbcTemplate.query("SELECT id FROM users", (RowCallbackHandler) row -> loadedUsers.addLong(row.getLong(1)));
+        jdbcTemplate.query("SELECT subscription_id, user_id FROM user_subscriptions ORDER BY subscription_id, user_id",
+                (RowCallbackHandler) row -> loadedMembers.computeIfAbsent(row.getLong(1), id -> new Roaring64Bitmap()).addLong(row.getLong(2)));
+        return new Snapshot(loadedMembers, loadedUsers);
+    }
+
+    /**
+     * Содержимое индекса, прочитанное с одного шарда.
+     *
+     * @param members подписчики каждой подписки
+     * @param users   все пользователи
+     */
+    private record Snapshot(Map<Long, Roaring64Bitmap> members, Roaring64Bitmap users) {
+    }
+}
@@ -1,25 +1,48 @@
 package ru.buzynnikov.user_subscription_service.services;
 
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import ru.buzynnikov.user_subscription_service.aspect.Coalesce;
+import ru.buzynnikov.user_subscription_service.aspect.Sharded;
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionMembershipDTO;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryRequest;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryResponse;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserSubscriptionDTO;
 import ru.buzynnikov.user_subscription_service.exceptions.SubscriptionNotFoundException;
 import ru.buzynnikov.user_subscription_service.repositories.SubscriptionRepository;
 import ru.buzynnikov.user_subscription_service.services.interfaces.SubscriptionService;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Реализация интерфейса SubscriptionService для работы с подписками.
+ * Справочник подписок повторяется на каждом шарде, поэтому читается на шарде текущего потока,
+ * а связи пользователя с подписками — на шарде пользователя.
  */
 @Service
 public class SubscriptionServiceDefault implements SubscriptionService {
 
     private final SubscriptionRepository subscriptionRepository;
+    private final SubscriptionLeaderboard subscriptionLeaderboard;
+    private final SubscriptionMembershipIndex membershipIndex;
+    private final ShardRouter shardRouter;
 
-    public SubscriptionServiceDefault(SubscriptionRepository subscriptionRepository) {
+    public SubscriptionServiceDefault(SubscriptionRepository subscriptionRepository, SubscriptionLeaderboard subscriptionLeaderboard,
+                                      SubscriptionMembershipIndex membershipIndex, ShardRouter shardRouter) {
         this.subscriptionRepository = subscriptionRepository;
+        this.subscriptionLeaderboard = subscriptionLeaderboard;
+        this.membershipIndex = membershipIndex;
+        this.shardRouter = shardRouter;
     }
 
     /**
@@ -28,7 +51,7 @@ public class SubscriptionServiceDefault implements SubscriptionService {
      *
      * @param id идентификатор подписки
      */
-    @Transactional
+    @Transactional(readOnly = true)
     @Override
     public void existsSubscription(Long id) {
         if (!subscriptionRepository.existsById(id)) throw new SubscriptionNotFoundException(String.format( "Подписка c id %d не найдена", id));
@@ -36,25 +59,140 @@ public class SubscriptionServiceDefault implements SubscriptionService {
     }
 
     /**
-     * Возвращает набор подписок, привязанных к пользователю с указанным идентификатором.
+     * Возвращает страницу подписок, привязанных к пользователю с указанным идентификатором.
+     * Выборка выполняется по ключу, поэтому время ответа не зависит от номера страницы.
+     *
+     * @param id    идентификатор пользователя
+     * @param after идентификатор подписки, после которого начинается страница
+     * @param size  размер страницы
+     * @return страница объектов SubscriptionResponse, упорядоченных по возрастанию идентификатора
+     */
+    @Transactional(readOnly = true)
+    @Override
+    @Sharded(key = "#id")
+    public CursorPage<SubscriptionResponse> getSubscriptionsByUserId(Long id, long after, int size) {
+        return CursorPage.of(subscriptionRepository.findSubscriptionsByUserId(id, after, Limit.of(size + 1)), size, SubscriptionResponse::id);
+    }
+
+    /**
+     * Возвращает страницу подписчиков подписки с указанным идентификатором.
+     * Если подписка не существует, выбрасывается исключение SubscriptionNotFoundException.
+     * Подписчики выбираются на каждом шарде, и результаты объединяются по возрастанию идентификатора.
+     *
+     * @param id    идентификатор подписки
+     * @param after идентификатор пользователя, после которого начинается страница
+     * @param size  размер страницы
+     * @return страница объектов UserResponse, упорядоченных по возрастанию идентификатора
+     */
+    @Transactional(readOnly = true)
+    @Override
+    @Coalesce(key = "{#id, #after, #size}")
+    public CursorPage<UserResponse> getSubscriptionUsers(Long id, long after, int size) {
+        existsSubscription(id);
+        List<UserResponse> users = shardRouter.gatherSorted(
+                () -> subscriptionRepository.findSubscribersBySubscriptionId(id, after, Limit.of(size + 1)),
+                Comparator.comparing(UserResponse::id), size + 1);
+        return CursorPage.of(users, size, UserResponse::id);
+    }
+
+    /**
+     * Возвращает все подписки нескольких пользователей одним запросом, сгруппированные по пользователю.
+     * Связи читаются на шарде текущего потока, поэтому все пользователи должны находиться на нем.
+     *
+     * @param userIds идентификаторы пользователей
+     * @return подписки по идентификатору пользователя, упорядоченные по возрастанию идентификатора подписки
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public Map<Long, List<SubscriptionResponse>> getSubscriptionsByUserIds(Collection<Long> userIds) {
+        Map<Long, List<SubscriptionResponse>> subscriptions = new HashMap<>();
+        for (UserSubscriptionDTO row : subscriptionRepository.findSubscriptionsByUserIds(userIds)) {
+            subscriptions.computeIfAbsent(row.userId(), id -> new ArrayList<>()).add(new SubscriptionResponse(row.id(), row.name()));
+        }
+        return subscriptions;
+    }
+
+    /**
+     * Возвращает подписки по идентификаторам одним запросом. Справочник подписок читается на шарде текущего потока.
+     *
+     * @param ids идентификаторы подписок
+     * @return существующие подписки, упорядоченные по возрастанию идентификатора
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public List<SubscriptionResponse> getSubscriptionsByIds(Collection<Long> ids) {
+        return subscriptionRepository.findSubscriptionsByIds(ids);
+    }
+
+    /**
+     * Возвращает идентификаторы подписок, привязанных к пользователю с указанным идентификатором.
      *
      * @param id идентификатор пользователя
-     * @return множество объектов SubscriptionResponse, содержащего информацию о подписках пользователя
+     * @return список идентификаторов подписок пользователя
      */
     @Transactional
     @Override
-    public Set<SubscriptionResponse> getSubscriptionsByUserId(Long id) {
-        return subscriptionRepository.findSubscriptionsByUserId(id);
+    @Sharded(key = "#id")
+    public List<Long> getSubscriptionIdsByUserId(Long id) {
+        return subscriptionRepository.findSubscriptionIdsByUserId(id);
     }
+
+    /**
+     * Возвращает существующие подписки из переданного списка вместе с признаком подписки на них пользователя.
+     * Проверка выполняется одним запросом независимо от количества подписок.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы проверяемых подписок
+     * @return список объектов SubscriptionMembershipDTO только для существующих подписок
+     */
+    @Transactional
+    @Override
+    @Sharded(key = "#userId")
+    public List<SubscriptionMembershipDTO> getSubscriptionMemberships(Long userId, Collection<Long> subscriptionIds) {
+        return subscriptionRepository.findSubscriptionMemberships(userId, subscriptionIds);
+    }
+
     /**
      * Возвращает список трех самых популярных подписок.
      *
      * @return список объектов SubscriptionResponse, содержащий три самые популярные подписки
      */
-    @Transactional
     @Override
     public List<SubscriptionResponse> getSubscriptionsTop3() {
-        return subscriptionRepository.findSubscriptionsTop3().stream().map(subscription ->
-                new SubscriptionResponse(subscription.id(), subscription.name())).toList();
+        return getSubscriptionsTop(3);
+    }
+
+    /**
+     * Возвращает список самых популярных подписок из рейтинга в памяти, не обращаясь к базе данных.
+     *
+     * @param limit максимальное количество подписок в списке
+     * @return список объектов SubscriptionResponse, упорядоченный по убыванию количества подписчиков
+     */
+    @Override
+    public List<SubscriptionResponse> getSubscriptionsTop(int limit) {
+        return subscriptionLeaderboard.top(limit);
+    }
+
+    /**
+     * Возвращает версию рейтинга подписок в памяти.
+     *
+     * @return версия рейтинга подписок
+     */
+    @Override
+    public String getSubscriptionsTopVersion() {
+        return subscriptionLeaderboard.version();
+    }
+
+    /**
+     * Находит пользователей, подписки которых удовлетворяют логическому выражению.
+     * Выражение вычисляется по индексу подписчиков в памяти, не обращаясь к базе данных.
+     *
+     * @param request выражение над подписками и параметры страницы
+     * @return количество подходящих пользователей и страница их идентификаторов по возрастанию
+     * @throws SubscriptionNotFoundException если выражение ссылается на неизвестную подписку
+     */
+    @Override
+    public SubscriptionQueryResponse querySubscribers(SubscriptionQueryRequest request) {
+        return membershipIndex.query(request.query(), request.afterOrDefault(), request.sizeOrDefault());
     }
 }
@@ -0,0 +1,412 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.buzynnikov.user_subscription_service.audit.AuditEvent;
+import ru.buzynnikov.user_subscription_service.audit.AuditPipeline;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionChangeDTO;
+import ru.buzynnikov.user_subscription_service.exceptions.ServiceOverloadedException;
+import ru.buzynnikov.user_subscription_service.repositories.UserRepository;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Отложенная запись подписок и отписок (subscriptions.write-behind.enabled=true).
+ * Изменение записывается в журнал на локальном диске ({@link SubscriptionChangeJournal}) и в буфер в памяти,
+ * после чего запрос завершается, не обращаясь к базе данных. В буфере хранится только последнее изменение
+ * для каждой пары пользователя и подписки, поэтому подписка и следующая за ней отписка записываются одним изменением.
+ * <p>
+ * Фоновый поток записывает буфер в базу данных пакетными запросами раз в flush-interval или при накоплении
+ * batch-size изменений, по транзакции на шард. При ошибке изменения возвращаются в буфер и записываются повторно:
+ * запросы пачки идемпотентны. При заполнении буфера до max-pending новые изменения отклоняются
+ * с {@link ServiceOverloadedException}.
+ * <p>
+ * Изменения, ожидающие записи, видны при чтении подписок пользователя на этом экземпляре приложения.
+ * <p>
+ * Метрики: subscriptions.write-behind.changes (тег result: accepted, coalesced, rejected, written, skipped, failed),
+ * subscriptions.write-behind.pending, subscriptions.write-behind.flush.
+ */
+@Component
+public class SubscriptionWriteBehind implements SmartLifecycle {
+
+    private final Logger logger = LoggerFactory.getLogger(SubscriptionWriteBehind.class);
+
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxPending;
+    private final Duration flushInterval;
+    private final SubscriptionChangeJournal journal;
+
+    private final UserRepository userRepository;
+    private final SubscriptionLeaderboard subscriptionLeaderboard;
+    private final SubscriptionMembershipIndex membershipIndex;
+    private final UserReadCache userReadCache;
+    private final ReadYourWrites readYourWrites;
+    private final AuditPipeline auditPipeline;
+    private final ShardRouter shardRouter;
+    private final TransactionTemplate transactionTemplate;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private Map<Long, Map<Long, Boolean>> pending = new HashMap<>();
+    private Map<Long, Map<Long, Boolean>> inFlight = Map.of();
+    private volatile int pendingCount;
+
+    private final Counter accepted;
+    private final Counter coalesced;
+    private final Counter rejected;
+    private final Counter written;
+    private final Counter skipped;
+    private final Counter failed;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private volatile Thread flusher;
+
+    public SubscriptionWriteBehind(UserRepository userRepository, SubscriptionLeaderboard subscriptionLeaderboard,
+                                   SubscriptionMembershipIndex membershipIndex, UserReadCache userReadCache,
+                                   ReadYourWrites readYourWrites, AuditPipeline auditPipeline, ShardRouter shardRouter,
+                                   TransactionTemplate transactionTemplate, MeterRegistry meterRegistry,
+                                   @Value("${subscriptions.write-behind.enabled:false}") boolean enabled,
+                                   @Value("${subscriptions.write-behind.directory:data/write-behind}") Path directory,
+                                   @Value("${subscriptions.write-behind.fsync:true}") boolean fsync,
+                                   @Value("${subscriptions.write-behind.batch-size:5000}") int batchSize,
+                                   @Value("${subscriptions.write-behind.max-pending:100000}") int maxPending,
+                                   @Value("${subscriptions.write-behind.flush-interval:PT1S}") Duration flushInterval) {
+        this.userRepository = userRepository;
+        this.subscriptionLeaderboard = subscriptionLeaderboard;
+        this.membershipIndex = membershipIndex;
+        this.userReadCache = userReadCache;
+        this.readYourWrites = readYourWrites;
+        this.auditPipeline = auditPipeline;
+        this.shardRouter = shardRouter;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.flushInterval = flushInterval;
+        this.journal = enabled ? new SubscriptionChangeJournal(directory, fsync) : null;
+        this.accepted = changes(meterRegistry, "accepted");
+        this.coalesced = changes(meterRegistry, "coalesced");
+        this.rejected = changes(meterRegistry, "rejected");
+        this.written = changes(meterRegistry, "written");
+        this.skipped = changes(meterRegistry, "skipped");
+        this.failed = changes(meterRegistry, "failed");
+        this.flushTimer = Timer.builder("subscriptions.write-behind.flush")
+                .description("Время записи пачки отложенных изменений подписок").register(meterRegistry);
+        Gauge.builder("subscriptions.write-behind.pending", this, writeBehind -> writeBehind.pendingCount)
+                .description("Отложенные изменения подписок, ожидающие записи").register(meterRegistry);
+    }
+
+    /**
+     * @return true, если подписки и отписки записываются отложенно
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Принимает изменение подписки к отложенной записи. Возвращает управление после записи изменения в журнал.
+     *
+     * @param change изменение подписки
+     * @throws ServiceOverloadedException если буфер заполнен
+     */
+    public void submit(SubscriptionChangeDTO change) {
+        long position;
+        lock.lock();
+        try {
+            if (pendingCount >= maxPending) {
+                rejected.increment();
+                throw new ServiceOverloadedException("Очередь изменений подписок заполнена, повторите запрос позже", flushInterval);
+            }
+            position = journal.append(change);
+            put(pending, change);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+        accepted.increment();
+        if (pendingCount >= batchSize) {
+            Thread thread = flusher;
+            if (thread != null) LockSupport.unpark(thread);
+        }
+        try {
+            journal.sync(position);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Проверяет, есть ли у пользователя изменения подписок, еще не записанные в базу данных.
+     *
+     * @param userId идентификатор пользователя
+     * @return true, если изменения есть
+     */
+    public boolean hasPendingChanges(Long userId) {
+        if (!enabled) return false;
+        lock.lock();
+        try {
+            return pending.containsKey(userId) || inFlight.containsKey(userId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Возвращает изменения подписок пользователя, еще не записанные в базу данных.
+     *
+     * @param userId идентификатор пользователя
+     * @return признак подписки по идентификатору подписки в порядке возрастания; пустой, если изменений нет
+     */
+    public Map<Long, Boolean> getPendingChanges(Long userId) {
+        if (!enabled) return Map.of();
+        Map<Long, Boolean> changes = new TreeMap<>();
+        lock.lock();
+        try {
+            changes.putAll(inFlight.getOrDefault(userId, Map.of()));
+            changes.putAll(pending.getOrDefault(userId, Map.of()));
+        } finally {
+            lock.unlock();
+        }
+        return changes;
+    }
+
+    /**
+     * Записывает накопленные изменения в базу данных. Изменения, принятые во время записи, ждут следующей.
+     */
+    public synchronized void flush() {
+        Map<Long, Map<Long, Boolean>> batch;
+        List<Path> segments;
+        int count;
+        lock.lock();
+        try {
+            if (pending.isEmpty()) return;
+            segments = journal.rotate();
+            batch = pending;
+            count = pendingCount;
+            pending = new HashMap<>();
+            pendingCount = 0;
+            inFlight = batch;
+        } catch (IOException e) {
+            logger.warn("Не удалось начать новый сегмент журнала изменений подписок: {}", e.getMessage());
+            return;
+        } finally {
+            lock.unlock();
+        }
+        long start = System.nanoTime();
+        try {
+            write(batch);
+            journal.delete(segments);
+        } catch (IOException e) {
+            logger.warn("Не удалось удалить записанные сегменты журнала изменений подписок: {}", e.getMessage());
+        } catch (RuntimeException e) {
+            failed.increment(count);
+            logger.warn("Не удалось записать {} изменений подписок: {}", count, e.getMessage());
+            restore(batch);
+        } finally {
+            lock.lock();
+            try {
+                inFlight = Map.of();
+            } finally {
+                lock.unlock();
+            }
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Восстанавливает изменения из журнала предыдущего запуска и запускает фоновую запись.
+     */
+    @Override
+    public void start() {
+        if (!enabled) return;
+        List<SubscriptionChangeDTO> recovered;
+        try {
+            recovered = journal.open();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        lock.lock();
+        try {
+            recovered.forEach(change -> put(pending, change));
+        } finally {
+            lock.unlock();
+        }
+        if (!recovered.isEmpty()) logger.info("Из журнала восстановлено {} изменений подписок", recovered.size());
+        running = true;
+        Thread thread = new Thread(this::run, "subscription-write-behind");
+        thread.setDaemon(true);
+        flusher = thread;
+        thread.start();
+    }
+
+    /**
+     * Останавливает фоновую запись, предварительно записав накопленные изменения.
+     * Изменения, которые не удалось записать, остаются в журнале до следующего запуска.
+     */
+    @Override
+    public void stop() {
+        running = false;
+        Thread thread = flusher;
+        if (thread == null) return;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(Duration.ofSeconds(30).toMillis());
+            journal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            logger.warn("Не удалось закрыть журнал изменений подписок: {}", e.getMessage());
+        }
+        flusher = null;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Запись останавливается после веб-сервера, чтобы записать изменения последних запросов,
+     * и до конвейера аудита, который получает события записанных изменений.
+     */
+    @Override
+    public int getPhase() {
+        return 1;
+    }
+
+    /**
+     * Цикл фонового потока: ожидание flush-interval или накопления batch-size изменений и запись буфера.
+     * После остановки буфер записывается последний раз.
+     */
+    private void run() {
+        while (running) {
+            if (pendingCount < batchSize) LockSupport.parkNanos(this, flushInterval.toNanos());
+            flush();
+        }
+        flush();
+    }
+
+    /**
+     * Записывает пачку изменений: на каждом шарде одной транзакцией с пакетными запросами.
+     *
+     * @param batch изменения по идентификатору пользователя
+     */
+    private void write(Map<Long, Map<Long, Boolean>> batch) {
+        Map<Integer, List<SubscriptionChangeDTO>> shards = new TreeMap<>();
+        batch.forEach((userId, changes) -> changes.forEach((subscriptionId, subscribed) ->
+                shards.computeIfAbsent(shardRouter.shardOf(userId), shard -> new ArrayList<>())
+                        .add(new SubscriptionChangeDTO(userId, subscriptionId, subscribed))));
+        shards.forEach((shard, changes) -> shardRouter.onShard(shard,
+                () -> transactionTemplate.executeWithoutResult(status -> writeShard(changes))));
+    }
+
+    /**
+     * Записывает изменения пользователей одного шарда и регистрирует их последствия после фиксации транзакции:
+     * версии пользователей, рейтинг и индекс подписок, кэш чтения и события аудита.
+     * Изменения, не изменившие ни одной записи, пропускаются.
+     *
+     * @param changes изменения подписок
+     */
+    private void writeShard(List<SubscriptionChangeDTO> changes) {
+        int[] counts = userRepository.applySubscriptionChanges(changes);
+        Map<Long, List<Long>> added = new LinkedHashMap<>();
+        Map<Long, List<Long>> removed = new LinkedHashMap<>();
+        int applied = 0;
+        for (int i = 0; i < changes.size(); i++) {
+            if (counts[i] == 0) continue;
+            SubscriptionChangeDTO change = changes.get(i);
+            (change.subscribed() ? added : removed).computeIfAbsent(change.userId(), id -> new ArrayList<>()).add(change.subscriptionId());
+            applied++;
+        }
+        List<Long> changedUsers = new ArrayList<>(added.keySet());
+        removed.keySet().stream().filter(userId -> !added.containsKey(userId)).forEach(changedUsers::add);
+        changedUsers.forEach(readYourWrites::written);
+        userRepository.incrementVersions(changedUsers);
+        added.forEach((userId, subscriptionIds) -> {
+            subscriptionLeaderboard.subscribed(subscriptionIds);
+            membershipIndex.subscribed(userId, subscriptionIds);
+            subscriptionIds.forEach(id -> audit(AuditEvent.subscriptionAdded(userId, id)));
+        });
+        removed.forEach((userId, subscriptionIds) -> {
+            subscriptionLeaderboard.unsubscribed(subscriptionIds);
+            membershipIndex.unsubscribed(userId, subscriptionIds);
+            subscriptionIds.forEach(id -> audit(AuditEvent.subscriptionRemoved(userId, id)));
+        });
+        changedUsers.forEach(userReadCache::evictSubscriptions);
+        int writtenCount = applied;
+        TransactionCallbacks.afterCommit(() -> {
+            written.increment(writtenCount);
+            skipped.increment(changes.size() - writtenCount);
+        });
+    }
+
+    /**
+     * Возвращает в буфер изменения пачки, которую не удалось записать. Изменения той же пары,
+     * принятые во время записи, новее и не заменяются.
+     *
+     * @param batch изменения по идентификатору пользователя
+     */
+    private void restore(Map<Long, Map<Long, Boolean>> batch) {
+        lock.lock();
+        try {
+            batch.forEach((userId, changes) -> {
+                Map<Long, Boolean> target = pending.computeIfAbsent(userId, id -> new HashMap<>());
+                changes.forEach((subscriptionId, subscribed) -> {
+                    if (target.putIfAbsent(subscriptionId, subscribed) == null) pendingCount++;
+                });
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Добавляет изменение в буфер, заменяя предыдущее изменение той же пары. Вызывается под блокировкой.
+     *
+     * @param buffer буфер изменений
+     * @param change изменение подписки
+     */
+    private void put(Map<Long, Map<Long, Boolean>> buffer, SubscriptionChangeDTO change) {
+        Boolean previous = buffer.computeIfAbsent(change.userId(), id -> new HashMap<>())
+                .put(change.subscriptionId(), change.subscribed());
+        if (previous == null) pendingCount++;
+        else coalesced.increment();
+    }
+
+    /**
+     * Публикует событие аудита после фиксации текущей транзакции.
+     *
+     * @param event событие аудита
+     */
+    private void audit(AuditEvent event) {
+        TransactionCallbacks.afterCommit(() -> auditPipeline.publish(event));
+    }
+
+    private static Counter changes(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("subscriptions.write-behind.changes").tag("result", result)
+                .description("Отложенные изменения подписок").register(meterRegistry);
+    }
+}
@@ -0,0 +1,164 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.buzynnikov.user_subscription_service.dto.UserImportFailure;
+import ru.buzynnikov.user_subscription_service.dto.UserImportProgress;
+import ru.buzynnikov.user_subscription_service.dto.UserRequest;
+import ru.buzynnikov.user_subscription_service.models.User;
+import ru.buzynnikov.user_subscription_service.repositories.UserRepository;
+import ru.buzynnikov.user_subscription_service.services.interfaces.UserImportListener;
+import ru.buzynnikov.user_subscription_service.services.interfaces.UserImportService;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Реализация сервиса массового импорта пользователей.
+ * Строки читаются из потока по одной и сохраняются пачками фиксированного размера, каждая в своей транзакции,
+ * поэтому объем используемой памяти не зависит от размера входных данных.
+ */
+@Service
+public class UserImportServiceDefault implements UserImportService {
+
+    private final UserRepository userRepository;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final SubscriptionMembershipIndex membershipIndex;
+    private final ShardRouter shardRouter;
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    public UserImportServiceDefault(UserRepository userRepository, ObjectMapper objectMapper, Validator validator,
+                                    TransactionTemplate transactionTemplate, SubscriptionMembershipIndex membershipIndex,
+                                    ShardRouter shardRouter,
+                                    @Value("${users.import.batch-size:1000}") int batchSize) {
+        this.userRepository = userRepository;
+        this.objectMapper = objectMapper;
+        this.validator = validator;
+        this.transactionTemplate = transactionTemplate;
+        this.membershipIndex = membershipIndex;
+        this.shardRouter = shardRouter;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Импортирует пользователей из потока в формате NDJSON (один объект UserRequest на строку).
+     * Пустые строки пропускаются, строки с ошибками разбора или валидации передаются получателю событий
+     * и не прерывают импорт.
+     *
+     * @param input    входной поток с пользователями
+     * @param listener получатель событий о ходе импорта
+     * @return итоговое состояние импорта
+     * @throws IOException если не удалось прочитать входной поток
+     */
+    @Override
+    public UserImportProgress importUsers(InputStream input, UserImportListener listener) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+        List<User> batch = new ArrayList<>(batchSize);
+        List<Long> batchLines = new ArrayList<>(batchSize);
+        long processed = 0;
+        long imported = 0;
+        long failed = 0;
+        long lineNumber = 0;
+
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            processed++;
+
+            String error = parse(line, batch);
+            if (error != null) {
+                failed++;
+                listener.onFailure(new UserImportFailure(lineNumber, error));
+                continue;
+            }
+            batchLines.add(lineNumber);
+
+            if (batch.size() == batchSize) {
+                int saved = flush(batch, batchLines, listener);
+                imported += saved;
+                failed += batchLines.size() - saved;
+                batch.clear();
+                batchLines.clear();
+                listener.onProgress(new UserImportProgress(processed, imported, failed, false));
+            }
+        }
+
+        int saved = flush(batch, batchLines, listener);
+        imported += saved;
+        failed += batchLines.size() - saved;
+
+        UserImportProgress result = new UserImportProgress(processed, imported, failed, true);
+        listener.onProgress(result);
+        return result;
+    }
+
+    /**
+     * Разбирает и проверяет строку, добавляя пользователя в пачку.
+     *
+     * @param line  строка с объектом UserRequest
+     * @param batch текущая пачка пользователей
+     * @return описание ошибки либо null, если строка корректна
+     */
+    private String parse(String line, List<User> batch) {
+        UserRequest request;
+        try {
+            request = objectMapper.readValue(line, UserRequest.class);
+        } catch (JsonProcessingException e) {
+            return "Ошибка в теле запроса";
+        }
+        Set<ConstraintViolation<UserRequest>> violations = validator.validate(request);
+        if (!violations.isEmpty()) return violations.iterator().next().getMessage();
+
+        batch.add(new User(request.name()));
+        return null;
+    }
+
+    /**
+     * Сохраняет пачку пользователей в отдельной транзакции и очищает контекст персистентности.
+     * Пачка целиком сохраняется на очередном шарде.
+     * При ошибке базы данных все строки пачки считаются неимпортированными.
+     *
+     * @param batch      пачка пользователей
+     * @param batchLines номера строк, из которых получены пользователи пачки
+     * @param listener   получатель событий о ходе импорта
+     * @return количество сохраненных пользователей
+     */
+    private int flush(List<User> batch, List<Long> batchLines, UserImportListener listener) {
+        if (batch.isEmpty()) return 0;
+        try {
+            shardRouter.onShard(shardRouter.nextShard(), () -> transactionTemplate.executeWithoutResult(status -> {
+                userRepository.saveAll(batch);
+                entityManager.flush();
+                entityManager.clear();
+                membershipIndex.usersCreated(batch.stream().map(User::getId).toList());
+            }));
+            return batch.size();
+        } catch (DataAccessException e) {
+            entityManager.clear();
+            String error = "Ошибка сохранения: " + e.getMostSpecificCause().getMessage();
+            batchLines.forEach(batchLine -> listener.onFailure(new UserImportFailure(batchLine, error)));
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package ru.buzynnikov.user_subscription_service.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Кэш чтения пользователей и страниц их подписок с ограничением по размеру и времени жизни записей.
+ * Сброс записей выполняется после фиксации транзакции, изменившей данные, поэтому после успешной записи
+ * чтение никогда не возвращает устаревшее значение.
+ * <p>
+ * Страницы подписок хранятся с номером поколения пользователя в ключе: сброс увеличивает поколение,
+ * и все ранее закэшированные страницы пользователя становятся недостижимыми без перебора кэша.
+ * Номера поколений выдаются из общего счетчика и никогда не повторяются.
+ * <p>
+ * Внутри пишущей транзакции кэш не используется: такие чтения должны видеть незафиксированные изменения
+ * своей транзакции и не должны публиковать их в общий кэш.
+ */
+@Component
+public class UserReadCache {
+
+    private final Cache<Long, UserResponse> users;
+    private final Cache<Long, Long> versions;
+    private final Cache<Long, Long> subscriptionGenerations;
+    private final Cache<PageKey, CursorPage<SubscriptionResponse>> subscriptionPages;
+    private final AtomicLong generationSequence = new AtomicLong();
+
+    public UserReadCache(MeterRegistry meterRegistry,
+                         @Value("${users.cache.maximum-size:10000}") long maximumSize,
+                         @Value("${users.cache.expire-after-write:PT10M}") Duration expireAfterWrite) {
+        this.users = build(maximumSize, expireAfterWrite);
+        this.versions = build(maximumSize, expireAfterWrite);
+        this.subscriptionGenerations = build(maximumSize, expireAfterWrite);
+        this.subscriptionPages = build(maximumSize, expireAfterWrite);
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+        CaffeineCacheMetrics.monitor(meterRegistry, subscriptionPages, "userSubscriptions");
+    }
+
+    /**
+     * Возвращает пользователя из кэша, загружая его при отсутствии.
+     * Исключение загрузчика передается вызывающему, значение при этом не кэшируется.
+     *
+     * @param id     идентификатор пользователя
+     * @param loader загрузчик пользователя из базы данных
+     * @return объект UserResponse
+     */
+    public UserResponse getUser(Long id, Supplier<UserResponse> loader) {
+        if (inWriteTransaction()) return loader.get();
+        return users.get(id, key -> loader.get());
+    }
+
+    /**
+     * Возвращает версию пользователя из кэша, загружая её при отсутствии.
+     *
+     * @param id     идентификатор пользователя
+     * @param loader загрузчик версии из базы данных
+     * @return версия пользователя
+     */
+    public long getVersion(Long id, Supplier<Long> loader) {
+        if (inWriteTransaction()) return loader.get();
+        return versions.get(id, key -> loader.get());
+    }
+
+    /**
+     * Возвращает страницу подписок пользователя из кэша, загружая её при отсутствии.
+     *
+     * @param userId идентификатор пользователя
+     * @param after  идентификатор подписки, после которого начинается страница
+     * @param size   размер страницы
+     * @param loader загрузчик страницы из базы данных
+     * @return страница объектов SubscriptionResponse
+     */
+    public CursorPage<SubscriptionResponse> getSubscriptions(Long userId, long after, int size,
+                                                             Supplier<CursorPage<SubscriptionResponse>> loader) {
+        if (inWriteTransaction()) return loader.get();
+        return subscriptionPages.get(new PageKey(userId, getGeneration(userId), after, size), key -> loader.get());
+    }
+
+    /**
+     * Возвращает поколение данных пользователя. Поколение меняется после фиксации каждого изменения пользователя
+     * или его подписок, поэтому входит в ключ объединения одинаковых вызовов чтения.
+     *
+     * @param userId идентификатор пользователя
+     * @return номер поколения
+     */
+    public long getGeneration(Long userId) {
+        return subscriptionGenerations.get(userId, key -> generationSequence.incrementAndGet());
+    }
+
+    /**
+     * Сбрасывает пользователя, его версию и страницы его подписок после фиксации текущей транзакции.
+     *
+     * @param id идентификатор пользователя
+     */
+    public void evictUser(Long id) {
+        TransactionCallbacks.afterCommit(() -> {
+            users.invalidate(id);
+            versions.invalidate(id);
+            subscriptionGenerations.put(id, generationSequence.incrementAndGet());
+        });
+    }
+
+    /**
+     * Сбрасывает версию и страницы подписок пользователя после фиксации текущей транзакции.
+     *
+     * @param userId идентификатор пользователя
+     */
+    public void evictSubscriptions(Long userId) {
+        TransactionCallbacks.afterCommit(() -> {
+            versions.invalidate(userId);
+            subscriptionGenerations.put(userId, generationSequence.incrementAndGet());
+        });
+    }
+
+    /**
+     * Проверяет, выполняется ли текущий поток внутри пишущей транзакции.
+     *
+     * @return true, если активна транзакция без признака readOnly
+     */
+    private static boolean inWriteTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive()
+                && !TransactionSynchronizationManager.isCurrentTransactionReadOnly();
+    }
+
+    /**
+     * Создает кэш с ограничением по размеру и времени жизни записей и сбором статистики.
+     *
+     * @param maximumSize      максимальное количество записей
+     * @param expireAfterWrite время жизни записи
+     * @return новый кэш
+     */
+    private static <K, V> Cache<K, V> build(long maximumSize, Duration expireAfterWrite) {
+        return Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Ключ страницы подписок пользователя.
+     *
+     * @param userId     идентификатор пользователя
+     * @param generation поколение подписок пользователя
+     * @param after      идентификатор подписки, после которого начинается страница
+     * @param size       размер страницы
+     */
+    private record PageKey(Long userId, long generation, long after, int size) {
+    }
+}
@@ -1,12 +1,24 @@
 package ru.buzynnikov.user_subscription_service.services;
 
 
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
-import ru.buzynnikov.user_subscription_service.aspect.CreateLog;
-import ru.buzynnikov.user_subscription_service.aspect.UpdateLog;
+import ru.buzynnikov.user_subscription_service.aspect.Coalesce;
+import ru.buzynnikov.user_subscription_service.aspect.Sharded;
+import ru.buzynnikov.user_subscription_service.audit.AuditEvent;
+import ru.buzynnikov.user_subscription_service.audit.AuditPipeline;
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchRequest;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchResponse;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchStatus;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionChangeDTO;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionMembershipDTO;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionRequest;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserBatchResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserDetailsResponse;
 import ru.buzynnikov.user_subscription_service.dto.UserRequest;
 import ru.buzynnikov.user_subscription_service.dto.UserResponse;
 import ru.buzynnikov.user_subscription_service.exceptions.UserNotFoundException;
@@ -14,8 +26,21 @@ import ru.buzynnikov.user_subscription_service.models.User;
 import ru.buzynnikov.user_subscription_service.repositories.UserRepository;
 import ru.buzynnikov.user_subscription_service.services.interfaces.SubscriptionService;
 import ru.buzynnikov.user_subscription_service.services.interfaces.UserService;
+import ru.buzynnikov.user_subscription_service.sharding.ShardContext;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRouter;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 /**
  * Реализация стандартного сервиса для работы с пользователями.
@@ -23,37 +48,131 @@ import java.util.Set;
 @Service
 public class UserServiceDefault implements UserService {
 
+    private static final int EXPORT_PAGE_SIZE = 1000;
+
     private final UserRepository userRepository;
     private final SubscriptionService subscriptionService;
+    private final SubscriptionLeaderboard subscriptionLeaderboard;
+    private final UserReadCache userReadCache;
+    private final SubscriptionMembershipIndex membershipIndex;
+    private final ReadYourWrites readYourWrites;
+    private final AuditPipeline auditPipeline;
+    private final ShardRouter shardRouter;
+    private final SubscriptionWriteBehind subscriptionWriteBehind;
 
 
-    public UserServiceDefault(UserRepository userRepository, SubscriptionService subscriptionService) {
+    public UserServiceDefault(UserRepository userRepository, SubscriptionService subscriptionService,
+                              SubscriptionLeaderboard subscriptionLeaderboard, UserReadCache userReadCache,
+                              SubscriptionMembershipIndex membershipIndex, ReadYourWrites readYourWrites,
+                              AuditPipeline auditPipeline, ShardRouter shardRouter,
+                              SubscriptionWriteBehind subscriptionWriteBehind) {
         this.userRepository = userRepository;
         this.subscriptionService = subscriptionService;
+        this.subscriptionLeaderboard = subscriptionLeaderboard;
+        this.userReadCache = userReadCache;
+        this.membershipIndex = membershipIndex;
+        this.readYourWrites = readYourWrites;
+        this.auditPipeline = auditPipeline;
+        this.shardRouter = shardRouter;
+        this.subscriptionWriteBehind = subscriptionWriteBehind;
     }
 
     /**
      * Сохраняет нового пользователя на основе переданной информации.
+     * Пользователь создается на очередном шарде, номер которого содержится в его идентификаторе.
      *
      * @param request объект UserRequest, содержащий информацию о пользователе
      * @return объект UserResponse, представляющий созданного пользователя
      */
     @Transactional
     @Override
-    @CreateLog
+    @Sharded
     public UserResponse saveUser(UserRequest request) {
-        return createUserResponse(userRepository.save(createUser(request)));
+        UserResponse response = createUserResponse(userRepository.save(createUser(request)));
+        membershipIndex.usersCreated(List.of(response.id()));
+        readYourWrites.written(response.id());
+        audit(AuditEvent.userCreated(response.id(), response.name()));
+        return response;
     }
 
     /**
      * Возвращает информацию о пользователе по его идентификатору.
+     * Повторные запросы обслуживаются из кэша без обращения к базе данных.
      *
      * @param id идентификатор пользователя
      * @return объект UserResponse, содержащий информацию о пользователе
      */
     @Override
+    @Coalesce(key = "{#id, @userReadCache.getGeneration(#id)}")
+    @Sharded(key = "#id")
     public UserResponse getUserById(Long id) {
-        return createUserResponse(getById(id));
+        return userReadCache.getUser(id, () -> readYourWrites.read(id, () -> createUserResponse(getById(id))));
+    }
+
+    /**
+     * Возвращает нескольких пользователей по их идентификаторам. Пользователи каждого шарда читаются одним запросом,
+     * их подписки — вторым запросом, поэтому количество обращений к базе данных не зависит от количества пользователей.
+     * Кэш отдельных пользователей не используется. Шарды опрашиваются параллельно.
+     *
+     * @param ids                  идентификаторы пользователей
+     * @param includeSubscriptions добавить ли в ответ подписки пользователей
+     * @return найденные пользователи в порядке запроса и идентификаторы ненайденных
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public UserBatchResponse getUsersByIds(Collection<Long> ids, boolean includeSubscriptions) {
+        Set<Long> requestedIds = new LinkedHashSet<>(ids);
+        requestedIds.remove(null);
+        Map<Long, UserDetailsResponse> found = new HashMap<>();
+        for (List<UserDetailsResponse> users : shardRouter.gather(() -> findUsersOnShard(requestedIds, includeSubscriptions))) {
+            users.forEach(user -> found.put(user.id(), user));
+        }
+        List<UserDetailsResponse> users = new ArrayList<>(found.size());
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : requestedIds) {
+            UserDetailsResponse user = found.get(id);
+            if (user == null) missingIds.add(id);
+            else users.add(user);
+        }
+        return new UserBatchResponse(users, missingIds);
+    }
+
+    /**
+     * Возвращает страницу пользователей. Выборка выполняется по ключу без загрузки сущностей,
+     * поэтому время ответа не зависит от номера страницы. Страница выбирается на каждом шарде,
+     * и результаты объединяются по возрастанию идентификатора.
+     *
+     * @param after идентификатор пользователя, после которого начинается страница
+     * @param size  размер страницы
+     * @return страница объектов UserResponse, упорядоченных по возрастанию идентификатора
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public CursorPage<UserResponse> getUsers(long after, int size) {
+        List<UserResponse> users = shardRouter.gatherSorted(() -> userRepository.findUsersAfter(after, Limit.of(size + 1)),
+                Comparator.comparing(UserResponse::id), size + 1);
+        return CursorPage.of(users, size, UserResponse::id);
+    }
+
+    /**
+     * Передает получателю всех пользователей с идентификатором больше заданного.
+     * Строки читаются курсором порциями фиксированного размера, поэтому объем используемой памяти
+     * не зависит от количества пользователей. Соединение с базой данных занято до окончания передачи.
+     * При нескольких шардах пользователи читаются страницами, объединенными со всех шардов.
+     *
+     * @param after    идентификатор пользователя, после которого начинается выборка
+     * @param consumer получатель пользователей в порядке возрастания идентификатора
+     */
+    @Transactional(readOnly = true)
+    @Override
+    public void exportUsers(long after, Consumer<UserResponse> consumer) {
+        if (shardRouter.isSharded()) {
+            exportSharded(after, consumer);
+            return;
+        }
+        try (Stream<UserResponse> users = userRepository.streamUsersAfter(after)) {
+            users.forEach(consumer);
+        }
     }
 
     /**
@@ -64,11 +183,15 @@ public class UserServiceDefault implements UserService {
      */
     @Transactional
     @Override
-    @UpdateLog
+    @Sharded(key = "#id")
     public void updateUser(Long id, UserRequest request) {
+        readYourWrites.written(id);
         User user = getById(id);
         user.setUsername(request.name());
         userRepository.save(user);
+        userRepository.incrementVersion(id);
+        userReadCache.evictUser(id);
+        audit(AuditEvent.userUpdated(id, request.name()));
     }
 
     /**
@@ -78,36 +201,150 @@ public class UserServiceDefault implements UserService {
      */
     @Transactional
     @Override
-    @UpdateLog
+    @Sharded(key = "#id")
     public void deleteUser(Long id) {
+        readYourWrites.written(id);
+        List<Long> subscriptionIds = subscriptionService.getSubscriptionIdsByUserId(id);
         userRepository.deleteById(id);
+        subscriptionLeaderboard.unsubscribed(subscriptionIds);
+        membershipIndex.userDeleted(id, subscriptionIds);
+        userReadCache.evictUser(id);
+        audit(AuditEvent.userDeleted(id));
     }
 
     /**
-     * Добавляет новую подписку пользователю.
+     * Добавляет новую подписку пользователю одним условным запросом, который не завершается ошибкой,
+     * если связь уже есть. Счетчик изменений пользователя увеличивается в той же транзакции только
+     * при добавлении связи, обновление при этом блокирует строку пользователя.
+     * Отсутствие пользователя или подписки определяется по нарушению внешнего ключа, которое
+     * GlobalExceptionHandler по имени ограничения превращает в ответ 404.
      *
      * @param userId     идентификатор пользователя
      * @param request    объект SubscriptionRequest, содержащий информацию о подписке
+     * @return ADDED, если подписка добавлена, или ALREADY_PRESENT, если пользователь уже был подписан
+     * @throws DataIntegrityViolationException если пользователь или подписка не найдены
      */
     @Transactional
     @Override
-    @UpdateLog
-    public void addSubscription(Long userId, SubscriptionRequest request) {
-        subscriptionService.existsSubscription(request.id());
-        existsUser(userId);
-        userRepository.addSubscription(userId, request.id());
+    @Sharded(key = "#userId")
+    public SubscriptionBatchStatus addSubscription(Long userId, SubscriptionRequest request) {
+        readYourWrites.written(userId);
+        if (userRepository.addSubscription(userId, request.id()) == 0) return SubscriptionBatchStatus.ALREADY_PRESENT;
+
+        userRepository.incrementVersion(userId);
+        subscriptionLeaderboard.subscribed(List.of(request.id()));
+        membershipIndex.subscribed(userId, List.of(request.id()));
+        userReadCache.evictSubscriptions(userId);
+        audit(AuditEvent.subscriptionAdded(userId, request.id()));
+        return SubscriptionBatchStatus.ADDED;
     }
     /**
-     * Возвращает список подписок пользователя.
+     * Добавляет пользователю несколько подписок за постоянное число обращений к базе данных:
+     * блокировка пользователя, проверка всех подписок одним запросом и пакетная вставка отсутствующих связей.
+     * Добавлена ли подписка, определяется по количеству вставленных записей, поэтому параллельное добавление
+     * той же подписки дает ALREADY_PRESENT, а не нарушение первичного ключа.
      *
-     * @param userId идентификатор пользователя
-     * @return множество объектов SubscriptionResponse, содержащие информацию о подписках пользователя
+     * @param userId     идентификатор пользователя
+     * @param request    объект SubscriptionBatchRequest, содержащий идентификаторы подписок
+     * @return список результатов добавления для каждой подписки из запроса
      */
     @Transactional
     @Override
-    public Set<SubscriptionResponse> getUserSubscriptions(Long userId) {
-        existsUser(userId);
-        return subscriptionService.getSubscriptionsByUserId(userId);
+    @Sharded(key = "#userId")
+    public List<SubscriptionBatchResponse> addSubscriptions(Long userId, SubscriptionBatchRequest request) {
+        readYourWrites.written(userId);
+        lockUser(userId);
+        Set<Long> requestedIds = new LinkedHashSet<>(request.ids());
+        List<Long> knownIds = subscriptionService.getSubscriptionMemberships(userId, requestedIds).stream()
+                .map(SubscriptionMembershipDTO::id)
+                .toList();
+        int[] inserted = userRepository.addSubscriptions(userId, knownIds);
+        Map<Long, SubscriptionBatchStatus> statuses = new HashMap<>();
+        List<Long> addedIds = new ArrayList<>();
+        for (int i = 0; i < knownIds.size(); i++) {
+            if (inserted[i] > 0) addedIds.add(knownIds.get(i));
+            statuses.put(knownIds.get(i), inserted[i] > 0 ? SubscriptionBatchStatus.ADDED : SubscriptionBatchStatus.ALREADY_PRESENT);
+        }
+        if (!addedIds.isEmpty()) userRepository.incrementVersion(userId);
+        subscriptionLeaderboard.subscribed(addedIds);
+        membershipIndex.subscribed(userId, addedIds);
+        userReadCache.evictSubscriptions(userId);
+        addedIds.forEach(id -> audit(AuditEvent.subscriptionAdded(userId, id)));
+        return requestedIds.stream()
+                .map(id -> new SubscriptionBatchResponse(id, statuses.getOrDefault(id, SubscriptionBatchStatus.UNKNOWN)))
+                .toList();
+    }
+    /**
+     * Проверяет, записываются ли подписки и отписки отложенно.
+     *
+     * @return true, если включена отложенная запись подписок
+     */
+    @Override
+    public boolean isSubscriptionWriteBehind() {
+        return subscriptionWriteBehind.isEnabled();
+    }
+    /**
+     * Принимает подписку или отписку пользователя к отложенной записи. Метод не обращается к базе данных:
+     * изменение записывается в журнал на локальном диске и учитывается при чтении подписок пользователя до записи.
+     *
+     * @param userId         идентификатор пользователя
+     * @param subscriptionId идентификатор подписки
+     * @param subscribed     true для подписки, false для отписки
+     */
+    @Override
+    public void scheduleSubscriptionChange(Long userId, Long subscriptionId, boolean subscribed) {
+        subscriptionWriteBehind.submit(new SubscriptionChangeDTO(userId, subscriptionId, subscribed));
+        // новое поколение не дает следующему чтению присоединиться к чтению, начатому до изменения
+        userReadCache.evictSubscriptions(userId);
+    }
+    /**
+     * Проверяет, есть ли у пользователя изменения подписок, еще не записанные в базу данных.
+     *
+     * @param userId идентификатор пользователя
+     * @return true, если изменения есть
+     */
+    @Override
+    public boolean hasPendingSubscriptionChanges(Long userId) {
+        return subscriptionWriteBehind.hasPendingChanges(userId);
+    }
+    /**
+     * Возвращает страницу подписок пользователя.
+     * Повторные запросы обслуживаются из кэша без обращения к базе данных, поэтому метод не открывает транзакцию.
+     * Если у пользователя есть изменения, ожидающие отложенной записи, страница читается из базы данных
+     * мимо кэша и дополняется этими изменениями.
+     *
+     * @param userId идентификатор пользователя
+     * @param after  идентификатор подписки, после которого начинается страница
+     * @param size   размер страницы
+     * @return страница объектов SubscriptionResponse, упорядоченных по возрастанию идентификатора
+     */
+    @Override
+    @Coalesce(key = "{#userId, #after, #size, @userReadCache.getGeneration(#userId)}")
+    @Sharded(key = "#userId")
+    public CursorPage<SubscriptionResponse> getUserSubscriptions(Long userId, long after, int size) {
+        Map<Long, Boolean> pending = subscriptionWriteBehind.getPendingChanges(userId);
+        if (!pending.isEmpty()) return getUserSubscriptionsWithPending(userId, after, size, pending);
+        return userReadCache.getSubscriptions(userId, after, size, () -> readYourWrites.read(userId, () -> {
+            existsUser(userId);
+            return subscriptionService.getSubscriptionsByUserId(userId, after, size);
+        }));
+    }
+    /**
+     * Возвращает версию пользователя, которая меняется при любом изменении пользователя или его подписок.
+     * Повторные запросы обслуживаются из кэша без обращения к базе данных.
+     * <p>
+     * Версию следует получать до чтения самих данных: тогда при параллельном изменении ответ может
+     * содержать новые данные со старой версией, но не старые данные с новой версией.
+     *
+     * @param userId идентификатор пользователя
+     * @return версия пользователя
+     * @throws UserNotFoundException если пользователь не найден
+     */
+    @Override
+    @Sharded(key = "#userId")
+    public long getUserVersion(Long userId) {
+        return userReadCache.getVersion(userId, () -> readYourWrites.read(userId, () -> userRepository.findVersionById(userId)
+                .orElseThrow(() -> new UserNotFoundException(String.format("Пользователь с id %d не найден", userId)))));
     }
     /**
      * Удаляет подписку у пользователя.
@@ -117,9 +354,133 @@ public class UserServiceDefault implements UserService {
      */
     @Transactional
     @Override
-    @UpdateLog
+    @Sharded(key = "#userId")
     public void deleteSubscriptionFormUser(Long userId, Long subscriptionId) {
-        userRepository.removeSubscriptionFromUser(userId, subscriptionId);
+        readYourWrites.written(userId);
+        if (userRepository.removeSubscriptionFromUser(userId, subscriptionId) > 0) {
+            userRepository.incrementVersion(userId);
+            subscriptionLeaderboard.unsubscribed(List.of(subscriptionId));
+            membershipIndex.unsubscribed(userId, List.of(subscriptionId));
+            userReadCache.evictSubscriptions(userId);
+            audit(AuditEvent.subscriptionRemoved(userId, subscriptionId));
+        }
+    }
+    /**
+     * Читает пользователей шарда текущего потока из переданного набора и, по запросу, их подписки.
+     *
+     * @param requestedIds         идентификаторы пользователей всех шардов
+     * @param includeSubscriptions добавить ли подписки пользователей
+     * @return найденные пользователи шарда
+     */
+    private List<UserDetailsResponse> findUsersOnShard(Set<Long> requestedIds, boolean includeSubscriptions) {
+        int shard = ShardContext.current();
+        List<Long> ids = requestedIds.stream().filter(id -> shardRouter.shardOf(id) == shard).toList();
+        if (ids.isEmpty()) return List.of();
+        return readYourWrites.read(ids, () -> {
+            List<UserResponse> users = userRepository.findUsersByIds(ids);
+            if (!includeSubscriptions) {
+                return users.stream().map(user -> new UserDetailsResponse(user.id(), user.name(), null)).toList();
+            }
+            Map<Long, List<SubscriptionResponse>> subscriptions = users.isEmpty() ? Map.of()
+                    : subscriptionService.getSubscriptionsByUserIds(users.stream().map(UserResponse::id).toList());
+            Map<Long, Map<Long, Boolean>> pending = new HashMap<>();
+            users.forEach(user -> {
+                Map<Long, Boolean> changes = subscriptionWriteBehind.getPendingChanges(user.id());
+                if (!changes.isEmpty()) pending.put(user.id(), changes);
+            });
+            Map<Long, SubscriptionResponse> added = findPendingSubscriptions(pending.values());
+            return users.stream()
+                    .map(user -> new UserDetailsResponse(user.id(), user.name(), withPendingChanges(
+                            subscriptions.getOrDefault(user.id(), List.of()), pending.getOrDefault(user.id(), Map.of()), added)))
+                    .toList();
+        });
+    }
+    /**
+     * Возвращает страницу подписок пользователя с учетом изменений, ожидающих отложенной записи.
+     * Из базы данных читается страница, увеличенная на количество ожидающих отписок, чтобы после их исключения
+     * страница осталась полной. Ожидающие подписки добавляются в пределах прочитанного диапазона идентификаторов.
+     *
+     * @param userId  идентификатор пользователя
+     * @param after   идентификатор подписки, после которого начинается страница
+     * @param size    размер страницы
+     * @param pending ожидающие изменения пользователя по идентификатору подписки
+     * @return страница объектов SubscriptionResponse, упорядоченных по возрастанию идентификатора
+     */
+    private CursorPage<SubscriptionResponse> getUserSubscriptionsWithPending(Long userId, long after, int size, Map<Long, Boolean> pending) {
+        int removals = (int) pending.values().stream().filter(subscribed -> !subscribed).count();
+        CursorPage<SubscriptionResponse> stored = readYourWrites.read(userId, () -> {
+            existsUser(userId);
+            return subscriptionService.getSubscriptionsByUserId(userId, after, size + removals);
+        });
+        long upper = stored.nextCursor() == null ? Long.MAX_VALUE : stored.nextCursor();
+        Map<Long, Boolean> inRange = new HashMap<>();
+        pending.forEach((id, subscribed) -> {
+            if (id > after && id <= upper) inRange.put(id, subscribed);
+        });
+        List<SubscriptionResponse> items = withPendingChanges(stored.items(), inRange, findPendingSubscriptions(List.of(inRange)));
+        if (stored.nextCursor() != null && items.size() == size) return new CursorPage<>(items, items.get(size - 1).id());
+        return CursorPage.of(items, size, SubscriptionResponse::id);
+    }
+    /**
+     * Читает подписки, на которые оформлены ожидающие записи подписки.
+     *
+     * @param pending ожидающие изменения пользователей по идентификатору подписки
+     * @return существующие подписки по идентификатору
+     */
+    private Map<Long, SubscriptionResponse> findPendingSubscriptions(Collection<Map<Long, Boolean>> pending) {
+        Set<Long> ids = new HashSet<>();
+        pending.forEach(changes -> changes.forEach((id, subscribed) -> {
+            if (subscribed) ids.add(id);
+        }));
+        if (ids.isEmpty()) return Map.of();
+        Map<Long, SubscriptionResponse> subscriptions = new HashMap<>();
+        subscriptionService.getSubscriptionsByIds(ids).forEach(subscription -> subscriptions.put(subscription.id(), subscription));
+        return subscriptions;
+    }
+    /**
+     * Применяет к подпискам пользователя изменения, ожидающие отложенной записи.
+     * Подписки на отсутствующие подписки не добавляются: при записи они будут пропущены.
+     *
+     * @param stored  подписки пользователя из базы данных
+     * @param pending ожидающие изменения пользователя по идентификатору подписки
+     * @param added   существующие подписки из ожидающих изменений по идентификатору
+     * @return подписки пользователя, упорядоченные по возрастанию идентификатора
+     */
+    private List<SubscriptionResponse> withPendingChanges(List<SubscriptionResponse> stored, Map<Long, Boolean> pending,
+                                                          Map<Long, SubscriptionResponse> added) {
+        if (pending.isEmpty()) return stored;
+        TreeMap<Long, SubscriptionResponse> merged = new TreeMap<>();
+        stored.forEach(subscription -> merged.put(subscription.id(), subscription));
+        pending.forEach((id, subscribed) -> {
+            if (!subscribed) merged.remove(id);
+            else if (added.containsKey(id)) merged.putIfAbsent(id, added.get(id));
+        });
+        return new ArrayList<>(merged.values());
+    }
+    /**
+     * Передает получателю пользователей всех шардов страницами по EXPORT_PAGE_SIZE.
+     *
+     * @param after    идентификатор пользователя, после которого начинается выборка
+     * @param consumer получатель пользователей в порядке возрастания идентификатора
+     */
+    private void exportSharded(long after, Consumer<UserResponse> consumer) {
+        long cursor = after;
+        List<UserResponse> page;
+        do {
+            long pageAfter = cursor;
+            page = shardRouter.gatherSorted(() -> userRepository.findUsersAfter(pageAfter, Limit.of(EXPORT_PAGE_SIZE)),
+                    Comparator.comparing(UserResponse::id), EXPORT_PAGE_SIZE);
+            page.forEach(consumer);
+            if (!page.isEmpty()) cursor = page.get(page.size() - 1).id();
+        } while (page.size() == EXPORT_PAGE_SIZE);
+    }
+    /**
+     * Публикует событие аудита после фиксации текущей транзакции. При откате транзакции событие не публикуется.
+     *
+     * @param event событие аудита
+     */
+    private void audit(AuditEvent event) {
+        TransactionCallbacks.afterCommit(() -> auditPipeline.publish(event));
     }
     /**
      * Создает экземпляр пользователя на основе переданного запроса.
@@ -163,5 +524,15 @@ public class UserServiceDefault implements UserService {
 
     }
 
+    /**
+     * Блокирует строку пользователя до конца текущей транзакции.
+     *
+     * @param id идентификатор пользователя
+     * @throws UserNotFoundException если пользователь не найден
+     */
+    private void lockUser(Long id) {
+        if (userRepository.lockById(id).isEmpty()) throw new UserNotFoundException(String.format("Пользователь с id %d не найден", id));
+    }
+
 
 }
@@ -1,9 +1,15 @@
 package ru.buzynnikov.user_subscription_service.services.interfaces;
 
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionMembershipDTO;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryRequest;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionQueryResponse;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserResponse;
 
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
+import java.util.Map;
 
 /**
  * Интерфейс службы для работы с подписками (Subscription).
@@ -18,12 +24,58 @@ public interface SubscriptionService {
     void existsSubscription(Long id);
 
     /**
-     * Получает список подписок для указанного пользователя.
+     * Получает страницу подписок для указанного пользователя.
+     *
+     * @param id    идентификатор пользователя
+     * @param after идентификатор подписки, после которого начинается страница
+     * @param size  размер страницы
+     * @return страница объектов SubscriptionResponse, упорядоченных по возрастанию идентификатора
+     */
+    CursorPage<SubscriptionResponse> getSubscriptionsByUserId(Long id, long after, int size);
+
+    /**
+     * Получает страницу подписчиков указанной подписки.
+     *
+     * @param id    идентификатор подписки
+     * @param after идентификатор пользователя, после которого начинается страница
+     * @param size  размер страницы
+     * @return страница объектов UserResponse, упорядоченных по возрастанию идентификатора
+     */
+    CursorPage<UserResponse> getSubscriptionUsers(Long id, long after, int size);
+
+    /**
+     * Получает все подписки нескольких пользователей.
+     *
+     * @param userIds идентификаторы пользователей
+     * @return подписки по идентификатору пользователя, упорядоченные по возрастанию идентификатора подписки;
+     * пользователи без подписок в результат не входят
+     */
+    Map<Long, List<SubscriptionResponse>> getSubscriptionsByUserIds(Collection<Long> userIds);
+
+    /**
+     * Получает подписки по идентификаторам.
+     *
+     * @param ids идентификаторы подписок
+     * @return существующие подписки, упорядоченные по возрастанию идентификатора
+     */
+    List<SubscriptionResponse> getSubscriptionsByIds(Collection<Long> ids);
+
+    /**
+     * Получает идентификаторы подписок указанного пользователя.
      *
      * @param id идентификатор пользователя
-     * @return множество объектов SubscriptionResponse, включающих информацию о подписках пользователя
+     * @return список идентификаторов подписок пользователя
      */
-    Set<SubscriptionResponse> getSubscriptionsByUserId(Long id);
+    List<Long> getSubscriptionIdsByUserId(Long id);
+
+    /**
+     * Получает существующие подписки из переданного списка вместе с признаком подписки на них пользователя.
+     *
+     * @param userId          идентификатор пользователя
+     * @param subscriptionIds идентификаторы проверяемых подписок
+     * @return список объектов SubscriptionMembershipDTO только для существующих подписок
+     */
+    List<SubscriptionMembershipDTO> getSubscriptionMemberships(Long userId, Collection<Long> subscriptionIds);
 
     /**
      * Получает список трех самых популярных подписок.
@@ -31,4 +83,27 @@ public interface SubscriptionService {
      * @return список объектов SubscriptionResponse, содержащий три самые популярные подписки
      */
     List<SubscriptionResponse> getSubscriptionsTop3();
+
+    /**
+     * Получает список самых популярных подписок заданного размера.
+     *
+     * @param limit максимальное количество подписок в списке
+     * @return список объектов SubscriptionResponse, упорядоченный по убыванию количества подписчиков
+     */
+    List<SubscriptionResponse> getSubscriptionsTop(int limit);
+
+    /**
+     * Получает версию рейтинга подписок, которая меняется при любом изменении количества подписчиков.
+     *
+     * @return версия рейтинга подписок
+     */
+    String getSubscriptionsTopVersion();
+
+    /**
+     * Находит пользователей, подписки которых удовлетворяют логическому выражению.
+     *
+     * @param request выражение над подписками и параметры страницы
+     * @return количество подходящих пользователей и страница их идентификаторов
+     */
+    SubscriptionQueryResponse querySubscribers(SubscriptionQueryRequest request);
 }
@@ -0,0 +1,24 @@
+package ru.buzynnikov.user_subscription_service.services.interfaces;
+
+import ru.buzynnikov.user_subscription_service.dto.UserImportFailure;
+import ru.buzynnikov.user_subscription_service.dto.UserImportProgress;
+
+/**
+ * Получатель событий о ходе импорта пользователей.
+ */
+public interface UserImportListener {
+
+    /**
+     * Вызывается для каждой строки, которую не удалось импортировать.
+     *
+     * @param failure описание ошибочной строки
+     */
+    void onFailure(UserImportFailure failure);
+
+    /**
+     * Вызывается после сохранения каждой пачки пользователей и по завершении импорта.
+     *
+     * @param progress текущее состояние импорта
+     */
+    void onProgress(UserImportProgress progress);
+}
@@ -0,0 +1,22 @@
+package ru.buzynnikov.user_subscription_service.services.interfaces;
+
+import ru.buzynnikov.user_subscription_service.dto.UserImportProgress;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Интерфейс сервиса для массового импорта пользователей.
+ */
+public interface UserImportService {
+
+    /**
+     * Импортирует пользователей из потока в формате NDJSON (один объект UserRequest на строку).
+     *
+     * @param input    входной поток с пользователями
+     * @param listener получатель событий о ходе импорта
+     * @return итоговое состояние импорта
+     * @throws IOException если не удалось прочитать входной поток
+     */
+    UserImportProgress importUsers(InputStream input, UserImportListener listener) throws IOException;
+}
@@ -1,11 +1,18 @@
 package ru.buzynnikov.user_subscription_service.services.interfaces;
 
+import ru.buzynnikov.user_subscription_service.dto.CursorPage;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchRequest;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchResponse;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionBatchStatus;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionRequest;
 import ru.buzynnikov.user_subscription_service.dto.SubscriptionResponse;
+import ru.buzynnikov.user_subscription_service.dto.UserBatchResponse;
 import ru.buzynnikov.user_subscription_service.dto.UserRequest;
 import ru.buzynnikov.user_subscription_service.dto.UserResponse;
 
-import java.util.Set;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * Интерфейс сервиса для работы с пользователями и управлением их подписками.
@@ -26,6 +33,31 @@ public interface UserService {
      * @return объект UserResponse, содержащий информацию о пользователе
      */
     UserResponse getUserById(Long id);
+    /**
+     * Возвращает нескольких пользователей по их идентификаторам. Отсутствующие пользователи
+     * перечисляются в ответе и не приводят к ошибке.
+     *
+     * @param ids                  идентификаторы пользователей
+     * @param includeSubscriptions добавить ли в ответ подписки пользователей
+     * @return найденные пользователи в порядке запроса и идентификаторы ненайденных
+     */
+    UserBatchResponse getUsersByIds(Collection<Long> ids, boolean includeSubscriptions);
+    /**
+     * Возвращает страницу пользователей.
+     *
+     * @param after идентификатор пользователя, после которого начинается страница
+     * @param size  размер страницы
+     * @return страница объектов UserResponse, упорядоченных по возрастанию идентификатора
+     */
+    CursorPage<UserResponse> getUsers(long after, int size);
+
+    /**
+     * Передает получателю всех пользователей с идентификатором больше заданного, не загружая их в память целиком.
+     *
+     * @param after    идентификатор пользователя, после которого начинается выборка
+     * @param consumer получатель пользователей в порядке возрастания идентификатора
+     */
+    void exportUsers(long after, Consumer<UserResponse> consumer);
     /**
      * Обновляет информацию о пользователе.
      *
@@ -44,15 +76,55 @@ public interface UserService {
      *
      * @param userId     идентификатор пользователя
      * @param request    объект SubscriptionRequest, содержащий информацию о подписке
+     * @return ADDED, если подписка добавлена, или ALREADY_PRESENT, если пользователь уже был подписан
+     */
+    SubscriptionBatchStatus addSubscription(Long userId, SubscriptionRequest request);
+    /**
+     * Добавляет пользователю несколько подписок за один запрос.
+     *
+     * @param userId     идентификатор пользователя
+     * @param request    объект SubscriptionBatchRequest, содержащий идентификаторы подписок
+     * @return список результатов добавления для каждой подписки из запроса
+     */
+    List<SubscriptionBatchResponse> addSubscriptions(Long userId, SubscriptionBatchRequest request);
+    /**
+     * Проверяет, записываются ли подписки и отписки отложенно.
+     *
+     * @return true, если изменения подписок принимаются методом scheduleSubscriptionChange
+     */
+    boolean isSubscriptionWriteBehind();
+    /**
+     * Принимает подписку или отписку пользователя к отложенной записи в базу данных.
+     * Существование пользователя и подписки не проверяется: изменения для отсутствующих пропускаются при записи.
+     *
+     * @param userId         идентификатор пользователя
+     * @param subscriptionId идентификатор подписки
+     * @param subscribed     true для подписки, false для отписки
+     */
+    void scheduleSubscriptionChange(Long userId, Long subscriptionId, boolean subscribed);
+    /**
+     * Проверяет, есть ли у пользователя изменения подписок, еще не записанные в базу данных.
+     *
+     * @param userId идентификатор пользователя
+     * @return true, если изменения есть
+     */
+    boolean hasPendingSubscriptionChanges(Long userId);
+    /**
+     * Возвращает страницу подписок пользователя.
+     *
+     * @param userId идентификатор пользователя
+     * @param after  идентификатор подписки, после которого начинается страница
+     * @param size   размер страницы
+     * @return страница объектов SubscriptionResponse, упорядоченных по возрастанию идентификатора
      */
-    void addSubscription(Long userId, SubscriptionRequest request);
+    CursorPage<SubscriptionResponse> getUserSubscriptions(Long userId, long after, int size);
     /**
-     * Возвращает список подписок пользователя.
+     * Возвращает версию пользователя, которая меняется при любом изменении пользователя или его подписок.
      *
      * @param userId идентификатор пользователя
-     * @return множество объектов SubscriptionResponse, содержащее информацию о подписках пользователя
+     * @return версия пользователя
      */
-    Set<SubscriptionResponse> getUserSubscriptions(Long userId);
+    long getUserVersion(Long userId);
     /**
      * Удаляет подписку у пользователя.
      *
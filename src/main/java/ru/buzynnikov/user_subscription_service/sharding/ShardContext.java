@@ -0,0 +1,35 @@
+package ru.buzynnikov.user_subscription_service.sharding;
+
+/**
+ * Номер шарда, с которым работает текущий поток. Определяет базу данных, из которой источник данных
+ * выдает соединение, поэтому должен быть установлен до первого запроса транзакции.
+ * Если номер не установлен, используется шард 0.
+ */
+public final class ShardContext {
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private ShardContext() {
+    }
+
+    /**
+     * @return номер шарда текущего потока
+     */
+    public static int current() {
+        Integer shard = CURRENT.get();
+        return shard == null ? 0 : shard;
+    }
+
+    /**
+     * Устанавливает номер шарда текущего потока.
+     *
+     * @param shard номер шарда; null сбрасывает номер к шарду по умолчанию
+     * @return ранее установленный номер шарда либо null
+     */
+    public static Integer set(Integer shard) {
+        Integer previous = CURRENT.get();
+        if (shard == null) CURRENT.remove();
+        else CURRENT.set(shard);
+        return previous;
+    }
+}
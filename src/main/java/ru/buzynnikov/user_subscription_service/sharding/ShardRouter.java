@@ -0,0 +1,157 @@
+package ru.buzynnikov.user_subscription_service.sharding;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Маршрутизация обращений к шардам. Пользователь и его подписки хранятся на шарде с номером
+ * {@code userId % sharding.shard-count}: идентификатор нового пользователя выдается так, чтобы указывать
+ * на шард, выбранный при его создании (см. {@link ShardedSequenceGenerator}).
+ * <p>
+ * Без профиля sharding шард один, и все методы выполняют переданные действия в текущем потоке.
+ */
+@Component
+public class ShardRouter implements SmartInitializingSingleton {
+
+    private final int shardCount;
+    private final AtomicInteger nextShard = new AtomicInteger();
+    private final ExecutorService executor;
+    private volatile boolean started;
+
+    public ShardRouter(@Value("${sharding.shard-count:1}") int shardCount) {
+        if (shardCount < 1) throw new IllegalArgumentException("sharding.shard-count должен быть положительным: " + shardCount);
+        this.shardCount = shardCount;
+        this.executor = shardCount == 1 ? null : Executors.newFixedThreadPool(shardCount, new CustomizableThreadFactory("shard-gather-"));
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    /**
+     * @param userId идентификатор пользователя
+     * @return номер шарда, на котором хранится пользователь
+     */
+    public int shardOf(long userId) {
+        return (int) Math.floorMod(userId, (long) shardCount);
+    }
+
+    /**
+     * Выбирает шард для нового пользователя. Шарды выбираются по очереди, поэтому пользователи
+     * распределяются между ними равномерно.
+     *
+     * @return номер шарда
+     */
+    public int nextShard() {
+        return Math.floorMod(nextShard.getAndIncrement(), shardCount);
+    }
+
+    /**
+     * Выполняет действие на указанном шарде в текущем потоке. Транзакция, соединение которой уже получено,
+     * продолжает работать со своим шардом, поэтому действие не должно выполняться внутри такой транзакции.
+     *
+     * @param shard  номер шарда
+     * @param action действие
+     * @return результат действия
+     */
+    public <T> T onShard(int shard, Supplier<T> action) {
+        Integer previous = ShardContext.set(shard);
+        try {
+            return action.get();
+        } finally {
+            ShardContext.set(previous);
+        }
+    }
+
+    /**
+     * Выполняет действие на указанном шарде в текущем потоке.
+     *
+     * @param shard  номер шарда
+     * @param action действие
+     */
+    public void onShard(int shard, Runnable action) {
+        onShard(shard, () -> {
+            action.run();
+            return null;
+        });
+    }
+
+    /**
+     * Выполняет действие на всех шардах параллельно и возвращает результаты в порядке номеров шардов.
+     * На каждом шарде действие выполняется в отдельном потоке вне транзакции вызывающего потока,
+     * поэтому транзакции открываются самим действием. Ошибка на любом шарде передается вызывающему.
+     * С одним шардом действие выполняется в текущем потоке и его транзакции.
+     * <p>
+     * До окончания создания бинов шарды обрабатываются по очереди в текущем потоке: при инициализации бинов
+     * вызывающий поток удерживает блокировку фабрики бинов, и параллельные потоки, обращающиеся к ней
+     * за транзакционными прокси, ожидали бы его бесконечно.
+     *
+     * @param action действие
+     * @return результаты действия на каждом шарде
+     */
+    public <T> List<T> gather(Supplier<T> action) {
+        if (shardCount == 1) return Collections.singletonList(action.get());
+        if (!started) {
+            List<T> results = new ArrayList<>(shardCount);
+            for (int shard = 0; shard < shardCount; shard++) results.add(onShard(shard, action));
+            return results;
+        }
+        List<CompletableFuture<T>> futures = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            int target = shard;
+            futures.add(CompletableFuture.supplyAsync(() -> onShard(target, action), executor));
+        }
+        List<T> results = new ArrayList<>(shardCount);
+        try {
+            for (CompletableFuture<T> future : futures) results.add(future.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            if (e.getCause() instanceof Error cause) throw cause;
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * Выполняет выборку, упорядоченную по ключу, на всех шардах и объединяет результаты в общий порядок.
+     * Каждый шард должен вернуть не меньше limit первых строк, чтобы объединение содержало первые limit строк.
+     *
+     * @param query выборка на одном шарде
+     * @param order порядок строк выборки
+     * @param limit максимальное количество строк в результате
+     * @return первые limit строк объединения
+     */
+    public <T> List<T> gatherSorted(Supplier<List<T>> query, Comparator<? super T> order, int limit) {
+        List<List<T>> parts = gather(query);
+        if (parts.size() == 1) return parts.get(0);
+        return parts.stream().flatMap(List::stream).sorted(order).limit(limit).toList();
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        started = true;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) executor.shutdownNow();
+    }
+}
@@ -0,0 +1,68 @@
+package ru.buzynnikov.user_subscription_service.sharding;
+
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.UnaryOperator;
+
+/**
+ * Источник данных, выдающий соединения с базой шарда текущего потока ({@link ShardContext}).
+ * Используется через LazyConnectionDataSourceProxy, чтобы соединение выбиралось при первом запросе транзакции,
+ * а не при её открытии.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource implements DisposableBean {
+
+    private final List<DataSource> shards;
+
+    /**
+     * @param shards источники данных шардов в порядке их номеров
+     */
+    public ShardRoutingDataSource(List<? extends DataSource> shards) {
+        this.shards = new ArrayList<>(shards);
+        setTargets();
+        setLenientFallback(false);
+    }
+
+    /**
+     * Заменяет источники данных шардов их обертками. Вызывается до инициализации бина.
+     *
+     * @param decorator функция, возвращающая обертку над источником данных шарда
+     */
+    public void decorateShards(UnaryOperator<DataSource> decorator) {
+        shards.replaceAll(decorator);
+        setTargets();
+    }
+
+    private void setTargets() {
+        Map<Object, Object> targets = new HashMap<>();
+        for (int shard = 0; shard < shards.size(); shard++) targets.put(shard, shards.get(shard));
+        setTargetDataSources(targets);
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return ShardContext.current();
+    }
+
+    /**
+     * @return источники данных шардов по их номерам
+     */
+    public Map<Object, DataSource> getShards() {
+        return getResolvedDataSources();
+    }
+
+    /**
+     * Закрывает пулы соединений шардов при остановке приложения.
+     */
+    @Override
+    public void destroy() throws Exception {
+        for (DataSource shard : getResolvedDataSources().values()) {
+            if (shard instanceof AutoCloseable closeable) closeable.close();
+        }
+    }
+}
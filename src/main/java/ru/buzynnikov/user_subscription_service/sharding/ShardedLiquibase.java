@@ -0,0 +1,28 @@
+package ru.buzynnikov.user_subscription_service.sharding;
+
+import liquibase.exception.LiquibaseException;
+import liquibase.integration.spring.SpringLiquibase;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+/**
+ * Применение миграций Liquibase к каждому шарду. Все шарды имеют одинаковую схему,
+ * а справочник подписок, создаваемый миграциями, повторяется на каждом шарде.
+ */
+public class ShardedLiquibase extends SpringLiquibase {
+
+    private final List<? extends DataSource> shards;
+
+    public ShardedLiquibase(List<? extends DataSource> shards) {
+        this.shards = shards;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws LiquibaseException {
+        for (DataSource shard : shards) {
+            setDataSource(shard);
+            super.afterPropertiesSet();
+        }
+    }
+}
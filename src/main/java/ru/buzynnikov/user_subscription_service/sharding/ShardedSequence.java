@@ -0,0 +1,28 @@
+package ru.buzynnikov.user_subscription_service.sharding;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Идентификатор, выдаваемый последовательностью шарда текущего потока и указывающий на этот шард
+ * (см. {@link ShardedSequenceGenerator}).
+ */
+@IdGeneratorType(ShardedSequenceGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface ShardedSequence {
+
+    /**
+     * Имя последовательности в базе данных.
+     */
+    String name();
+
+    /**
+     * Шаг последовательности: количество значений, выдаваемых без обращения к базе данных.
+     */
+    int allocationSize() default 50;
+}
@@ -0,0 +1,86 @@
+package ru.buzynnikov.user_subscription_service.sharding;
+
+import org.hibernate.HibernateException;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.config.spi.StandardConverters;
+import org.hibernate.engine.jdbc.spi.JdbcCoordinator;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.id.IdentifierGenerator;
+import org.hibernate.id.factory.spi.CustomIdGeneratorCreationContext;
+
+import java.lang.reflect.Member;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Генератор идентификаторов для данных, распределенных по шардам.
+ * <p>
+ * Значения берутся из последовательности той базы, с которой работает текущий поток, блоками по allocationSize,
+ * как оптимизатором pooled-lo: значение последовательности v дает значения v .. v + allocationSize - 1.
+ * Блоки хранятся отдельно для каждого шарда. Идентификатор вычисляется как {@code value * shardCount + shard},
+ * поэтому идентификаторы разных шардов не пересекаются, а шард записи определяется по идентификатору
+ * без обращения к базе данных. С одним шардом идентификатор равен значению последовательности.
+ */
+public class ShardedSequenceGenerator implements IdentifierGenerator {
+
+    /**
+     * Настройка Hibernate с количеством шардов; по умолчанию 1.
+     */
+    public static final String SHARD_COUNT = "sharding.shard-count";
+
+    private final String nextValueSql;
+    private final int allocationSize;
+    private final int shardCount;
+    private final Map<Integer, Block> blocks = new ConcurrentHashMap<>();
+
+    public ShardedSequenceGenerator(ShardedSequence config, Member member, CustomIdGeneratorCreationContext context) {
+        this.nextValueSql = context.getDatabase().getDialect().getSequenceSupport().getSequenceNextValString(config.name());
+        this.allocationSize = config.allocationSize();
+        this.shardCount = context.getServiceRegistry().requireService(ConfigurationService.class)
+                .getSetting(SHARD_COUNT, StandardConverters.INTEGER, 1);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object object) {
+        int shard = ShardContext.current();
+        if (shard >= shardCount) throw new HibernateException("Номер шарда %d вне диапазона 0..%d".formatted(shard, shardCount - 1));
+        Block block = blocks.computeIfAbsent(shard, key -> new Block());
+        long value;
+        synchronized (block) {
+            if (block.next == block.limit) {
+                block.next = nextValue(session);
+                block.limit = block.next + allocationSize;
+            }
+            value = block.next++;
+        }
+        return value * shardCount + shard;
+    }
+
+    /**
+     * Получает следующее значение последовательности через соединение сессии, то есть из базы текущего шарда.
+     */
+    private long nextValue(SharedSessionContractImplementor session) {
+        JdbcCoordinator coordinator = session.getJdbcCoordinator();
+        PreparedStatement statement = coordinator.getStatementPreparer().prepareStatement(nextValueSql);
+        try (ResultSet resultSet = coordinator.getResultSetReturn().extract(statement, nextValueSql)) {
+            if (!resultSet.next()) throw new HibernateException("Последовательность не вернула значение: " + nextValueSql);
+            return resultSet.getLong(1);
+        } catch (SQLException e) {
+            throw session.getJdbcServices().getSqlExceptionHelper().convert(e, "Ошибка получения значения последовательности", nextValueSql);
+        } finally {
+            coordinator.getLogicalConnection().getResourceRegistry().release(statement);
+            coordinator.afterStatementExecution();
+        }
+    }
+
+    /**
+     * Выданный шарду блок значений последовательности: next — следующее значение, limit — граница блока.
+     */
+    private static final class Block {
+        private long next;
+        private long limit;
+    }
+}
@@ -0,0 +1,93 @@
+package ru.buzynnikov.user_subscription_service.sharding;
+
+import com.zaxxer.hikari.HikariDataSource;
+import liquibase.integration.spring.SpringLiquibase;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.liquibase.LiquibaseProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки распределения пользователей по шардам (профиль sharding). Создает пулы соединений шардов
+ * (sharding.shards, общие настройки пулов — sharding.hikari), основной источник данных приложения,
+ * выдающий соединения с базой шарда текущего потока, и применяет миграции Liquibase к каждому шарду.
+ * Количество шардов задается sharding.shard-count и должно совпадать с количеством баз в sharding.shards.
+ */
+@Configuration
+@Profile("sharding")
+@EnableConfigurationProperties(LiquibaseProperties.class)
+public class ShardingConfig {
+
+    @Bean
+    public ShardRoutingDataSource shardRoutingDataSource(Environment environment, @Value("${sharding.shard-count}") int shardCount) {
+        Binder binder = Binder.get(environment);
+        List<DataSourceProperties> shards = binder.bind("sharding.shards", Bindable.listOf(DataSourceProperties.class))
+                .orElse(List.of());
+        if (shards.size() != shardCount) {
+            throw new IllegalStateException("sharding.shard-count = %d, а в sharding.shards задано баз: %d"
+                    .formatted(shardCount, shards.size()));
+        }
+        List<HikariDataSource> pools = new ArrayList<>(shardCount);
+        for (int shard = 0; shard < shardCount; shard++) {
+            HikariDataSource pool = shards.get(shard).initializeDataSourceBuilder().type(HikariDataSource.class).build();
+            binder.bind("sharding.hikari", Bindable.ofInstance(pool));
+            pool.setPoolName("shard-" + shard);
+            pools.add(pool);
+        }
+        return new ShardRoutingDataSource(pools);
+    }
+
+    /**
+     * Основной источник данных приложения: маршрутизация по шардам с отложенным получением соединения.
+     *
+     * @return источник данных приложения
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(ShardRoutingDataSource shardRoutingDataSource) {
+        return new LazyConnectionDataSourceProxy(shardRoutingDataSource);
+    }
+
+    /**
+     * Миграции Liquibase для всех шардов вместо миграций основного источника данных.
+     *
+     * @return объект применения миграций
+     */
+    @Bean
+    public SpringLiquibase liquibase(ShardRoutingDataSource shardRoutingDataSource, LiquibaseProperties properties) {
+        List<DataSource> shards = new ArrayList<>();
+        for (int shard = 0; shard < shardRoutingDataSource.getShards().size(); shard++) {
+            shards.add(shardRoutingDataSource.getShards().get(shard));
+        }
+        ShardedLiquibase liquibase = new ShardedLiquibase(shards);
+        liquibase.setChangeLog(properties.getChangeLog());
+        liquibase.setContexts(properties.getContexts());
+        liquibase.setLabelFilter(properties.getLabelFilter());
+        liquibase.setChangeLogParameters(properties.getParameters());
+        liquibase.setShouldRun(properties.isEnabled());
+        return liquibase;
+    }
+
+    /**
+     * Передает количество шардов генератору идентификаторов Hibernate.
+     *
+     * @return настройка свойств Hibernate
+     */
+    @Bean
+    public HibernatePropertiesCustomizer shardCountHibernateProperty(@Value("${sharding.shard-count}") int shardCount) {
+        return properties -> properties.put(ShardedSequenceGenerator.SHARD_COUNT, shardCount);
+    }
+}
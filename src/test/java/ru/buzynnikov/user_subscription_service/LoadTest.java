@@ -0,0 +1,297 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionLeaderboard;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Нагрузочный тест: смесь запросов с фиксированной частотой поступления к приложению на профиле test (H2).
+ * Задержка отсчитывается от запланированного момента отправки запроса, поэтому замедление сервера
+ * не скрывается уменьшением нагрузки. Для каждой операции строится гистограмма HdrHistogram,
+ * распределения сохраняются в target/load-test/*.hgrm.
+ * <p>
+ * Тест завершается ошибкой, если p99 какой-либо операции или общая пропускная способность хуже
+ * сохраненных значений больше чем на допустимое отклонение.
+ * <p>
+ * Ответы 503 ограничителя одновременных запросов не считаются ошибками: они учитываются отдельно
+ * как отклоненные запросы и не попадают в гистограммы операций. При частоте выше пропускной способности
+ * сервера (например, {@code -Dloadtest.rate=3000}) тест показывает задержку принятых запросов под перегрузкой
+ * и долю отклоненных.
+ * <p>
+ * Запуск: {@code mvn test -Pbenchmark -Dtest=LoadTest}. Параметры задаются системными свойствами:
+ * <ul>
+ *     <li>loadtest.rate - запросов в секунду (по умолчанию 50);</li>
+ *     <li>loadtest.warmup и loadtest.duration - длительность прогрева и измерения в секундах (5 и 30);</li>
+ *     <li>loadtest.mix - доли операций, например {@code read=50,create=10,subscribe=15,unsubscribe=15,top=10};</li>
+ *     <li>loadtest.users - количество дополнительно генерируемых пользователей (0 - только тестовые данные);</li>
+ *     <li>loadtest.baseline - файл с базовыми значениями (src/test/resources/load-test/baseline.properties);</li>
+ *     <li>loadtest.tolerance - допустимое отклонение от базовых значений (0.5);</li>
+ *     <li>loadtest.update-baseline - записать результаты в файл базовых значений вместо проверки.</li>
+ * </ul>
+ */
+@Tag("benchmark")
+@ActiveProfiles("test")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class LoadTest {
+
+    private static final int RATE = Integer.getInteger("loadtest.rate", 50);
+    private static final int WARMUP_SECONDS = Integer.getInteger("loadtest.warmup", 5);
+    private static final int DURATION_SECONDS = Integer.getInteger("loadtest.duration", 30);
+    private static final String MIX = System.getProperty("loadtest.mix", "read=50,create=10,subscribe=15,unsubscribe=15,top=10");
+    private static final int GENERATED_USERS = Integer.getInteger("loadtest.users", 0);
+    private static final Path BASELINE = Path.of(System.getProperty("loadtest.baseline", "src/test/resources/load-test/baseline.properties"));
+    private static final double TOLERANCE = Double.parseDouble(System.getProperty("loadtest.tolerance", "0.5"));
+    private static final boolean UPDATE_BASELINE = Boolean.getBoolean("loadtest.update-baseline");
+
+    private static final int SUBSCRIPTIONS = 10;
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toNanos(1);
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SubscriptionLeaderboard subscriptionLeaderboard;
+
+    /**
+     * Операции нагрузочного теста.
+     */
+    enum Operation {
+        READ, CREATE, SUBSCRIBE, UNSUBSCRIBE, TOP
+    }
+
+    @Test
+    void loadTest() throws Exception {
+        generateUsers();
+        long[] userIds = jdbcTemplate.queryForList("SELECT id FROM users", Long.class).stream().mapToLong(Long::longValue).toArray();
+        Operation[] schedule = schedule(parseMix(MIX));
+
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+        for (Operation operation : Operation.values()) histograms.put(operation, new ConcurrentHistogram(MAX_LATENCY, 3));
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicLong lastCompletion = new AtomicLong();
+        AtomicInteger created = new AtomicInteger();
+
+        long interval = TimeUnit.SECONDS.toNanos(1) / RATE;
+        long total = (long) RATE * (WARMUP_SECONDS + DURATION_SECONDS);
+        long start = System.nanoTime();
+        long measureStart = start + TimeUnit.SECONDS.toNanos(WARMUP_SECONDS);
+        List<CompletableFuture<?>> futures = new ArrayList<>();
+
+        for (long i = 0; i < total; i++) {
+            long intended = start + i * interval;
+            long delay;
+            while ((delay = intended - System.nanoTime()) > 0) LockSupport.parkNanos(delay);
+
+            Operation operation = schedule[(int) (i % schedule.length)];
+            HttpRequest request = request(operation, userIds, created);
+            boolean measured = intended >= measureStart;
+            futures.add(client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long now = System.nanoTime();
+                if (!measured) return;
+                lastCompletion.accumulateAndGet(now, Math::max);
+                if (error == null && response.statusCode() == 503) {
+                    rejected.incrementAndGet();
+                    return;
+                }
+                histograms.get(operation).recordValue(Math.min(now - intended, MAX_LATENCY));
+                if (error != null || response.statusCode() >= 300) errors.incrementAndGet();
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).exceptionally(e -> null).join();
+
+        long measuredRequests = histograms.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        double throughput = measuredRequests / ((lastCompletion.get() - measureStart) / 1e9);
+        Properties results = report(histograms, throughput, errors.get(), rejected.get());
+
+        if (UPDATE_BASELINE) {
+            Files.createDirectories(BASELINE.getParent());
+            try (Writer writer = Files.newBufferedWriter(BASELINE)) {
+                results.store(writer, "Load test baseline: rate=" + RATE + " req/s, duration=" + DURATION_SECONDS + " s, mix=" + MIX);
+            }
+            return;
+        }
+        assertTrue(errors.get() == 0, "Ошибочных ответов: " + errors.get());
+        List<String> regressions = compare(results);
+        assertTrue(regressions.isEmpty(), "Регрессия относительно " + BASELINE + ": " + String.join("; ", regressions));
+    }
+
+    /**
+     * Формирует HTTP-запрос для операции со случайным пользователем и подпиской.
+     *
+     * @param operation операция
+     * @param userIds   идентификаторы существующих пользователей
+     * @param created   счетчик созданных пользователей для уникальных имен
+     * @return HTTP-запрос
+     */
+    private HttpRequest request(Operation operation, long[] userIds, AtomicInteger created) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long userId = userIds[random.nextInt(userIds.length)];
+        long subscriptionId = random.nextLong(1, SUBSCRIPTIONS + 1);
+        String base = "http://localhost:" + port + "/api/v1";
+        return switch (operation) {
+            case READ -> HttpRequest.newBuilder(URI.create(base + "/users/" + userId)).build();
+            case CREATE -> json(base + "/users", "{\"name\":\"load" + created.incrementAndGet() + "\"}");
+            case SUBSCRIBE -> json(base + "/users/" + userId + "/subscriptions", "{\"id\":" + subscriptionId + "}");
+            case UNSUBSCRIBE -> HttpRequest.newBuilder(URI.create(base + "/users/" + userId + "/subscriptions/" + subscriptionId))
+                    .DELETE().build();
+            case TOP -> HttpRequest.newBuilder(URI.create(base + "/subscriptions/top")).build();
+        };
+    }
+
+    private static HttpRequest json(String uri, String body) {
+        return HttpRequest.newBuilder(URI.create(uri))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    /**
+     * Добавляет в базу данных сгенерированных пользователей со случайными подписками.
+     */
+    private void generateUsers() {
+        if (GENERATED_USERS == 0) return;
+        List<Object[]> users = new ArrayList<>(GENERATED_USERS);
+        for (int i = 0; i < GENERATED_USERS; i++) users.add(new Object[]{"generated" + i});
+        jdbcTemplate.batchUpdate("INSERT INTO users (username) VALUES (?)", users);
+
+        List<Object[]> links = new ArrayList<>();
+        for (Long userId : jdbcTemplate.queryForList("SELECT id FROM users WHERE username LIKE 'generated%'", Long.class)) {
+            long first = ThreadLocalRandom.current().nextLong(1, SUBSCRIPTIONS + 1);
+            for (long id = first; id < first + 3 && id <= SUBSCRIPTIONS; id++) links.add(new Object[]{userId, id});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO user_subscriptions (user_id, subscription_id) VALUES (?, ?)", links);
+        subscriptionLeaderboard.reconcile();
+    }
+
+    /**
+     * Разбирает доли операций из строки вида {@code read=50,create=10}.
+     *
+     * @param mix строка с долями операций
+     * @return доли операций
+     */
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+        for (String part : mix.split(",")) {
+            String[] pair = part.trim().split("=");
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Строит перемешанную последовательность операций, в которой каждая операция встречается пропорционально своей доле.
+     *
+     * @param weights доли операций
+     * @return последовательность операций, повторяемая на протяжении теста
+     */
+    private static Operation[] schedule(Map<Operation, Integer> weights) {
+        List<Operation> operations = new ArrayList<>();
+        weights.forEach((operation, weight) -> {
+            for (int i = 0; i < weight; i++) operations.add(operation);
+        });
+        Collections.shuffle(operations, new Random(42));
+        return operations.toArray(Operation[]::new);
+    }
+
+    /**
+     * Печатает результаты, сохраняет распределения задержек и возвращает метрики для сравнения с базовыми значениями.
+     *
+     * @param histograms гистограммы задержек по операциям
+     * @param throughput пропускная способность, запросов в секунду
+     * @param errors     количество ошибочных ответов
+     * @param rejected   количество запросов, отклоненных ограничителем с ответом 503
+     * @return метрики: p99 каждой операции в миллисекундах, пропускная способность принятых запросов и доля отклоненных
+     */
+    private static Properties report(Map<Operation, Histogram> histograms, double throughput, int errors,
+                                     int rejected) throws IOException {
+        Path output = Path.of("target", "load-test");
+        Files.createDirectories(output);
+        Properties results = new Properties();
+        System.out.printf("load-test rate=%d req/s duration=%d s mix=%s%n", RATE, DURATION_SECONDS, MIX);
+        for (Map.Entry<Operation, Histogram> entry : histograms.entrySet()) {
+            Histogram histogram = entry.getValue();
+            if (histogram.getTotalCount() == 0) continue;
+            String name = entry.getKey().name().toLowerCase();
+            double p99 = histogram.getValueAtPercentile(99) / 1e6;
+            System.out.printf("%-12s count=%d p50=%.2f ms p90=%.2f ms p99=%.2f ms p99.9=%.2f ms max=%.2f ms%n",
+                    name, histogram.getTotalCount(), histogram.getValueAtPercentile(50) / 1e6,
+                    histogram.getValueAtPercentile(90) / 1e6, p99,
+                    histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6);
+            try (PrintStream out = new PrintStream(Files.newOutputStream(output.resolve(name + ".hgrm")))) {
+                histogram.outputPercentileDistribution(out, 1e6);
+            }
+            results.setProperty(name + ".p99.ms", String.format(Locale.ROOT, "%.2f", p99));
+        }
+        long accepted = histograms.values().stream().mapToLong(Histogram::getTotalCount).sum();
+        double rejectedRatio = accepted + rejected == 0 ? 0 : (double) rejected / (accepted + rejected);
+        System.out.printf("throughput=%.1f req/s errors=%d rejected=%d (%.1f%%)%n", throughput, errors, rejected, rejectedRatio * 100);
+        results.setProperty("throughput.rps", String.format(Locale.ROOT, "%.1f", throughput));
+        results.setProperty("rejected.ratio", String.format(Locale.ROOT, "%.3f", rejectedRatio));
+        return results;
+    }
+
+    /**
+     * Сравнивает результаты с базовыми значениями.
+     *
+     * @param results метрики текущего запуска
+     * @return описания регрессий; пустой список, если регрессий нет или файл базовых значений отсутствует
+     */
+    private static List<String> compare(Properties results) throws IOException {
+        List<String> regressions = new ArrayList<>();
+        if (!Files.exists(BASELINE)) return regressions;
+        Properties baseline = new Properties();
+        try (Reader reader = Files.newBufferedReader(BASELINE)) {
+            baseline.load(reader);
+        }
+        for (String key : results.stringPropertyNames()) {
+            String expected = baseline.getProperty(key);
+            if (expected == null) continue;
+            double actualValue = Double.parseDouble(results.getProperty(key));
+            double expectedValue = Double.parseDouble(expected);
+            boolean regressed = key.equals("throughput.rps")
+                    ? actualValue < expectedValue * (1 - TOLERANCE)
+                    : actualValue > expectedValue * (1 + TOLERANCE);
+            if (regressed) regressions.add(key + "=" + actualValue + " (базовое значение " + expectedValue + ")");
+        }
+        return regressions;
+    }
+}
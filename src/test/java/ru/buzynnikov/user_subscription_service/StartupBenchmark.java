@@ -0,0 +1,203 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledOnOs;
+import org.junit.jupiter.api.condition.OS;
+import org.springframework.util.FileSystemUtils;
+import ru.buzynnikov.user_subscription_service.migration.DatabaseMigration;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+/**
+ * Сравнение времени от запуска процесса до первого успешного запроса и потребления памяти (RSS)
+ * в разных режимах запуска собранного приложения: исполняемый jar с Liquibase и без него, распакованный jar,
+ * архив CDS, обработка Spring AOT и их сочетание.
+ * Запуск: {@code mvn -Paot package -DskipTests && mvn -Pbenchmark test -Dtest=StartupBenchmark}.
+ * Без профиля aot режимы AOT пропускаются. Количество запусков каждого режима задается свойством
+ * benchmark.startup.runs, в отчет попадает медиана.
+ * <p>
+ * Приложение запускается отдельным процессом с профилем test на базе H2 в файле. Миграции применяются один раз
+ * отдельным шагом ({@link DatabaseMigration}), поэтому все режимы, кроме jar+liquibase, запускаются без Liquibase.
+ * RSS читается из /proc после первого ответа.
+ */
+@Tag("benchmark")
+@EnabledOnOs(OS.LINUX)
+public class StartupBenchmark {
+
+    private static final int RUNS = Integer.getInteger("benchmark.startup.runs", 3);
+    private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(3);
+    private static final String MAIN_CLASS = UserSubscriptionServiceApplication.class.getName();
+    private static final String AOT_INITIALIZER = "BOOT-INF/classes/"
+            + MAIN_CLASS.replace('.', '/') + "__ApplicationContextInitializer.class";
+    private static final Path WORK = Path.of("target", "startup-benchmark").toAbsolutePath();
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(1)).build();
+
+    @Test
+    void benchmark() throws Exception {
+        Path jar = findApplicationJar();
+        Assumptions.assumeTrue(jar != null, "Нет собранного jar приложения, выполните mvn -Paot package -DskipTests");
+        boolean aot;
+        try (JarFile jarFile = new JarFile(jar.toFile())) {
+            aot = jarFile.getEntry(AOT_INITIALIZER) != null;
+        }
+
+        FileSystemUtils.deleteRecursively(WORK);
+        Files.createDirectories(WORK);
+        Path h2 = Path.of(org.h2.Driver.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+        String database = "--spring.datasource.url=jdbc:h2:file:" + WORK.resolve("db");
+        exec("extract", List.of("-Djarmode=tools", "-jar", jar.toString(), "extract", "--destination", WORK.resolve("extracted").toString()));
+        String classpath = WORK.resolve("extracted").resolve(jar.getFileName()) + File.pathSeparator + h2;
+        String fatJarClasspath = jar + File.pathSeparator + h2;
+        exec("migrate", List.of("-cp", classpath, DatabaseMigration.class.getName(), "--spring.profiles.active=test", database));
+
+        run("jar+liquibase", List.of("-cp", fatJarClasspath, "org.springframework.boot.loader.launch.JarLauncher"), database, true);
+        run("jar", List.of("-cp", fatJarClasspath, "org.springframework.boot.loader.launch.JarLauncher"), database, false);
+        run("extracted", List.of("-cp", classpath, MAIN_CLASS), database, false);
+        run("cds", withArchive("app.jsa", List.of("-cp", classpath, MAIN_CLASS), database), database, false);
+        if (aot) {
+            run("aot", List.of("-Dspring.aot.enabled=true", "-cp", classpath, MAIN_CLASS), database, false);
+            run("aot+cds", withArchive("app-aot.jsa", List.of("-Dspring.aot.enabled=true", "-cp", classpath, MAIN_CLASS), database),
+                    database, false);
+        } else {
+            System.out.println("mode=aot skipped: jar собран без профиля aot");
+        }
+    }
+
+    /**
+     * Создает архив CDS обучающим запуском, который завершается после обновления контекста.
+     *
+     * @param archive  имя файла архива
+     * @param command  аргументы JVM и главный класс
+     * @param database аргумент с адресом базы данных
+     * @return аргументы запуска с архивом
+     */
+    private List<String> withArchive(String archive, List<String> command, String database) throws Exception {
+        Path path = WORK.resolve(archive);
+        List<String> training = new ArrayList<>(List.of("-XX:ArchiveClassesAtExit=" + path, "-Dspring.context.exit=onRefresh"));
+        training.addAll(command);
+        training.addAll(List.of("--spring.profiles.active=test", "--spring.liquibase.enabled=false", database));
+        exec(archive, training);
+        List<String> arguments = new ArrayList<>(List.of("-XX:SharedArchiveFile=" + path));
+        arguments.addAll(command);
+        return arguments;
+    }
+
+    /**
+     * Запускает приложение RUNS раз и печатает медианы времени до первого успешного запроса и RSS.
+     *
+     * @param mode      название режима для отчета
+     * @param command   аргументы JVM и главный класс
+     * @param database  аргумент с адресом базы данных
+     * @param liquibase применять ли миграции при запуске
+     */
+    private void run(String mode, List<String> command, String database, boolean liquibase) throws Exception {
+        long[] millis = new long[RUNS];
+        long[] rssKb = new long[RUNS];
+        for (int i = 0; i < RUNS; i++) {
+            int port = freePort();
+            List<String> arguments = new ArrayList<>(command);
+            arguments.addAll(List.of("--spring.profiles.active=test", database, "--server.port=" + port,
+                    "--spring.liquibase.enabled=" + liquibase));
+            long start = System.nanoTime();
+            Process process = start(mode + "-" + i, arguments);
+            try {
+                awaitFirstRequest(process, port);
+                millis[i] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                rssKb[i] = rssKb(process);
+            } finally {
+                process.destroy();
+                process.waitFor(30, TimeUnit.SECONDS);
+                process.destroyForcibly();
+            }
+        }
+        Arrays.sort(millis);
+        Arrays.sort(rssKb);
+        System.out.printf("mode=%s runs=%d time-to-first-request=%d ms rss=%d MB%n",
+                mode, RUNS, millis[RUNS / 2], rssKb[RUNS / 2] / 1024);
+    }
+
+    /**
+     * Ожидает первого успешного ответа приложения.
+     *
+     * @param process процесс приложения
+     * @param port    порт приложения
+     */
+    private void awaitFirstRequest(Process process, int port) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/api/v1/users/1")).build();
+        long deadline = System.nanoTime() + STARTUP_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (!process.isAlive()) throw new IllegalStateException("Приложение завершилось с кодом " + process.exitValue());
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) return;
+            } catch (ConnectException e) {
+                // веб-сервер еще не запущен
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("Приложение не ответило за " + STARTUP_TIMEOUT);
+    }
+
+    /**
+     * Выполняет вспомогательный запуск JVM и ожидает его успешного завершения.
+     *
+     * @param name      имя запуска, используется для файла журнала
+     * @param arguments аргументы JVM
+     */
+    private static void exec(String name, List<String> arguments) throws Exception {
+        Process process = start(name, arguments);
+        if (!process.waitFor(STARTUP_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS) || process.exitValue() != 0) {
+            process.destroyForcibly();
+            throw new IllegalStateException("Запуск " + name + " завершился ошибкой, см. " + WORK.resolve(name + ".log"));
+        }
+    }
+
+    private static Process start(String name, List<String> arguments) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(arguments);
+        return new ProcessBuilder(command)
+                .redirectErrorStream(true)
+                .redirectOutput(WORK.resolve(name + ".log").toFile())
+                .start();
+    }
+
+    private static long rssKb(Process process) throws IOException {
+        try (Stream<String> lines = Files.lines(Path.of("/proc", String.valueOf(process.pid()), "status"))) {
+            return lines.filter(line -> line.startsWith("VmRSS:"))
+                    .map(line -> Long.parseLong(line.replaceAll("\\D", "")))
+                    .findFirst()
+                    .orElse(0L);
+        }
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static Path findApplicationJar() throws IOException {
+        try (Stream<Path> files = Files.list(Path.of("target"))) {
+            return files.filter(path -> path.getFileName().toString().endsWith(".jar")).findFirst().orElse(null);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package ru.buzynnikov.user_subscription_service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.buzynnikov.user_subscription_service.audit.AuditEvent;
+import ru.buzynnikov.user_subscription_service.audit.AuditOverflowPolicy;
+import ru.buzynnikov.user_subscription_service.audit.AuditPipeline;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestAuditPipeline {
+
+    private final List<Long> written = new CopyOnWriteArrayList<>();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void testDropNewestKeepsQueuedEvents() {
+        AuditPipeline pipeline = overflowingPipeline(AuditOverflowPolicy.DROP_NEWEST);
+        drain(pipeline);
+        assertEquals(List.of(1L, 2L), written);
+        assertEquals(1, meterRegistry.counter("audit.events", "result", "dropped").count());
+    }
+
+    @Test
+    void testDropOldestKeepsLatestEvents() {
+        AuditPipeline pipeline = overflowingPipeline(AuditOverflowPolicy.DROP_OLDEST);
+        drain(pipeline);
+        assertEquals(List.of(2L, 3L), written);
+        assertEquals(1, meterRegistry.counter("audit.events", "result", "dropped").count());
+    }
+
+    @Test
+    void testCallerRunsWritesOverflowSynchronously() {
+        AuditPipeline pipeline = overflowingPipeline(AuditOverflowPolicy.CALLER_RUNS);
+        assertEquals(List.of(3L), written);
+        drain(pipeline);
+        assertEquals(List.of(3L, 1L, 2L), written);
+        assertEquals(3, meterRegistry.counter("audit.events", "result", "written").count());
+    }
+
+    /**
+     * Создает конвейер с очередью на два события и публикует три события до запуска фонового потока.
+     */
+    private AuditPipeline overflowingPipeline(AuditOverflowPolicy policy) {
+        AuditPipeline pipeline = new AuditPipeline(events -> events.forEach(event -> written.add(event.userId())),
+                meterRegistry, 2, 10, Duration.ofMillis(10), policy);
+        for (long userId = 1; userId <= 3; userId++) pipeline.publish(AuditEvent.userDeleted(userId));
+        return pipeline;
+    }
+
+    /**
+     * Запускает и останавливает конвейер: при остановке очередь записывается полностью.
+     */
+    private static void drain(AuditPipeline pipeline) {
+        pipeline.start();
+        pipeline.stop();
+    }
+}
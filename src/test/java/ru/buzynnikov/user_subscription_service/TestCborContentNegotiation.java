@@ -0,0 +1,102 @@
+package ru.buzynnikov.user_subscription_service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class TestCborContentNegotiation {
+
+    private static final MediaType CBOR = MediaType.APPLICATION_CBOR;
+
+    private final CBORMapper cborMapper = new CBORMapper();
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Test
+    void testUserReturnedAsCborWhenAccepted() throws Exception {
+        JsonNode user = getCbor("/api/v1/users/1");
+        assertEquals(1, user.get("id").asLong());
+        assertEquals("alexander", user.get("name").asText());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON));
+    }
+
+    @Test
+    void testSubscriptionsAndTopReturnedAsCbor() throws Exception {
+        JsonNode subscriptions = getCbor("/api/v1/users/1/subscriptions");
+        assertEquals(4, subscriptions.size());
+        assertEquals(1, subscriptions.get(0).get("id").asLong());
+
+        JsonNode top = getCbor("/api/v1/subscriptions/top");
+        assertEquals(3, top.size());
+        assertTrue(top.get(0).hasNonNull("name"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top").accept(CBOR))
+                .andExpect(MockMvcResultMatchers.header().string("Vary", "Accept"));
+    }
+
+    @Test
+    void testETagDependsOnRepresentation() throws Exception {
+        for (String uri : new String[]{"/api/v1/users/1/subscriptions", "/api/v1/subscriptions/top"}) {
+            String jsonETag = mockMvc.perform(MockMvcRequestBuilders.get(uri).accept(MediaType.APPLICATION_JSON))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andReturn().getResponse().getHeader("ETag");
+            String cborETag = mockMvc.perform(MockMvcRequestBuilders.get(uri).accept(CBOR).header("If-None-Match", jsonETag))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(CBOR))
+                    .andReturn().getResponse().getHeader("ETag");
+            assertNotEquals(jsonETag, cborETag);
+            mockMvc.perform(MockMvcRequestBuilders.get(uri).accept(CBOR).header("If-None-Match", cborETag))
+                    .andExpect(MockMvcResultMatchers.status().isNotModified());
+            mockMvc.perform(MockMvcRequestBuilders.get(uri).header("If-None-Match", cborETag))
+                    .andExpect(MockMvcResultMatchers.status().isOk());
+        }
+    }
+
+    @Test
+    @Transactional
+    void testUserCreatedFromCborBody() throws Exception {
+        byte[] request = cborMapper.writeValueAsBytes(Map.of("name", "Двоичный"));
+        byte[] response = mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users")
+                        .contentType(CBOR)
+                        .accept(CBOR)
+                        .content(request))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        assertEquals("Двоичный", cborMapper.readTree(response).get("name").asText());
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users")
+                        .contentType(CBOR)
+                        .content(cborMapper.writeValueAsBytes(Map.of("name", ""))))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    private JsonNode getCbor(String uri) throws Exception {
+        byte[] body = mockMvc.perform(MockMvcRequestBuilders.get(uri).accept(CBOR))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(CBOR))
+                .andReturn().getResponse().getContentAsByteArray();
+        return cborMapper.readTree(body);
+    }
+}
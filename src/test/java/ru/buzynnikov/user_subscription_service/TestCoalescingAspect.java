@@ -0,0 +1,134 @@
+package ru.buzynnikov.user_subscription_service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.aop.aspectj.annotation.AspectJProxyFactory;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import ru.buzynnikov.user_subscription_service.aspect.Coalesce;
+import ru.buzynnikov.user_subscription_service.aspect.CoalescingAspect;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class TestCoalescingAspect {
+
+    public static class SlowService {
+
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Coalesce(key = "#id")
+        public String load(Long id) throws InterruptedException {
+            executions.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return "value-" + id;
+        }
+
+        @Coalesce(key = "{#id, @generation.get()}")
+        public String loadGeneration(Long id) throws InterruptedException {
+            return load(id);
+        }
+    }
+
+    @Test
+    void testConcurrentIdenticalCallsAreCoalesced() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SlowService target = new SlowService();
+        SlowService proxy = proxy(target, meterRegistry, Duration.ofSeconds(10), new AtomicLong());
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> proxy.load(1L)));
+            }
+            long deadline = System.currentTimeMillis() + 5000;
+            while (coalesced(meterRegistry) < 7 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            target.release.countDown();
+            for (Future<String> result : results) {
+                Assertions.assertEquals("value-1", result.get(5, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(1, target.executions.get());
+        Assertions.assertEquals(7.0, coalesced(meterRegistry));
+    }
+
+    @Test
+    void testCallAfterGenerationChangeIsNotCoalesced() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SlowService target = new SlowService();
+        AtomicLong generation = new AtomicLong();
+        SlowService proxy = proxy(target, meterRegistry, Duration.ofSeconds(10), generation);
+        assertSecondCallExecuted(target, () -> proxy.loadGeneration(1L), generation::incrementAndGet);
+        Assertions.assertEquals(0.0, count(meterRegistry, "coalesced"));
+    }
+
+    @Test
+    void testWaitingForStuckCallTimesOut() throws Exception {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SlowService target = new SlowService();
+        SlowService proxy = proxy(target, meterRegistry, Duration.ofMillis(100), new AtomicLong());
+        assertSecondCallExecuted(target, () -> proxy.load(1L), () -> { });
+        Assertions.assertEquals(1.0, count(meterRegistry, "coalesced"));
+        Assertions.assertEquals(1.0, count(meterRegistry, "timeout"));
+    }
+
+    /**
+     * Запускает вызов, дожидается его начала, выполняет действие и проверяет, что второй такой же вызов
+     * выполнился сам, а не дождался первого.
+     */
+    private static void assertSecondCallExecuted(SlowService target, Callable<String> call, Runnable between) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(call);
+            long deadline = System.currentTimeMillis() + 5000;
+            while (target.executions.get() < 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            between.run();
+            Future<String> second = executor.submit(call);
+            while (target.executions.get() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assertions.assertEquals(2, target.executions.get());
+            target.release.countDown();
+            Assertions.assertEquals("value-1", first.get(5, TimeUnit.SECONDS));
+            Assertions.assertEquals("value-1", second.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static SlowService proxy(SlowService target, SimpleMeterRegistry meterRegistry, Duration timeout, AtomicLong generation) {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("generation", generation);
+        AspectJProxyFactory factory = new AspectJProxyFactory(target);
+        factory.setProxyTargetClass(true);
+        factory.addAspect(new CoalescingAspect(meterRegistry, beanFactory, timeout));
+        return factory.getProxy();
+    }
+
+    private static double coalesced(SimpleMeterRegistry meterRegistry) {
+        return count(meterRegistry, "coalesced");
+    }
+
+    private static double count(SimpleMeterRegistry meterRegistry, String result) {
+        Counter counter = meterRegistry.find("service.calls").tag("result", result).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
@@ -0,0 +1,96 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ru.buzynnikov.user_subscription_service.limiter.ConcurrencyLimiter;
+import ru.buzynnikov.user_subscription_service.limiter.GradientLimit;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "limiter.read.initial-limit=2",
+        "limiter.read.min-limit=2",
+        "limiter.read.max-limit=2",
+        "limiter.retry-after=PT2S"
+})
+@AutoConfigureMockMvc
+public class TestConcurrencyLimiter {
+
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(100);
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    @Qualifier("readConcurrencyLimiter")
+    private ConcurrencyLimiter readConcurrencyLimiter;
+
+    @Test
+    void testReadsOverLimitRejectedWhileWritesAccepted() throws Exception {
+        assertTrue(readConcurrencyLimiter.tryAcquire());
+        assertTrue(readConcurrencyLimiter.tryAcquire());
+        try {
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1"))
+                    .andExpect(MockMvcResultMatchers.status().isServiceUnavailable())
+                    .andExpect(MockMvcResultMatchers.header().string("Retry-After", "2"))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.message").exists());
+            mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/{id}/subscriptions", 999_999)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"id\":1}"))
+                    .andExpect(MockMvcResultMatchers.status().isNotFound());
+        } finally {
+            readConcurrencyLimiter.release(FAST, false);
+            readConcurrencyLimiter.release(FAST, false);
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+        assertEquals(0, readConcurrencyLimiter.getInFlight());
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/metrics/api.concurrency.rejected"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+
+    @Test
+    void testLimitGrowsWhileLatencyStable() {
+        GradientLimit limit = new GradientLimit(20, 5, 100);
+        for (int i = 0; i < 200; i++) limit.onSample(FAST, limit.getLimit(), false);
+        assertEquals(100, limit.getLimit());
+    }
+
+    @Test
+    void testLimitShrinksWhenLatencyGrows() {
+        GradientLimit limit = new GradientLimit(50, 5, 100);
+        for (int i = 0; i < 50; i++) limit.onSample(FAST, limit.getLimit(), false);
+        int before = limit.getLimit();
+        for (int i = 0; i < 50; i++) limit.onSample(SLOW, limit.getLimit(), false);
+        assertTrue(limit.getLimit() < before / 2, "Предел " + limit.getLimit() + " при начальном " + before);
+    }
+
+    @Test
+    void testLimitNotGrownWhenUnderused() {
+        GradientLimit limit = new GradientLimit(20, 5, 100);
+        for (int i = 0; i < 200; i++) limit.onSample(FAST, 1, false);
+        assertEquals(20, limit.getLimit());
+    }
+
+    @Test
+    void testServerErrorsBackOffLimit() {
+        GradientLimit limit = new GradientLimit(20, 5, 100);
+        limit.onSample(FAST, 20, true);
+        assertEquals(18, limit.getLimit());
+        for (int i = 0; i < 50; i++) limit.onSample(FAST, 20, true);
+        assertEquals(5, limit.getLimit());
+    }
+}
@@ -0,0 +1,49 @@
+package ru.buzynnikov.user_subscription_service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.jupiter.api.Test;
+import ru.buzynnikov.user_subscription_service.config.ConnectionLimitingDataSource;
+import ru.buzynnikov.user_subscription_service.config.VirtualThreadsConfig;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRoutingDataSource;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TestConnectionLimiting {
+
+    @Test
+    void testEachPoolLimitedBySizeOfItsOwn() throws Exception {
+        VirtualThreadsConfig.ConnectionLimitingPostProcessor postProcessor = VirtualThreadsConfig.connectionLimitingDataSourcePostProcessor();
+        HikariDataSource primary = pool("primary", 3);
+        HikariDataSource replica = pool("replica", 5);
+        ShardRoutingDataSource shards = new ShardRoutingDataSource(List.of(pool("shard-0", 2), pool("shard-1", 4)));
+
+        Object limitedPrimary = postProcessor.postProcessAfterInitialization(primary, "primaryDataSource");
+        Object limitedReplica = postProcessor.postProcessAfterInitialization(replica, "replicaDataSource");
+        postProcessor.postProcessBeforeInitialization(shards, "shardRoutingDataSource");
+        shards.afterPropertiesSet();
+
+        assertEquals(3, assertInstanceOf(ConnectionLimitingDataSource.class, limitedPrimary).getAvailablePermits());
+        assertEquals(5, assertInstanceOf(ConnectionLimitingDataSource.class, limitedReplica).getAvailablePermits());
+        assertEquals(2, assertInstanceOf(ConnectionLimitingDataSource.class, shards.getShards().get(0)).getAvailablePermits());
+        assertEquals(4, assertInstanceOf(ConnectionLimitingDataSource.class, shards.getShards().get(1)).getAvailablePermits());
+        assertSame(shards, postProcessor.postProcessAfterInitialization(shards, "shardRoutingDataSource"));
+        assertEquals(4, postProcessor.getLimitedPools().size());
+
+        for (Object dataSource : List.of(limitedPrimary, limitedReplica)) ((AutoCloseable) dataSource).close();
+        shards.destroy();
+        assertTrue(primary.isClosed());
+    }
+
+    private static HikariDataSource pool(String name, int size) {
+        HikariDataSource pool = new HikariDataSource();
+        pool.setJdbcUrl("jdbc:h2:mem:" + name);
+        pool.setPoolName(name);
+        pool.setMaximumPoolSize(size);
+        return pool;
+    }
+}
@@ -0,0 +1,25 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.Test;
+import ru.buzynnikov.user_subscription_service.migration.DatabaseMigration;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TestDatabaseMigration {
+
+    private static final String URL = "jdbc:h2:mem:migration_db;DB_CLOSE_DELAY=-1";
+
+    @Test
+    void testMigrationAppliesChangelogAndExits() throws Exception {
+        DatabaseMigration.main(new String[]{"--spring.profiles.active=test", "--spring.datasource.url=" + URL});
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "1");
+             ResultSet users = connection.createStatement().executeQuery("SELECT COUNT(*) FROM users")) {
+            users.next();
+            assertEquals(10, users.getInt(1));
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionChangeDTO;
+import ru.buzynnikov.user_subscription_service.repositories.SubscriptionRepository;
+import ru.buzynnikov.user_subscription_service.repositories.UserRepository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Проверка планов запросов репозиториев на сгенерированном наборе данных: 20 000 пользователей, 200 подписок,
+ * 10 подписок у каждого пользователя. Запросы, выполненные методом репозитория, перехватываются на уровне JDBC
+ * и повторяются под EXPLAIN ANALYZE в откатываемой транзакции. H2 не выводит оценку стоимости, поэтому бюджетом
+ * служит количество строк, прочитанных из таблицы (scanCount): полный проход по большой таблице, в том числе
+ * по индексу, читает не меньше строк, чем в ней есть. Планы сохраняются в target/query-plans.
+ */
+@ActiveProfiles("test")
+@SpringBootTest(properties = "spring.datasource.url=jdbc:h2:mem:query_plans_db")
+@Import(TestQueryPlans.RecordingConfig.class)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TestQueryPlans {
+
+    private static final int USERS = 20_000;
+    private static final int SUBSCRIPTIONS = 200;
+    private static final int SUBSCRIPTIONS_PER_USER = 10;
+    private static final Set<String> LARGE_TABLES = Set.of("USERS", "USER_SUBSCRIPTIONS");
+    private static final int DEFAULT_BUDGET = 100;
+    private static final Path PLANS = Path.of("target", "query-plans");
+
+    private static final Pattern PLAN_TOKEN = Pattern.compile(
+            "/\\*|\\*/|scanCount: (\\d+)|(?:FROM|JOIN)\\s+\"?PUBLIC\"?\\.\"?(\\w+)");
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private SubscriptionRepository subscriptionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RecordingDataSource recordingDataSource;
+
+    private TransactionTemplate transactionTemplate;
+    private final Map<String, Long> tableRows = new HashMap<>();
+
+    @BeforeAll
+    void generateDataset() {
+        transactionTemplate = new TransactionTemplate(transactionManager);
+        jdbcTemplate.update("INSERT INTO users (id, username) SELECT X, 'user' || X FROM SYSTEM_RANGE(11, ?)", USERS);
+        jdbcTemplate.update("INSERT INTO subscriptions (id, name) SELECT X, 'subscription' || X FROM SYSTEM_RANGE(11, ?)", SUBSCRIPTIONS);
+        jdbcTemplate.update("""
+                INSERT INTO user_subscriptions (user_id, subscription_id)
+                SELECT u.X, MOD(u.X + k.X * 20, ?) + 1 FROM SYSTEM_RANGE(11, ?) u, SYSTEM_RANGE(0, ?) k
+                """, SUBSCRIPTIONS, USERS, SUBSCRIPTIONS_PER_USER - 1);
+        jdbcTemplate.execute("ANALYZE");
+        for (String table : LARGE_TABLES) {
+            tableRows.put(table, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table, Long.class));
+        }
+    }
+
+    @Test
+    void testFindSubscriptionsByUserId() {
+        assertPlans("findSubscriptionsByUserId", DEFAULT_BUDGET,
+                () -> subscriptionRepository.findSubscriptionsByUserId(4242L, 0L, Limit.of(11)));
+    }
+
+    @Test
+    void testFindSubscribersBySubscriptionId() {
+        assertPlans("findSubscribersBySubscriptionId", DEFAULT_BUDGET,
+                () -> subscriptionRepository.findSubscribersBySubscriptionId(42L, 5000L, Limit.of(11)));
+    }
+
+    /**
+     * Подписки 100 пользователей: 1000 связей, по каждой подписка читается по ключу.
+     */
+    @Test
+    void testFindSubscriptionsByUserIds() {
+        assertPlans("findSubscriptionsByUserIds", 3L * SUBSCRIPTIONS_PER_USER * 100,
+                () -> subscriptionRepository.findSubscriptionsByUserIds(userIds(4000L, 100)));
+    }
+
+    @Test
+    void testFindSubscriptionsByIds() {
+        assertPlans("findSubscriptionsByIds", DEFAULT_BUDGET,
+                () -> subscriptionRepository.findSubscriptionsByIds(List.of(3L, 63L, 150L, 199L)));
+    }
+
+    @Test
+    void testFindSubscriptionIdsByUserId() {
+        assertPlans("findSubscriptionIdsByUserId", DEFAULT_BUDGET,
+                () -> subscriptionRepository.findSubscriptionIdsByUserId(4242L));
+    }
+
+    @Test
+    void testFindSubscriptionMemberships() {
+        assertPlans("findSubscriptionMemberships", DEFAULT_BUDGET,
+                () -> subscriptionRepository.findSubscriptionMemberships(4242L, List.of(3L, 63L, 150L, 199L)));
+    }
+
+    /**
+     * Подсчет подписчиков для рейтинга по определению читает все связи, бюджет — размер user_subscriptions.
+     */
+    @Test
+    void testFindSubscriptionCounts() {
+        assertPlans("findSubscriptionCounts", tableRows.get("USER_SUBSCRIPTIONS") + 2L * SUBSCRIPTIONS,
+                () -> subscriptionRepository.findSubscriptionCounts(), "USER_SUBSCRIPTIONS");
+    }
+
+    @Test
+    void testFindUsersAfter() {
+        assertPlans("findUsersAfter", DEFAULT_BUDGET, () -> userRepository.findUsersAfter(5000L, Limit.of(11)));
+    }
+
+    @Test
+    void testFindUsersByIds() {
+        assertPlans("findUsersByIds", DEFAULT_BUDGET * 2, () -> userRepository.findUsersByIds(userIds(4000L, 100)));
+    }
+
+    @Test
+    void testFindVersionById() {
+        assertPlans("findVersionById", DEFAULT_BUDGET, () -> userRepository.findVersionById(4242L));
+    }
+
+    @Test
+    void testLockById() {
+        assertPlans("lockById", DEFAULT_BUDGET, () -> userRepository.lockById(4242L));
+    }
+
+    @Test
+    void testIncrementVersion() {
+        assertPlans("incrementVersion", DEFAULT_BUDGET, () -> userRepository.incrementVersion(4242L));
+    }
+
+    @Test
+    void testAddSubscription() {
+        assertPlans("addSubscription", DEFAULT_BUDGET, () -> userRepository.addSubscription(4242L, 5L));
+    }
+
+    @Test
+    void testAddSubscriptions() {
+        assertPlans("addSubscriptions", DEFAULT_BUDGET, () -> userRepository.addSubscriptions(4242L, List.of(5L, 6L)));
+    }
+
+    @Test
+    void testApplySubscriptionChanges() {
+        assertPlans("applySubscriptionChanges", DEFAULT_BUDGET, () -> userRepository.applySubscriptionChanges(List.of(
+                new SubscriptionChangeDTO(4242L, 5L, true),
+                new SubscriptionChangeDTO(4243L, 6L, true),
+                new SubscriptionChangeDTO(4242L, 63L, false))));
+    }
+
+    @Test
+    void testIncrementVersions() {
+        assertPlans("incrementVersions", DEFAULT_BUDGET, () -> userRepository.incrementVersions(List.of(4242L, 4243L)));
+    }
+
+    @Test
+    void testRemoveSubscriptionFromUser() {
+        assertPlans("removeSubscriptionFromUser", DEFAULT_BUDGET,
+                () -> userRepository.removeSubscriptionFromUser(4242L, 63L));
+    }
+
+    @Test
+    void testDeleteUser() {
+        assertPlans("deleteUser", DEFAULT_BUDGET, () -> userRepository.deleteById(4242L));
+    }
+
+    /**
+     * @param first первый идентификатор
+     * @param count количество идентификаторов
+     * @return идентификаторы пользователей, разбросанные по таблице с шагом 37
+     */
+    private static List<Long> userIds(long first, int count) {
+        List<Long> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) ids.add(first + 37L * i);
+        return ids;
+    }
+
+    /**
+     * Выполняет действие в откатываемой транзакции, перехватывая запросы, и проверяет план каждого из них:
+     * большие таблицы, кроме перечисленных, не читаются целиком, а за одно обращение к таблице
+     * читается не больше budget строк.
+     *
+     * @param name           имя проверки, используется для файла с планами
+     * @param budget         допустимое количество строк, прочитанных за одно обращение к таблице
+     * @param action         вызов репозитория
+     * @param fullScanTables большие таблицы, полное чтение которых ожидается
+     */
+    private void assertPlans(String name, long budget, Runnable action, String... fullScanTables) {
+        List<RecordedStatement> statements = inRollback(() -> recordingDataSource.record(action));
+        assertFalse(statements.isEmpty(), "Запросы не перехвачены: " + name);
+
+        StringBuilder report = new StringBuilder();
+        List<String> violations = new ArrayList<>();
+        for (RecordedStatement statement : statements) {
+            String plan = inRollback(() -> explainAnalyze(statement));
+            report.append(plan).append("\n\n");
+            for (Map.Entry<String, Long> access : tableAccesses(plan)) {
+                String table = access.getKey();
+                long rows = access.getValue();
+                if (LARGE_TABLES.contains(table) && !List.of(fullScanTables).contains(table) && rows >= tableRows.get(table)) {
+                    violations.add("полное чтение " + table + " (" + rows + " строк): " + statement.sql());
+                } else if (rows > budget) {
+                    violations.add("из " + table + " прочитано " + rows + " строк при бюджете " + budget + ": " + statement.sql());
+                }
+            }
+            if (plan.contains(".tableScan") && fullScanTables.length == 0) {
+                violations.add("tableScan: " + statement.sql());
+            }
+        }
+        writePlans(name, report.toString());
+        if (!violations.isEmpty()) fail(name + ":\n" + String.join("\n", violations) + "\n\n" + report);
+    }
+
+    private String explainAnalyze(RecordedStatement statement) {
+        return jdbcTemplate.query("EXPLAIN ANALYZE " + statement.sql(), ps -> {
+            for (Map.Entry<Integer, Object> parameter : statement.parameters().entrySet()) {
+                ps.setObject(parameter.getKey(), parameter.getValue());
+            }
+        }, rs -> {
+            StringBuilder plan = new StringBuilder();
+            while (rs.next()) plan.append(rs.getString(1));
+            return plan.toString();
+        });
+    }
+
+    /**
+     * Разбирает план H2: для каждого обращения к таблице — количество прочитанных строк. Количество выводится
+     * комментарием /* scanCount: N *&#47; после таблицы; подзапросы выводятся внутри комментариев к индексам,
+     * поэтому количество относится к таблице, стоящей на один уровень вложенности комментариев выше.
+     */
+    private static List<Map.Entry<String, Long>> tableAccesses(String plan) {
+        List<Map.Entry<String, Long>> accesses = new ArrayList<>();
+        Map<Integer, String> tablesByDepth = new HashMap<>();
+        int depth = 0;
+        Matcher token = PLAN_TOKEN.matcher(plan);
+        while (token.find()) {
+            if (token.group().equals("/*")) {
+                depth++;
+            } else if (token.group().equals("*/")) {
+                depth--;
+            } else if (token.group(2) != null) {
+                tablesByDepth.put(depth, token.group(2).toUpperCase(Locale.ROOT));
+            } else {
+                String table = tablesByDepth.remove(depth - 1);
+                if (table != null) accesses.add(Map.entry(table, Long.parseLong(token.group(1))));
+            }
+        }
+        return accesses;
+    }
+
+    private <T> T inRollback(Supplier<T> action) {
+        return transactionTemplate.execute(status -> {
+            status.setRollbackOnly();
+            return action.get();
+        });
+    }
+
+    private static void writePlans(String name, String plans) {
+        try {
+            Files.createDirectories(PLANS);
+            Files.writeString(PLANS.resolve(name + ".txt"), plans);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Запрос, выполненный через JDBC, с параметрами по номерам.
+     */
+    record RecordedStatement(String sql, Map<Integer, Object> parameters) {
+    }
+
+    /**
+     * Источник данных, запоминающий подготовленные запросы и их параметры во время {@link #record(Runnable)}.
+     */
+    static class RecordingDataSource extends DelegatingDataSource {
+
+        private final List<RecordedStatement> recorded = new CopyOnWriteArrayList<>();
+        private volatile boolean recording;
+
+        RecordingDataSource(DataSource target) {
+            super(target);
+        }
+
+        List<RecordedStatement> record(Runnable action) {
+            recorded.clear();
+            recording = true;
+            try {
+                action.run();
+            } finally {
+                recording = false;
+            }
+            return List.copyOf(recorded);
+        }
+
+        @Override
+        public Connection getConnection() throws SQLException {
+            return recordingConnection(super.getConnection());
+        }
+
+        private Connection recordingConnection(Connection connection) {
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        Object result = invoke(connection, method, args);
+                        if (recording && result instanceof PreparedStatement statement
+                                && args != null && args[0] instanceof String sql) {
+                            return recordingStatement(statement, sql);
+                        }
+                        if (recording && result instanceof Statement statement && !(result instanceof PreparedStatement)) {
+                            return recordingStatement(statement);
+                        }
+                        return result;
+                    });
+        }
+
+        private PreparedStatement recordingStatement(PreparedStatement statement, String sql) {
+            Map<Integer, Object> parameters = new TreeMap<>();
+            boolean[] batched = {false};
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        String methodName = method.getName();
+                        if (methodName.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer index) {
+                            parameters.put(index, methodName.equals("setNull") ? null : args[1]);
+                        } else if (methodName.equals("addBatch") && !batched[0]) {
+                            batched[0] = true;
+                            recorded.add(new RecordedStatement(sql, new HashMap<>(parameters)));
+                        } else if (methodName.startsWith("execute") && !methodName.equals("executeBatch")
+                                && (args == null || args.length == 0)) {
+                            recorded.add(new RecordedStatement(sql, new HashMap<>(parameters)));
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private Statement recordingStatement(Statement statement) {
+            return (Statement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Statement.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().startsWith("execute") && args != null && args[0] instanceof String sql) {
+                            recorded.add(new RecordedStatement(sql, Map.of()));
+                        }
+                        return invoke(statement, method, args);
+                    });
+        }
+
+        private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class RecordingConfig {
+
+        @Bean
+        static BeanPostProcessor recordingDataSourcePostProcessor() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource dataSource && !(bean instanceof RecordingDataSource)) {
+                        return new RecordingDataSource(dataSource);
+                    }
+                    return bean;
+                }
+            };
+        }
+    }
+}
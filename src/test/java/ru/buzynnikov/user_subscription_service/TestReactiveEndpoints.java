@@ -0,0 +1,101 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+@ActiveProfiles({"reactive", "test"})
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+public class TestReactiveEndpoints {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Test
+    void testGetUserAndStatusOk() {
+        webTestClient.get().uri("/api/v1/users/1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.id").isEqualTo(1);
+    }
+
+    @Test
+    void testGetUserNotFoundAndStatusNotFound() {
+        webTestClient.get().uri("/api/v1/users/999")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.message").exists();
+    }
+
+    @Test
+    void testGetUserSubscriptionsPagedAndStatusOk() {
+        webTestClient.get().uri("/api/v1/users/1/subscriptions?size=3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists("Link")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[2].id").isEqualTo(3);
+        webTestClient.get().uri("/api/v1/users/1/subscriptions?size=3&after=3")
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().doesNotExist("Link")
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$[0].id").isEqualTo(4);
+    }
+
+    @Test
+    void testGetUserSubscriptionsWithInvalidSizeAndStatusBadRequest() {
+        webTestClient.get().uri("/api/v1/users/1/subscriptions?size=0")
+                .exchange()
+                .expectStatus().isBadRequest();
+        webTestClient.get().uri("/api/v1/users/999/subscriptions")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    void testNonNumericParametersAndStatusBadRequest() {
+        for (String uri : List.of("/api/v1/users/abc", "/api/v1/users/abc/subscriptions",
+                "/api/v1/users/1/subscriptions?size=x", "/api/v1/users/1/subscriptions?after=x", "/api/v1/subscriptions/top?limit=x")) {
+            webTestClient.get().uri(uri)
+                    .exchange()
+                    .expectStatus().isBadRequest()
+                    .expectBody()
+                    .jsonPath("$.message").exists();
+        }
+    }
+
+    @Test
+    void testGetTopSubscriptionsAndStatusOk() {
+        webTestClient.get().uri("/api/v1/subscriptions/top")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(3)
+                .jsonPath("$[0].id").isEqualTo(1);
+    }
+
+    @Test
+    void testConditionalGetAndStatusNotModified() {
+        for (String uri : List.of("/api/v1/users/1/subscriptions", "/api/v1/subscriptions/top")) {
+            String eTag = webTestClient.get().uri(uri)
+                    .exchange()
+                    .expectStatus().isOk()
+                    .returnResult(String.class).getResponseHeaders().getETag();
+            webTestClient.get().uri(uri).ifNoneMatch(eTag)
+                    .exchange()
+                    .expectStatus().isNotModified()
+                    .expectBody().isEmpty();
+        }
+    }
+}
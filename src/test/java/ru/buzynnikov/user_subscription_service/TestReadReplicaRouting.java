@@ -0,0 +1,92 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ru.buzynnikov.user_subscription_service.config.ReplicaHealth;
+
+import javax.sql.DataSource;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Реплика — отдельная база H2, в которой пользователи 1..10 названы replica-&lt;id&gt;:
+ * по имени в ответе видно, с какой базы выполнено чтение.
+ */
+@ActiveProfiles({"test", "replica"})
+@SpringBootTest(properties = {
+        "replica.datasource.url=jdbc:h2:mem:replica_db;DB_CLOSE_DELAY=-1;INIT=RUNSCRIPT FROM 'classpath:db/replica-test.sql'",
+        "replica.datasource.username=sa",
+        "replica.datasource.password=1",
+        "replica.datasource.driver-class-name=org.h2.Driver",
+        "replica.lag-query=SELECT lag_seconds FROM replica_lag",
+        "replica.check-interval=PT1H"
+})
+@AutoConfigureMockMvc
+public class TestReadReplicaRouting {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ReplicaHealth replicaHealth;
+
+    @Autowired
+    @Qualifier("replicaDataSource")
+    private DataSource replicaDataSource;
+
+    @Test
+    void testReadOnlyRequestServedByReplica() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("replica-2"));
+    }
+
+    @Test
+    void testCreatedUserReadFromPrimaryWithinReadYourWritesWindow() throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("""
+                                {"name": "Иван"}
+                                """))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        long id = Long.parseLong(response.replaceAll(".*\"id\":(\\d+).*", "$1"));
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/" + id))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("Иван"));
+    }
+
+    @Test
+    void testLaggingReplicaFallsBackToPrimary() throws Exception {
+        JdbcTemplate replica = new JdbcTemplate(replicaDataSource);
+        try {
+            replica.update("UPDATE replica_lag SET lag_seconds = 60");
+            replicaHealth.check();
+            assertFalse(replicaHealth.isAvailable());
+
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/4"))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.name").value(Matchers.not("replica-4")));
+        } finally {
+            replica.update("UPDATE replica_lag SET lag_seconds = 0");
+            replicaHealth.check();
+        }
+        assertTrue(replicaHealth.isAvailable());
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/5"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("replica-5"));
+    }
+}
@@ -0,0 +1,166 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionLeaderboard;
+import ru.buzynnikov.user_subscription_service.sharding.ShardRoutingDataSource;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Три шарда — отдельные базы H2 с одинаковой схемой и справочником подписок, без пользователей.
+ */
+@ActiveProfiles({"test", "sharding"})
+@SpringBootTest(properties = {
+        "sharding.shard-count=3",
+        "sharding.shards[0].url=jdbc:h2:mem:shard0_db;DB_CLOSE_DELAY=-1",
+        "sharding.shards[1].url=jdbc:h2:mem:shard1_db;DB_CLOSE_DELAY=-1",
+        "sharding.shards[2].url=jdbc:h2:mem:shard2_db;DB_CLOSE_DELAY=-1",
+        "sharding.shards[0].username=sa",
+        "sharding.shards[1].username=sa",
+        "sharding.shards[2].username=sa",
+        "spring.liquibase.change-log=classpath:db/changelog/test/db.changelog-sharding-test.yaml"
+})
+@AutoConfigureMockMvc
+public class TestSharding {
+
+    private static final int SHARD_COUNT = 3;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ShardRoutingDataSource shardRoutingDataSource;
+
+    @Autowired
+    private SubscriptionLeaderboard subscriptionLeaderboard;
+
+    @Test
+    void testCreatedUsersStoredOnShardEncodedInId() throws Exception {
+        Set<Integer> usedShards = new HashSet<>();
+        for (int i = 0; i < 2 * SHARD_COUNT; i++) {
+            long id = createUser("Пользователь " + i);
+            int shard = (int) (id % SHARD_COUNT);
+            usedShards.add(shard);
+            for (int other = 0; other < SHARD_COUNT; other++) {
+                assertEquals(other == shard ? 1 : 0, count(other, "SELECT COUNT(*) FROM users WHERE id = ?", id));
+            }
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/" + id))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.name").value("Пользователь " + i));
+        }
+        assertEquals(Set.of(0, 1, 2), usedShards);
+    }
+
+    @Test
+    void testSubscriptionsStoredOnUserShardAndTopMergedAcrossShards() throws Exception {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) userIds.add(createUser("Подписчик " + i));
+
+        for (int i = 0; i < userIds.size(); i++) {
+            for (long subscriptionId = 3; subscriptionId <= 5 - i; subscriptionId++) {
+                mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/{id}/subscriptions", userIds.get(i))
+                                .contentType(MediaType.APPLICATION_JSON)
+                                .content("{\"id\":" + subscriptionId + "}"))
+                        .andExpect(MockMvcResultMatchers.status().isNoContent());
+            }
+        }
+        for (long userId : userIds) {
+            for (int shard = 0; shard < SHARD_COUNT; shard++) {
+                long stored = count(shard, "SELECT COUNT(*) FROM user_subscriptions WHERE user_id = ?", userId);
+                assertEquals(shard == userId % SHARD_COUNT ? 3 - userIds.indexOf(userId) : 0, stored);
+            }
+        }
+
+        subscriptionLeaderboard.reconcile();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(4))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].id").value(5));
+
+        List<Long> sorted = userIds.stream().sorted().toList();
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/3/users"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(sorted.get(0)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].id").value(sorted.get(2)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/{id}/subscriptions", userIds.get(0)))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3));
+    }
+
+    @Test
+    void testUsersPagedAndExportedAcrossShards() throws Exception {
+        for (int i = 0; i < SHARD_COUNT; i++) createUser("Страница " + i);
+        List<Long> allIds = new ArrayList<>();
+        for (int shard = 0; shard < SHARD_COUNT; shard++) {
+            allIds.addAll(jdbc(shard).queryForList("SELECT id FROM users", Long.class));
+        }
+        allIds.sort(null);
+
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users").param("size", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(allIds.get(0)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(allIds.get(1)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/export"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(allIds.size()))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[-1].id").value(allIds.get(allIds.size() - 1)));
+    }
+
+    @Test
+    void testUsersWithSubscriptionsFetchedByIdsAcrossShards() throws Exception {
+        List<Long> userIds = new ArrayList<>();
+        for (int i = 0; i < SHARD_COUNT; i++) userIds.add(createUser("Пакет " + i));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/{id}/subscriptions", userIds.get(1))
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":4}"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+
+        long missingId = userIds.get(SHARD_COUNT - 1) + 10L * SHARD_COUNT;
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users")
+                        .param("ids", userIds.get(2) + "," + missingId + "," + userIds.get(1) + "," + userIds.get(0))
+                        .param("include", "subscriptions"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users.length()").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[0].id").value(userIds.get(2)))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[1].name").value("Пакет 1"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[1].subscriptions[0].id").value(4))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[2].subscriptions").isEmpty())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.missingIds[0]").value(missingId));
+    }
+
+    private long createUser(String name) throws Exception {
+        String response = mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\": \"" + name + "\"}"))
+                .andExpect(MockMvcResultMatchers.status().isCreated())
+                .andReturn().getResponse().getContentAsString();
+        return Long.parseLong(response.replaceAll(".*\"id\":(\\d+).*", "$1"));
+    }
+
+    private long count(int shard, String sql, long id) {
+        Long count = jdbc(shard).queryForObject(sql, Long.class, id);
+        return count == null ? 0 : count;
+    }
+
+    private JdbcTemplate jdbc(int shard) {
+        return new JdbcTemplate((DataSource) shardRoutingDataSource.getShards().get(shard));
+    }
+}
@@ -0,0 +1,195 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionLeaderboard;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionMembershipIndex;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+@ActiveProfiles("test")
+@SpringBootTest
+@AutoConfigureMockMvc
+public class TestSubscriptionEndpoints {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private SubscriptionMembershipIndex membershipIndex;
+
+    @Autowired
+    private SubscriptionLeaderboard subscriptionLeaderboard;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void testGetTopSubscriptionsWithLimitAndStatusOk() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top").param("limit", "10"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(4))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[3].id").value(4));
+    }
+
+    @Test
+    void testTopSubscriptionsConditionalGet() throws Exception {
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().string("Cache-Control", "max-age=5, must-revalidate"))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top").header("If-None-Match", eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.header().stringValues("ETag", eTag))
+                .andExpect(MockMvcResultMatchers.content().string(""));
+    }
+
+    @Test
+    void testGetTopSubscriptionsWithInvalidLimitAndStatusBadRequest() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top").param("limit", "0"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    @Test
+    void testTopSubscriptionsFollowCommittedChanges() throws Exception {
+        for (long userId = 5; userId <= 7; userId++) {
+            mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/{id}/subscriptions", userId)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"id\":4}"))
+                    .andExpect(MockMvcResultMatchers.status().isNoContent());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top").param("limit", "2"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(4));
+
+        for (long userId = 5; userId <= 7; userId++) {
+            mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/users/{id}/subscriptions/4", userId))
+                    .andExpect(MockMvcResultMatchers.status().isNoContent());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top").param("limit", "2"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(2));
+    }
+
+    @Test
+    void testReconcileBetweenCommitAndAppliedChangeDoesNotCountTwice() throws Exception {
+        transactionTemplate.executeWithoutResult(status -> {
+            jdbcTemplate.update("INSERT INTO user_subscriptions (user_id, subscription_id) VALUES (5, 3)");
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    CompletableFuture.runAsync(subscriptionLeaderboard::reconcile).join();
+                }
+            });
+            subscriptionLeaderboard.subscribed(List.of(3L));
+        });
+        try {
+            mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top").param("limit", "3"))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(1))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(2))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$[2].id").value(3));
+        } finally {
+            jdbcTemplate.update("DELETE FROM user_subscriptions WHERE user_id = 5 AND subscription_id = 3");
+            subscriptionLeaderboard.reconcile();
+        }
+    }
+
+    @Test
+    void testGetSubscriptionUsersAndStatusOk() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/1/users").param("size", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(2))
+                .andExpect(MockMvcResultMatchers.header().exists("Link"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/999/users"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+    }
+
+    @Test
+    void testQuerySubscribersAndStatusOk() throws Exception {
+        subscribe(9, 9);
+        subscribe(9, 10);
+        subscribe(10, 9);
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/subscriptions/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"and\":[{\"subscription\":9},{\"not\":{\"subscription\":10}}]}}"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.count").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.userIds[0]").value(10))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.nextCursor").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/subscriptions/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"or\":[{\"subscription\":9},{\"subscription\":10}]},\"size\":1}"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.count").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.userIds.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.userIds[0]").value(9))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.nextCursor").value(9));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/subscriptions/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"subscription\":9},\"after\":9}"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.userIds.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.userIds[0]").value(10));
+
+        for (long[] link : new long[][]{{9, 9}, {9, 10}, {10, 9}}) {
+            mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/users/{id}/subscriptions/{subscriptionId}", link[0], link[1]))
+                    .andExpect(MockMvcResultMatchers.status().isNoContent());
+        }
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/subscriptions/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"or\":[{\"subscription\":9},{\"subscription\":10}]}}"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.count").value(0));
+    }
+
+    @Test
+    void testQuerySubscribersWithIdAboveIntRange() throws Exception {
+        long userId = 5_000_000_000L;
+        membershipIndex.usersCreated(List.of(userId));
+        membershipIndex.subscribed(userId, List.of(10L));
+        try {
+            mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/subscriptions/query")
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .content("{\"query\":{\"subscription\":10},\"after\":2147483647}"))
+                    .andExpect(MockMvcResultMatchers.status().isOk())
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.count").value(1))
+                    .andExpect(MockMvcResultMatchers.jsonPath("$.userIds[0]").value(userId));
+        } finally {
+            membershipIndex.userDeleted(userId, List.of(10L));
+        }
+    }
+
+    @Test
+    void testQuerySubscribersWithInvalidExpression() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/subscriptions/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"or\":[{\"subscription\":1},{\"subscription\":999}]}}"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound());
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/subscriptions/query")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"query\":{\"and\":[]}}"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+
+    private void subscribe(long userId, long subscriptionId) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/{id}/subscriptions", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":" + subscriptionId + "}"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+    }
+}
@@ -1,15 +1,28 @@
 package ru.buzynnikov.user_subscription_service;
 
+import org.hamcrest.Matchers;
+import org.hibernate.exception.ConstraintViolationException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
 import org.springframework.transaction.annotation.Transactional;
+import ru.buzynnikov.user_subscription_service.controllers.GlobalExceptionHandler;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 @ActiveProfiles("test")
 @SpringBootTest
@@ -19,6 +32,12 @@ public class TestUserEndpoints {
     @Autowired
     private MockMvc mockMvc;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private GlobalExceptionHandler globalExceptionHandler;
+
 
     @Test
     @Transactional
@@ -44,6 +63,27 @@ public class TestUserEndpoints {
     }
     @Test
     @Transactional
+    void testImportUsersAndReportFailures() throws Exception {
+        String request = """
+                {"name": "Иван"}
+                {"name": "Пётр"}
+
+                {"name": "Ян"}
+                {"name":
+                {"name": "Фёдор"}
+                """;
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/import")
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .content(request))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().string("""
+                        {"line":4,"error":"Имя пользователя должно быть не менее 3 и не более 255 символов"}
+                        {"line":5,"error":"Ошибка в теле запроса"}
+                        {"processed":5,"imported":3,"failed":2,"completed":true}
+                        """));
+    }
+    @Test
+    @Transactional
     void testUpdateUserAndStatusNoContent() throws Exception {
         String request = """
                 {
@@ -82,6 +122,70 @@ public class TestUserEndpoints {
                 .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(6));
     }
 
+    @Test
+    @Transactional
+    void testAddExistingUserSubscriptionAndStatusOk() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/1/subscriptions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":1}"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.status").value("ALREADY_PRESENT"));
+    }
+
+    @Test
+    void testForeignKeyViolationMapsToNotFound() {
+        DataIntegrityViolationException foreignKey = assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update("INSERT INTO user_subscriptions (user_id, subscription_id) VALUES (1, 999)"));
+        assertEquals(HttpStatus.NOT_FOUND, globalExceptionHandler.handleDataIntegrityViolation(foreignKey).getStatusCode());
+
+        SQLException cause = new SQLException("violation", "23503");
+        DataIntegrityViolationException otherConstraint = new DataIntegrityViolationException("violation",
+                new ConstraintViolationException("violation", cause, "fk_user_subscriptions_owner"));
+        assertEquals(HttpStatus.NOT_FOUND, globalExceptionHandler.handleDataIntegrityViolation(otherConstraint).getStatusCode());
+        DataIntegrityViolationException userConstraint = new DataIntegrityViolationException("violation",
+                new ConstraintViolationException("violation", cause, "FK_USER_SUBSCRIPTIONS_USER"));
+        assertEquals("Пользователь не найден", globalExceptionHandler.handleDataIntegrityViolation(userConstraint).getBody().message());
+
+        DataIntegrityViolationException duplicate = assertThrows(DataIntegrityViolationException.class,
+                () -> jdbcTemplate.update("INSERT INTO user_subscriptions (user_id, subscription_id) VALUES (1, 1)"));
+        assertEquals(HttpStatus.CONFLICT, globalExceptionHandler.handleDataIntegrityViolation(duplicate).getStatusCode());
+    }
+
+    @Test
+    @Transactional
+    void testAddUnknownUserSubscriptionAndStatusNotFound() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/1/subscriptions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":999}"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Подписка не найдена"));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/999/subscriptions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":1}"))
+                .andExpect(MockMvcResultMatchers.status().isNotFound())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.message").value("Пользователь не найден"));
+    }
+
+    @Test
+    @Transactional
+    void testAddUserSubscriptionsBatchAndStatusOk() throws Exception {
+        String request = """
+                {
+                    "ids":[4, 5, 999, 5]
+                }
+                """;
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/1/subscriptions/batch")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(request))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].status").value("ALREADY_PRESENT"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].status").value("ADDED"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].status").value("UNKNOWN"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1/subscriptions"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(5));
+    }
+
     @Test
     @Transactional
     void testDeleteUserSubscriptionAndStatusNoContent() throws Exception {
@@ -97,6 +201,61 @@ public class TestUserEndpoints {
                 .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(1));
     }
     @Test
+    void testCachedUserSubscriptionsEvictedAfterCommit() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/2/subscriptions"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3));
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/2/subscriptions")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"id\":5}"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/2/subscriptions"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(4));
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/users/2/subscriptions/5"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/2/subscriptions"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3));
+        mockMvc.perform(MockMvcRequestBuilders.get("/actuator/metrics/cache.gets").param("tag", "cache:userSubscriptions"))
+                .andExpect(MockMvcResultMatchers.status().isOk());
+    }
+    @Test
+    void testGetUserSubscriptionsPagesByCursor() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1/subscriptions").param("size", "3"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[2].id").value(3))
+                .andExpect(MockMvcResultMatchers.header().string("Link", Matchers.containsString("after=3")));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1/subscriptions").param("size", "3").param("after", "3"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(4))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("Link"));
+    }
+    @Test
+    void testGetUsersPagesByCursor() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users").param("after", "8").param("size", "2"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(9))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(10));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users").param("size", "0"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+    @Test
+    void testGetUsersByIdsWithSubscriptions() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users").param("ids", "9,1,999,9").param("include", "subscriptions"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users.length()").value(2))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[0].id").value(9))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[1].id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[1].name").value("alexander"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[1].subscriptions.length()").value(4))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[1].subscriptions[0].id").value(1))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.missingIds").value(Matchers.contains(999)));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users").param("ids", "1"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[0].subscriptions").doesNotExist());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users").param("ids", "1").param("include", "friends"))
+                .andExpect(MockMvcResultMatchers.status().isBadRequest());
+    }
+    @Test
     void testGetTop3SubscriptionsAndStatusOk() throws Exception {
         mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/subscriptions/top"))
                 .andExpect(MockMvcResultMatchers.status().isOk())
@@ -106,4 +265,56 @@ public class TestUserEndpoints {
                 .andExpect(MockMvcResultMatchers.jsonPath("$[2].id").value(3));
 
     }
+
+    @Test
+    void testSubscriptionChangesAreAudited() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/8/subscriptions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":5}"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/users/8/subscriptions/5"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+
+        String sql = "SELECT event_type FROM audit_events WHERE user_id = 8 AND subscription_id = 5 ORDER BY id";
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (jdbcTemplate.queryForList(sql, String.class).size() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(List.of("SUBSCRIPTION_ADDED", "SUBSCRIPTION_REMOVED"), jdbcTemplate.queryForList(sql, String.class));
+    }
+
+    @Test
+    void testExportUsersAsJsonArray() throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/export").param("after", "8"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[0].id").value(9))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].id").value(10))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[1].name").exists());
+    }
+
+    @Test
+    void testUserSubscriptionsConditionalGet() throws Exception {
+        String eTag = mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/3/subscriptions"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/3/subscriptions").header("If-None-Match", eTag))
+                .andExpect(MockMvcResultMatchers.status().isNotModified())
+                .andExpect(MockMvcResultMatchers.content().string(""));
+
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/3/subscriptions")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":7}"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+        String changedETag = mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/3/subscriptions").header("If-None-Match", eTag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(3))
+                .andReturn().getResponse().getHeader("ETag");
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/users/3/subscriptions/7"))
+                .andExpect(MockMvcResultMatchers.status().isNoContent());
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/3/subscriptions").header("If-None-Match", changedETag))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.jsonPath("$.length()").value(2));
+    }
 }
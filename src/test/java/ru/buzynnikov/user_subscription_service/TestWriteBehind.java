@@ -0,0 +1,180 @@
+package ru.buzynnikov.user_subscription_service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.hamcrest.Matchers;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
+import org.springframework.test.web.servlet.result.MockMvcResultMatchers;
+import ru.buzynnikov.user_subscription_service.dto.SubscriptionChangeDTO;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionChangeJournal;
+import ru.buzynnikov.user_subscription_service.services.SubscriptionWriteBehind;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@ActiveProfiles("test")
+@SpringBootTest(properties = {
+        "subscriptions.write-behind.enabled=true",
+        "subscriptions.write-behind.directory=target/write-behind-test",
+        "subscriptions.write-behind.batch-size=1000",
+        "subscriptions.write-behind.flush-interval=PT1H"
+})
+@AutoConfigureMockMvc
+public class TestWriteBehind {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private SubscriptionWriteBehind subscriptionWriteBehind;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @TempDir
+    private Path journalDirectory;
+
+    @AfterEach
+    void flush() {
+        subscriptionWriteBehind.flush();
+    }
+
+    @Test
+    void testSubscriptionAcceptedAndVisibleBeforeFlush() throws Exception {
+        subscribe(7L, 5L);
+        assertEquals(0, countSubscriptions(7L, 5L));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/7/subscriptions"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("ETag"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[*].id", Matchers.contains(5)));
+
+        subscriptionWriteBehind.flush();
+        assertEquals(1, countSubscriptions(7L, 5L));
+        assertFalse(subscriptionWriteBehind.hasPendingChanges(7L));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/7/subscriptions"))
+                .andExpect(MockMvcResultMatchers.status().isOk())
+                .andExpect(MockMvcResultMatchers.header().exists("ETag"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[*].id", Matchers.contains(5)));
+
+        unsubscribe(7L, 5L);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/7/subscriptions"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$", Matchers.hasSize(0)));
+        subscriptionWriteBehind.flush();
+        assertEquals(0, countSubscriptions(7L, 5L));
+    }
+
+    @Test
+    void testSubscribeThenUnsubscribeCoalesced() throws Exception {
+        double coalesced = counter("coalesced");
+        subscribe(8L, 6L);
+        unsubscribe(8L, 6L);
+        assertEquals(Map.of(6L, false), subscriptionWriteBehind.getPendingChanges(8L));
+        assertEquals(coalesced + 1, counter("coalesced"));
+        subscriptionWriteBehind.flush();
+        assertEquals(0, countSubscriptions(8L, 6L));
+    }
+
+    @Test
+    void testPendingChangesMergedIntoPages() throws Exception {
+        unsubscribe(1L, 2L);
+        subscribe(1L, 5L);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1/subscriptions").param("size", "2"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[*].id", Matchers.contains(1, 3)))
+                .andExpect(MockMvcResultMatchers.header().string("Link", Matchers.containsString("after=3")));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/1/subscriptions").param("after", "3").param("size", "2"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$[*].id", Matchers.contains(4, 5)))
+                .andExpect(MockMvcResultMatchers.header().doesNotExist("Link"));
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users").param("ids", "1").param("include", "subscriptions"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$.users[0].subscriptions[*].id", Matchers.contains(1, 3, 4, 5)));
+
+        subscribe(1L, 2L);
+        unsubscribe(1L, 5L);
+        subscriptionWriteBehind.flush();
+        assertEquals(1, countSubscriptions(1L, 2L));
+        assertEquals(0, countSubscriptions(1L, 5L));
+    }
+
+    @Test
+    void testMissingUserAndSubscriptionSkipped() throws Exception {
+        double skipped = counter("skipped");
+        subscribe(999_999L, 5L);
+        subscribe(9L, 999_999L);
+        mockMvc.perform(MockMvcRequestBuilders.get("/api/v1/users/9/subscriptions"))
+                .andExpect(MockMvcResultMatchers.jsonPath("$", Matchers.hasSize(0)));
+        subscriptionWriteBehind.flush();
+        assertEquals(skipped + 2, counter("skipped"));
+        assertFalse(subscriptionWriteBehind.hasPendingChanges(9L));
+    }
+
+    @Test
+    void testJournalRecoversChangesInOrder() throws IOException {
+        SubscriptionChangeJournal journal = new SubscriptionChangeJournal(journalDirectory, true);
+        assertTrue(journal.open().isEmpty());
+        List<SubscriptionChangeDTO> changes = List.of(new SubscriptionChangeDTO(1L, 2L, true),
+                new SubscriptionChangeDTO(3L, 4L, false));
+        journal.sync(journal.append(changes.get(0)));
+        journal.rotate();
+        journal.sync(journal.append(changes.get(1)));
+        journal.close();
+
+        SubscriptionChangeJournal recovered = new SubscriptionChangeJournal(journalDirectory, true);
+        assertEquals(changes, recovered.open());
+        recovered.delete(recovered.rotate());
+        recovered.close();
+        assertTrue(new SubscriptionChangeJournal(journalDirectory, true).open().isEmpty());
+    }
+
+    @Test
+    void testJournalIgnoresTornRecord() throws IOException {
+        SubscriptionChangeJournal journal = new SubscriptionChangeJournal(journalDirectory, false);
+        journal.open();
+        journal.append(new SubscriptionChangeDTO(1L, 2L, true));
+        journal.close();
+        try (var segments = Files.list(journalDirectory)) {
+            Path segment = segments.findFirst().orElseThrow();
+            Files.write(segment, new byte[]{1, 0, 0, 0}, StandardOpenOption.APPEND);
+        }
+        assertEquals(List.of(new SubscriptionChangeDTO(1L, 2L, true)), new SubscriptionChangeJournal(journalDirectory, false).open());
+    }
+
+    private void subscribe(Long userId, Long subscriptionId) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.post("/api/v1/users/{id}/subscriptions", userId)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"id\":" + subscriptionId + "}"))
+                .andExpect(MockMvcResultMatchers.status().isAccepted());
+    }
+
+    private void unsubscribe(Long userId, Long subscriptionId) throws Exception {
+        mockMvc.perform(MockMvcRequestBuilders.delete("/api/v1/users/{id}/subscriptions/{subscriptionId}", userId, subscriptionId))
+                .andExpect(MockMvcResultMatchers.status().isAccepted());
+    }
+
+    private int countSubscriptions(Long userId, Long subscriptionId) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_subscriptions WHERE user_id = ? AND subscription_id = ?",
+                Integer.class, userId, subscriptionId);
+    }
+
+    private double counter(String result) {
+        return meterRegistry.counter("subscriptions.write-behind.changes", "result", result).count();
+    }
+}
@@ -0,0 +1,100 @@
+package ru.buzynnikov.user_subscription_service;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledForJreRange;
+import org.junit.jupiter.api.condition.JRE;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.NestedTestConfiguration;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Сравнение пропускной способности и p99 при обработке запросов на платформенных и виртуальных потоках.
+ * Запуск: {@code mvn -Pjava21,benchmark test -Dtest=ThreadingModeBenchmark} на JDK 21.
+ * Параметры нагрузки задаются системными свойствами benchmark.requests и benchmark.concurrency.
+ */
+@Tag("benchmark")
+public class ThreadingModeBenchmark {
+
+    private static final int REQUESTS = Integer.getInteger("benchmark.requests", 20_000);
+    private static final int CONCURRENCY = Integer.getInteger("benchmark.concurrency", 1_000);
+
+    @Nested
+    @NestedTestConfiguration(NestedTestConfiguration.EnclosingConfiguration.OVERRIDE)
+    @ActiveProfiles("test")
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+            properties = "spring.threads.virtual.enabled=false")
+    class PlatformThreads {
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void benchmark() throws Exception {
+            run("platform", port);
+        }
+    }
+
+    @Nested
+    @NestedTestConfiguration(NestedTestConfiguration.EnclosingConfiguration.OVERRIDE)
+    @ActiveProfiles({"test", "virtual-threads"})
+    @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+    @EnabledForJreRange(min = JRE.JAVA_21)
+    class VirtualThreads {
+
+        @LocalServerPort
+        private int port;
+
+        @Test
+        void benchmark() throws Exception {
+            run("virtual", port);
+        }
+    }
+
+    /**
+     * Отправляет REQUESTS запросов с не более чем CONCURRENCY одновременными и печатает результат.
+     * Запросы читают подписчиков подписки с разными курсорами, чтобы каждый из них обращался к базе данных.
+     *
+     * @param mode название режима для отчета
+     * @param port порт запущенного приложения
+     */
+    private static void run(String mode, int port) throws Exception {
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        Semaphore inFlight = new Semaphore(CONCURRENCY);
+        long[] latencies = new long[REQUESTS];
+        AtomicInteger errors = new AtomicInteger();
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[REQUESTS];
+
+        long start = System.nanoTime();
+        for (int i = 0; i < REQUESTS; i++) {
+            int index = i;
+            HttpRequest request = HttpRequest.newBuilder(URI.create(
+                    "http://localhost:" + port + "/api/v1/subscriptions/" + (i % 4 + 1) + "/users?size=2&after=" + (i % 7))).build();
+            inFlight.acquire();
+            long sent = System.nanoTime();
+            futures[i] = client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                latencies[index] = System.nanoTime() - sent;
+                if (error != null || response.statusCode() != 200) errors.incrementAndGet();
+                inFlight.release();
+            });
+        }
+        CompletableFuture.allOf(futures).exceptionally(e -> null).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        Arrays.sort(latencies);
+        System.out.printf("threads=%s requests=%d concurrency=%d throughput=%.0f req/s p50=%.2f ms p99=%.2f ms errors=%d%n",
+                mode, REQUESTS, CONCURRENCY, REQUESTS / seconds,
+                latencies[REQUESTS / 2] / 1e6, latencies[(int) (REQUESTS * 0.99)] / 1e6, errors.get());
+    }
+}
@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS users (id BIGINT PRIMARY KEY, username VARCHAR(255) NOT NULL, version BIGINT DEFAULT 0 NOT NULL);
+CREATE TABLE IF NOT EXISTS subscriptions (id BIGINT PRIMARY KEY, name VARCHAR(255) NOT NULL);
+CREATE TABLE IF NOT EXISTS user_subscriptions (user_id BIGINT NOT NULL, subscription_id BIGINT NOT NULL, PRIMARY KEY (user_id, subscription_id));
+CREATE TABLE IF NOT EXISTS replica_lag (lag_seconds DOUBLE PRECISION NOT NULL);
+MERGE INTO users (id, username) KEY (id) SELECT X, 'replica-' || X FROM SYSTEM_RANGE(1, 10);
+DELETE FROM replica_lag;
+INSERT INTO replica_lag VALUES (0);